@@ -0,0 +1,52 @@
+package ch.heigvd.res.lab01.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * This is the main class of benchmarks.jar. It accepts the same options as the
+ * JMH main class, but the results are always written in a JSON file, so that the
+ * runs can be compared with CompareResults:
+ *
+ * java -jar benchmarks.jar Filter -wi 3 -i 5
+ *
+ * writes the results in ./jmh-results/yyyyMMdd-HHmmss.json (or in the directory
+ * given by the lab01.bench.results system property). If -rf or -rff is given, the
+ * options are passed to JMH unchanged.
+ *
+ * @author Olivier Liechti
+ */
+public class BenchmarkRunner {
+
+  public static final String RESULTS_DIRECTORY = "./jmh-results";
+
+  private static final List<String> INFORMATION_OPTIONS = Arrays.asList("-h", "-l", "-lp", "-lrf", "-lprof");
+
+  public static void main(String[] args) throws Exception {
+    List<String> options = new ArrayList<>(Arrays.asList(args));
+    if (!options.contains("-rf") && !options.contains("-rff") && !containsAny(options, INFORMATION_OPTIONS)) {
+      File directory = new File(System.getProperty("lab01.bench.results", RESULTS_DIRECTORY));
+      if (!directory.mkdirs() && !directory.isDirectory()) {
+        throw new IOException("Could not create directory " + directory);
+      }
+      String name = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json";
+      options.addAll(0, Arrays.asList("-rf", "json", "-rff", new File(directory, name).getPath()));
+    }
+    org.openjdk.jmh.Main.main(options.toArray(new String[options.size()]));
+  }
+
+  private static boolean containsAny(List<String> options, List<String> candidates) {
+    for (String candidate : candidates) {
+      if (options.contains(candidate)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,82 @@
+package ch.heigvd.res.lab01.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JSON result files written by JMH (for instance by the
+ * BenchmarkRunner), and prints the score of every benchmark that is in both
+ * files:
+ *
+ * java -cp benchmarks.jar ch.heigvd.res.lab01.bench.CompareResults old.json new.json
+ *
+ * The benchmarks are identified by their name and their parameters. A change is
+ * only reported as faster or slower when it is larger than the sum of the two
+ * score errors (for the throughput, a higher score is better; for the other
+ * modes, a lower score is better). JMH cannot compute the error with less than
+ * three iterations: these changes are never reported.
+ *
+ * @author Olivier Liechti
+ */
+public class CompareResults {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: CompareResults <baseline.json> <current.json>");
+      System.exit(1);
+    }
+    compare(new File(args[0]), new File(args[1]), System.out);
+  }
+
+  public static void compare(File baselineFile, File currentFile, PrintStream out) throws IOException {
+    Map<String, JsonNode> baseline = readResults(baselineFile);
+    Map<String, JsonNode> current = readResults(currentFile);
+    out.printf("%-80s %14s %14s %8s  %s%n", "Benchmark", "Baseline", "Current", "Change", "Unit");
+    for (Map.Entry<String, JsonNode> result : current.entrySet()) {
+      JsonNode before = baseline.get(result.getKey());
+      if (before == null) {
+        continue;
+      }
+      JsonNode after = result.getValue();
+      double oldScore = before.path("primaryMetric").path("score").asDouble();
+      double newScore = after.path("primaryMetric").path("score").asDouble();
+      double error = errorOf(before) + errorOf(after);
+      double change = oldScore == 0 ? 0 : (newScore - oldScore) / oldScore * 100;
+      String verdict = "";
+      if (!Double.isNaN(error) && Math.abs(newScore - oldScore) > error) {
+        boolean higherIsBetter = "thrpt".equals(after.path("mode").asText());
+        verdict = (newScore > oldScore) == higherIsBetter ? "faster" : "slower";
+      }
+      out.printf("%-80s %14.3f %14.3f %+7.1f%%  %s %s%n", result.getKey(), oldScore, newScore, change,
+        after.path("primaryMetric").path("scoreUnit").asText(), verdict);
+    }
+  }
+
+  /**
+   * @return the results of the file, by benchmark name and parameters
+   */
+  private static Map<String, JsonNode> readResults(File file) throws IOException {
+    Map<String, JsonNode> results = new LinkedHashMap<>();
+    for (JsonNode result : new ObjectMapper().readTree(file)) {
+      StringBuilder key = new StringBuilder(result.path("benchmark").asText().replace("ch.heigvd.res.lab01.bench.", ""));
+      Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+      while (params.hasNext()) {
+        Map.Entry<String, JsonNode> param = params.next();
+        key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+      }
+      results.put(key.toString(), result);
+    }
+    return results;
+  }
+
+  private static double errorOf(JsonNode result) {
+    return result.path("primaryMetric").path("scoreError").asDouble(Double.NaN);
+  }
+
+}
@@ -0,0 +1,71 @@
+package ch.heigvd.res.lab01.bench;
+
+import java.util.Random;
+
+/**
+ * Generates the synthetic quote texts used by the benchmarks. A corpus is made of
+ * words separated by spaces, on lines that have lineLength characters on average
+ * (between 1 and twice this length), ended by \n, \r\n or \r. The characters of
+ * the words depend on the mix:
+ *
+ * - ascii: lower case ASCII letters
+ * - latin: ASCII letters with some accented letters (é, è, à, ß...)
+ * - unicode: latin, with some supplementary characters (emojis, Deseret letters),
+ *   which are encoded with two chars in Java and four bytes in UTF-8
+ *
+ * The generator is seeded, so a corpus is the same for every run.
+ *
+ * @author Olivier Liechti
+ */
+final class Corpus {
+
+  static final String[] MIXES = {"ascii", "latin", "unicode"};
+
+  private static final String[] SEPARATORS = {"\n", "\r\n", "\n", "\r"};
+  private static final String LATIN = "éèàçüößÉÀ";
+  private static final int[] SUPPLEMENTARY = {0x1F600, 0x1F680, 0x10428, 0x10400};
+
+  private Corpus() {
+  }
+
+  /**
+   * @param size the number of chars of the corpus
+   * @param lineLength the average number of chars of the lines
+   * @param mix ascii, latin or unicode
+   * @param seed the seed of the generator
+   * @return the corpus (exactly size chars, so it may end in the middle of a line)
+   */
+  static String generate(int size, int lineLength, String mix, long seed) {
+    boolean latin = "latin".equals(mix) || "unicode".equals(mix);
+    boolean unicode = "unicode".equals(mix);
+    if (!latin && !"ascii".equals(mix)) {
+      throw new IllegalArgumentException("Unknown character mix: " + mix);
+    }
+    Random random = new Random(seed);
+    StringBuilder builder = new StringBuilder(size + 2 * lineLength + 2);
+    while (builder.length() < size) {
+      int end = builder.length() + 1 + random.nextInt(2 * lineLength);
+      while (builder.length() < end) {
+        int r = random.nextInt(100);
+        if (r < 15) {
+          builder.append(' ');
+        } else if (unicode && r < 17) {
+          builder.appendCodePoint(SUPPLEMENTARY[random.nextInt(SUPPLEMENTARY.length)]);
+        } else if (latin && r < 25) {
+          builder.append(LATIN.charAt(random.nextInt(LATIN.length())));
+        } else {
+          builder.append((char) ('a' + random.nextInt(26)));
+        }
+      }
+      builder.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+    }
+    /*
+     * We do not want to cut a surrogate pair at the end
+     */
+    if (size > 0 && Character.isHighSurrogate(builder.charAt(size - 1))) {
+      builder.setCharAt(size - 1, 'a');
+    }
+    return builder.substring(0, size);
+  }
+
+}
@@ -0,0 +1,123 @@
+package ch.heigvd.res.lab01.bench;
+
+import ch.heigvd.res.lab01.impl.explorers.DFSFileExplorer;
+import ch.heigvd.res.lab01.interfaces.IAttributeFileVisitor;
+import ch.heigvd.res.lab01.interfaces.IFileVisitor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the DFSFileExplorer with a java.io implementation of the same traversal
+ * (File.listFiles, then isFile/isDirectory on every entry), on a synthetic tree
+ * that looks like a quote workspace: a few levels of tag directories, with the
+ * quote files spread over all the levels.
+ *
+ * The default tree is small enough to be created quickly. To reproduce the numbers
+ * for one million files, run with -p files=1000000. The depth gives the maximum
+ * number of tag levels (with -p depth=0, all the files are in the root directory). To compare the number of system
+ * calls, run a single benchmark under strace -c -f.
+ *
+ * The tree is created in the temporary directory and kept there, so the next
+ * runs do not have to create it again (delete it by hand when you are done).
+ *
+ * @author Olivier Liechti
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileExplorerBenchmark {
+
+  private static final String[] TAGS = {"funny", "popular", "movie", "internet", "joke", "hilarious", "geek"};
+
+  @Param({"100000"})
+  public int files;
+
+  @Param({"3"})
+  public int depth;
+
+  private File root;
+
+  @Setup(Level.Trial)
+  public void createTree() throws IOException {
+    root = new File(System.getProperty("java.io.tmpdir"), "lab01-explorer-bench-" + files + "-" + depth);
+    if (root.isDirectory()) {
+      return;
+    }
+    for (int i = 1; i <= files; i++) {
+      /*
+       * The directory of a quote is derived from its number, so the tree is the same
+       * for every run: 0 to depth levels, taken from the tags.
+       */
+      File directory = root;
+      for (int level = 0, n = i; level < i % (depth + 1); level++, n /= TAGS.length) {
+        directory = new File(directory, TAGS[n % TAGS.length]);
+      }
+      directory.mkdirs();
+      new File(directory, "quote-" + i + ".utf8").createNewFile();
+    }
+  }
+
+  @Benchmark
+  public void dfsFileExplorer(final Blackhole blackhole) {
+    new DFSFileExplorer().explore(root, new IAttributeFileVisitor() {
+      @Override
+      public void visit(File file, BasicFileAttributes attributes) {
+        blackhole.consume(attributes.isRegularFile());
+      }
+
+      @Override
+      public void visit(File file) {
+        blackhole.consume(file.isFile());
+      }
+    });
+  }
+
+  @Benchmark
+  public void javaIoListFiles(final Blackhole blackhole) {
+    exploreWithJavaIo(root, new IFileVisitor() {
+      @Override
+      public void visit(File file) {
+        blackhole.consume(file.isFile());
+      }
+    });
+  }
+
+  private static void exploreWithJavaIo(File directory, IFileVisitor visitor) {
+    visitor.visit(directory);
+    File[] children = directory.listFiles();
+    if (children == null) {
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isFile()) {
+        visitor.visit(child);
+      }
+    }
+    for (File child : children) {
+      if (child.isDirectory()) {
+        exploreWithJavaIo(child, visitor);
+      }
+    }
+  }
+
+}
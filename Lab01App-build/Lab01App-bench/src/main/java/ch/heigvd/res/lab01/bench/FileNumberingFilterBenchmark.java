@@ -0,0 +1,107 @@
+package ch.heigvd.res.lab01.bench;
+
+import ch.heigvd.res.lab01.impl.filters.FileNumberingFilterWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the FileNumberingFilterWriter on texts made of
+ * short and long lines (mixing \n, \r and \r\n, see Corpus), and compares it with a per-char
+ * state machine that formats every line number with Integer.toString. Every
+ * operation writes one million characters by chunks of 8192, so the score in
+ * ops/s is a throughput in millions of characters per second.
+ *
+ * @author Olivier Liechti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileNumberingFilterBenchmark {
+
+  private static final int TEXT_SIZE = 1000 * 1000;
+  private static final int CHUNK_SIZE = 8192;
+
+  @Param({"8", "80"})
+  public int lineLength;
+
+  @Param({"ascii"})
+  public String text;
+
+  private char[] chars;
+  private Writer sink;
+
+  @Setup
+  public void setUp() {
+    chars = Corpus.generate(TEXT_SIZE, lineLength, text, 42).toCharArray();
+    sink = new UpperCaseFilterBenchmark.NullWriter();
+  }
+
+  @Benchmark
+  public Writer fileNumberingFilterWriter() throws IOException {
+    return writeText(new FileNumberingFilterWriter(sink));
+  }
+
+  @Benchmark
+  public Writer perCharStateMachine() throws IOException {
+    return writeText(new PerCharNumberingWriter(sink));
+  }
+
+  private Writer writeText(Writer writer) throws IOException {
+    for (int off = 0; off < chars.length; off += CHUNK_SIZE) {
+      writer.write(chars, off, Math.min(CHUNK_SIZE, chars.length - off));
+    }
+    writer.close();
+    return writer;
+  }
+
+  /**
+   * The simple implementation: every character goes through write(int), and the
+   * line numbers are formatted with Integer.toString
+   */
+  static class PerCharNumberingWriter extends FilterWriter {
+
+    private int lineNumber = 0;
+    private boolean afterCarriageReturn = false;
+
+    PerCharNumberingWriter(Writer out) {
+      super(out);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      for (int i = off; i < off + len; i++) {
+        write(cbuf[i]);
+      }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      if (lineNumber == 0 || (afterCarriageReturn && c != '\n')) {
+        out.write(Integer.toString(++lineNumber) + '\t');
+      }
+      out.write(c);
+      afterCarriageReturn = c == '\r';
+      if (c == '\n') {
+        out.write(Integer.toString(++lineNumber) + '\t');
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,164 @@
+package ch.heigvd.res.lab01.bench;
+
+import ch.heigvd.res.lab01.impl.transformers.CompleteFileTransformer;
+import ch.heigvd.res.lab01.impl.transformers.FileTransformer;
+import ch.heigvd.res.lab01.impl.transformers.NoOpFileTransformer;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time needed by a FileTransformer to copy a multi-megabyte text
+ * file (with a filter that does nothing, so we only measure the copy loop), for
+ * several buffer sizes, and compares it with a loop that copies the characters
+ * one at a time with read() and write(int).
+ *
+ * The NoOpFileTransformer does not decorate the writer, so the file is copied
+ * without decoding it: we compare it with Files.copy, which is the best we can
+ * expect.
+ *
+ * Finally, the CompleteFileTransformer is measured with the filter writers and
+ * with the byte pipeline.
+ *
+ * The file is a Corpus of lines of 60 chars on average; run with -p text=unicode
+ * to measure the decoding and the upper case conversion of non-ASCII text.
+ *
+ * @author Olivier Liechti
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileTransformerBenchmark {
+
+  @Param({"4"})
+  public int megabytes;
+
+  @Param({"ascii"})
+  public String text;
+
+  private File directory;
+  private File input;
+  private File output;
+
+  @Setup(Level.Trial)
+  public void createInput() throws IOException {
+    directory = new File(System.getProperty("java.io.tmpdir"), "lab01-transformer-bench");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    input = new File(directory, "input.utf8");
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(input), StandardCharsets.UTF_8)) {
+      for (int i = 0; i < megabytes; i++) {
+        writer.write(Corpus.generate(1024 * 1024, 60, text, i));
+      }
+    }
+    output = new File(input.getPath() + ".out");
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteInput() throws IOException {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  /**
+   * A transformer with a filter that passes the characters through, for each buffer size
+   */
+  @State(Scope.Benchmark)
+  public static class BufferedTransformer {
+
+    @Param({"16", "1024", "8192", "65536"})
+    public int bufferSize;
+
+    private FileTransformer transformer;
+
+    @Setup(Level.Trial)
+    public void createTransformer() {
+      transformer = new FileTransformer() {
+        @Override
+        public Writer decorateWithFilters(Writer writer) {
+          return new FilterWriter(writer) {
+          };
+        }
+      };
+      transformer.setBufferSize(bufferSize);
+    }
+
+  }
+
+  /**
+   * A CompleteFileTransformer, with and without the byte pipeline
+   */
+  @State(Scope.Benchmark)
+  public static class CompleteTransformer {
+
+    @Param({"false", "true"})
+    public boolean bytePipeline;
+
+    private CompleteFileTransformer transformer;
+
+    @Setup(Level.Trial)
+    public void createTransformer() {
+      transformer = new CompleteFileTransformer();
+      transformer.setBytePipeline(bytePipeline);
+    }
+
+  }
+
+  @Benchmark
+  public void completeTransformer(CompleteTransformer completeTransformer) {
+    completeTransformer.transformer.visit(input);
+  }
+
+  @Benchmark
+  public void bufferedCopy(BufferedTransformer bufferedTransformer) {
+    bufferedTransformer.transformer.visit(input);
+  }
+
+  @Benchmark
+  public void noOpTransformer() {
+    new NoOpFileTransformer().visit(input);
+  }
+
+  @Benchmark
+  public void filesCopy() throws IOException {
+    Files.copy(input.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @Benchmark
+  public void perCharCopy() throws IOException {
+    try (Reader reader = new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8);
+      Writer writer = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)) {
+      int c;
+      while ((c = reader.read()) != -1) {
+        writer.write(c);
+      }
+    }
+  }
+
+}
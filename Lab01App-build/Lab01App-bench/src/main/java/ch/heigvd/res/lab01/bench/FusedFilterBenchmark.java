@@ -0,0 +1,119 @@
+package ch.heigvd.res.lab01.bench;
+
+import ch.heigvd.res.lab01.impl.filters.FileNumberingFilterWriter;
+import ch.heigvd.res.lab01.impl.filters.UpperCaseFilterWriter;
+import ch.heigvd.res.lab01.impl.filters.UpperCaseNumberingByteFilter;
+import ch.heigvd.res.lab01.impl.filters.UpperCaseNumberingFilterWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the filters used by the CompleteFileTransformer: the decorator stack
+ * (a FileNumberingFilterWriter decorating an UpperCaseFilterWriter) and the
+ * UpperCaseNumberingFilterWriter that replaces it. The text looks like a quote
+ * file. Every operation writes one million characters by chunks of 8192, so the
+ * score in ops/s is a throughput in millions of characters per second.
+ *
+ * The pipeline benchmarks compare the two ways of transforming UTF-8 bytes: the
+ * characters are decoded by an InputStreamReader, filtered and encoded by an
+ * OutputStreamWriter, or the bytes go through the UpperCaseNumberingByteFilter.
+ *
+ * @author Olivier Liechti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FusedFilterBenchmark {
+
+  private static final int TEXT_SIZE = 1000 * 1000;
+  private static final int CHUNK_SIZE = 8192;
+
+  private char[] chars;
+  private byte[] bytes;
+  private Writer sink;
+  private OutputStream byteSink;
+
+  @Setup
+  public void setUp() {
+    String sample = "Olivier Liechti can divide by zero.\nWhen he does push-ups, he pushes the Earth down.\r\n";
+    StringBuilder builder = new StringBuilder(TEXT_SIZE + sample.length());
+    while (builder.length() < TEXT_SIZE) {
+      builder.append(sample);
+    }
+    chars = builder.substring(0, TEXT_SIZE).toCharArray();
+    bytes = new String(chars).getBytes(StandardCharsets.UTF_8);
+    sink = new UpperCaseFilterBenchmark.NullWriter();
+    byteSink = new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+      }
+    };
+  }
+
+  @Benchmark
+  public Writer decoratorStack() throws IOException {
+    return writeText(new FileNumberingFilterWriter(new UpperCaseFilterWriter(sink)));
+  }
+
+  @Benchmark
+  public Writer fusedFilter() throws IOException {
+    return writeText(new UpperCaseNumberingFilterWriter(sink));
+  }
+
+  @Benchmark
+  public Writer charPipeline() throws IOException {
+    Writer writer = new UpperCaseNumberingFilterWriter(new OutputStreamWriter(byteSink, StandardCharsets.UTF_8));
+    try (Reader reader = new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)) {
+      char[] buffer = new char[CHUNK_SIZE];
+      int n;
+      while ((n = reader.read(buffer)) != -1) {
+        writer.write(buffer, 0, n);
+      }
+    }
+    writer.close();
+    return writer;
+  }
+
+  @Benchmark
+  public OutputStream bytePipeline() throws IOException {
+    OutputStream stream = new UpperCaseNumberingByteFilter(byteSink);
+    for (int off = 0; off < bytes.length; off += CHUNK_SIZE) {
+      stream.write(bytes, off, Math.min(CHUNK_SIZE, bytes.length - off));
+    }
+    stream.close();
+    return stream;
+  }
+
+  private Writer writeText(Writer writer) throws IOException {
+    for (int off = 0; off < chars.length; off += CHUNK_SIZE) {
+      writer.write(chars, off, Math.min(CHUNK_SIZE, chars.length - off));
+    }
+    writer.close();
+    return writer;
+  }
+
+}
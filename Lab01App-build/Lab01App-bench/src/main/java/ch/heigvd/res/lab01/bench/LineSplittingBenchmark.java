@@ -0,0 +1,93 @@
+package ch.heigvd.res.lab01.bench;
+
+import ch.heigvd.res.lab01.impl.LineCursor;
+import ch.heigvd.res.lab01.impl.Utils;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Splits a text in lines with repeated calls to Utils.getNextLine (each call
+ * copies the line and the rest of the text), and with a LineCursor on the String
+ * and on a char[]. Every benchmark returns the total length of the lines, so the
+ * work cannot be removed by the JIT. Run with -prof gc to see the allocation rate
+ * (the cursors allocate nothing).
+ *
+ * The text has lines of 1 to 80 characters, with the three separators.
+ *
+ * @author Olivier Liechti
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineSplittingBenchmark {
+
+  private static final String[] SEPARATORS = {"\n", "\r\n", "\r"};
+
+  @Param({"100", "1000"})
+  public int lines;
+
+  private String text;
+  private char[] chars;
+  private final LineCursor cursor = new LineCursor();
+
+  @Setup
+  public void createText() {
+    Random random = new Random(42);
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      int length = 1 + random.nextInt(80);
+      for (int j = 0; j < length; j++) {
+        builder.append((char) ('a' + random.nextInt(26)));
+      }
+      builder.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+    }
+    text = builder.toString();
+    chars = text.toCharArray();
+  }
+
+  @Benchmark
+  public int getNextLine() {
+    int total = 0;
+    String[] next = Utils.getNextLine(text);
+    while (!next[0].isEmpty()) {
+      total += next[0].length();
+      next = Utils.getNextLine(next[1]);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public int lineCursorOnString() {
+    int total = 0;
+    cursor.reset(text);
+    while (cursor.next()) {
+      total += cursor.getEnd() - cursor.getStart();
+    }
+    return total;
+  }
+
+  @Benchmark
+  public int lineCursorOnCharArray() {
+    int total = 0;
+    cursor.reset(chars, 0, chars.length);
+    while (cursor.next()) {
+      total += cursor.getEnd() - cursor.getStart();
+    }
+    return total;
+  }
+
+}
@@ -0,0 +1,222 @@
+package ch.heigvd.res.lab01.bench;
+
+import ch.heigvd.res.lab01.impl.Application;
+import ch.heigvd.res.lab01.metrics.Metrics;
+import ch.heigvd.res.lab01.metrics.StageMetrics;
+import ch.heigvd.res.lab01.quotes.QuoteCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * This program runs the whole application (fetchAndStoreQuotes, then
+ * processQuoteFiles) against a LoadTestQuoteServer, and reports the throughput
+ * and the latencies (p50, p99, max) of every stage (see Metrics):
+ *
+ * java -cp benchmarks.jar ch.heigvd.res.lab01.bench.LoadTest quotes=10000 concurrency=8
+ *
+ * The options are given as name=value (see DEFAULTS for the names and the default
+ * values):
+ *
+ * - quotes, concurrency, batch: the number of quotes, and the parallelism and the
+ *   batch size of the Application
+ * - latency, jitter, errorRate, payload: the behavior of the stub server (in
+ *   milliseconds, between 0 and 1, and in characters)
+ * - archive: true to store the quotes in a QuoteArchive
+ * - pipeline: true to fetch, store and transform the quotes at the same time
+ *   (with fetchStoreAndProcessQuotes, the whole run is then reported as one
+ *   step, with the time at which the first quote has been transformed)
+ * - warmup: the number of quotes fetched and transformed before the measure (the
+ *   stub server does not send errors during the warm up)
+ * - workspace: the directory where the quotes (and the quote cache) are written
+ * - json: a file where the report is also written, in JSON
+ *
+ * The report is made from the metrics of the application, which are enabled
+ * during the measure (their histograms do not grow with the number of quotes).
+ * The summary of the metrics is printed after the report, with the bytes read
+ * and written by the transformations.
+ *
+ * The application has a quote cache, filled during the warm up, so the requests
+ * that fail are served by the cache (as when the real web service fails). A
+ * failed batch request is served by the cache as a whole, and the next batches
+ * are still requested with a single request.
+ *
+ * @author Olivier Liechti
+ */
+public class LoadTest {
+
+  private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+  static {
+    DEFAULTS.put("quotes", "10000");
+    DEFAULTS.put("concurrency", "8");
+    DEFAULTS.put("batch", "1");
+    DEFAULTS.put("latency", "5");
+    DEFAULTS.put("jitter", "5");
+    DEFAULTS.put("errorRate", "0");
+    DEFAULTS.put("payload", "200");
+    DEFAULTS.put("archive", "false");
+    DEFAULTS.put("pipeline", "false");
+    DEFAULTS.put("warmup", "500");
+    DEFAULTS.put("workspace", new File(System.getProperty("java.io.tmpdir"), "lab01-loadtest").getPath());
+    DEFAULTS.put("json", "");
+  }
+
+  private final Map<String, String> options;
+  private long fetchAndStoreNanos;
+  private long processNanos;
+  private long firstTransformNanos;
+  private int requests;
+  private int errors;
+
+  public LoadTest(Map<String, String> options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (equals < 0 || !DEFAULTS.containsKey(arg.substring(0, equals))) {
+        System.err.println("Unknown option " + arg + ", the options (with their default values) are " + DEFAULTS);
+        System.exit(1);
+      }
+      options.put(arg.substring(0, equals), arg.substring(equals + 1));
+    }
+    LoadTest test = new LoadTest(options);
+    test.run();
+    test.printReport(System.out);
+    System.out.print(Metrics.summary());
+    if (!options.get("json").isEmpty()) {
+      new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(options.get("json")), test.getReport());
+    }
+  }
+
+  public void run() throws IOException {
+    File workspace = new File(options.get("workspace"));
+    FileUtils.deleteDirectory(workspace);
+    Application.WORKSPACE_DIRECTORY = new File(workspace, "quotes").getPath();
+    Application.CACHE_FILE = new File(workspace, "quotes.cache").getPath();
+    Application.ARCHIVE_DIRECTORY = new File(workspace, "quotes.archive").getPath();
+    Application.TAG_INDEX_FILE = new File(workspace, "quotes.tags").getPath();
+
+    try (LoadTestQuoteServer server = new LoadTestQuoteServer(getLong("latency"), getLong("jitter"), 0, getInt("payload"))) {
+      int warmup = getInt("warmup");
+      if (warmup > 0) {
+        Application application = createApplication(server);
+        application.fetchAndStoreQuotes(warmup);
+        application.processQuoteFiles();
+      }
+      server.setErrorRate(Double.parseDouble(options.get("errorRate")));
+      int warmupRequests = server.getRequestCount();
+
+      Application application = createApplication(server);
+      Metrics.reset();
+      Metrics.setEnabled(true);
+      long start = System.nanoTime();
+      long fetched;
+      if (isPipelined()) {
+        application.fetchStoreAndProcessQuotes(getInt("quotes"));
+        fetched = start;
+      } else {
+        application.fetchAndStoreQuotes(getInt("quotes"));
+        fetched = System.nanoTime();
+        application.processQuoteFiles();
+      }
+      long processed = System.nanoTime();
+      Metrics.setEnabled(false);
+
+      fetchAndStoreNanos = fetched - start;
+      processNanos = processed - fetched;
+      firstTransformNanos = Metrics.TRANSFORM.getFirstCompletionNanos() - start;
+      requests = server.getRequestCount() - warmupRequests;
+      errors = server.getErrorCount();
+    }
+  }
+
+  private Application createApplication(LoadTestQuoteServer server) throws IOException {
+    Application application = new Application(server.getEndpoint(), getInt("concurrency"), getInt("batch"));
+    application.setQuoteCache(new QuoteCache(new File(Application.CACHE_FILE), 100000, TimeUnit.DAYS.toMillis(1)));
+    application.setArchiveMode(Boolean.parseBoolean(options.get("archive")));
+    return application;
+  }
+
+  public void printReport(PrintStream out) {
+    out.println("Load test " + options);
+    out.printf("%-10s %10s %10s %12s %10s %10s %10s%n", "Stage", "Operations", "Failures", "Ops/s", "p50 (ms)", "p99 (ms)", "Max (ms)");
+    for (StageMetrics stage : Metrics.getStages()) {
+      out.printf("%-10s %10d %10d %12.1f %10.3f %10.3f %10.3f%n", stage.getName(),
+        stage.getCount(), stage.getFailures(), throughput(stage),
+        stage.getP50Millis(), stage.getP99Millis(), stage.getMaxMillis());
+    }
+    if (isPipelined()) {
+      out.printf("fetchStoreAndProcessQuotes: %.1f ms (%.1f quotes/s, %d requests, %d errors)%n",
+        millis(processNanos), getInt("quotes") * 1e9 / processNanos, requests, errors);
+    } else {
+      out.printf("fetchAndStoreQuotes: %.1f ms (%.1f quotes/s, %d requests, %d errors)%n",
+        millis(fetchAndStoreNanos), getInt("quotes") * 1e9 / fetchAndStoreNanos, requests, errors);
+      out.printf("processQuoteFiles: %.1f ms (%.1f files/s)%n",
+        millis(processNanos), Metrics.TRANSFORM.getCount() * 1e9 / processNanos);
+    }
+    out.printf("First quote transformed after %.1f ms%n", millis(firstTransformNanos));
+  }
+
+  /**
+   * @return the options and the results, in a map that can be written in JSON
+   */
+  public Map<String, Object> getReport() {
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("options", options);
+    Map<String, Object> stages = new LinkedHashMap<>();
+    for (StageMetrics stage : Metrics.getStages()) {
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("operations", stage.getCount());
+      result.put("failures", stage.getFailures());
+      result.put("operationsPerSecond", throughput(stage));
+      result.put("p50Millis", stage.getP50Millis());
+      result.put("p99Millis", stage.getP99Millis());
+      result.put("maxMillis", stage.getMaxMillis());
+      stages.put(stage.getName(), result);
+    }
+    report.put("stages", stages);
+    report.put("fetchAndStoreMillis", millis(fetchAndStoreNanos));
+    report.put("processMillis", millis(processNanos));
+    report.put("firstTransformMillis", millis(firstTransformNanos));
+    report.put("requests", requests);
+    report.put("errors", errors);
+    return report;
+  }
+
+  /**
+   * The fetch, decode and store operations are done during fetchAndStoreQuotes,
+   * the explore and transform operations during processQuoteFiles (in pipelined
+   * mode, all the operations are done during fetchStoreAndProcessQuotes).
+   */
+  private double throughput(StageMetrics stage) {
+    boolean processing = stage == Metrics.EXPLORE || stage == Metrics.TRANSFORM;
+    long nanos = processing || isPipelined() ? processNanos : fetchAndStoreNanos;
+    return nanos == 0 ? 0 : stage.getCount() * 1e9 / nanos;
+  }
+
+  private boolean isPipelined() {
+    return Boolean.parseBoolean(options.get("pipeline"));
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  private int getInt(String option) {
+    return Integer.parseInt(options.get(option));
+  }
+
+  private long getLong(String option) {
+    return Long.parseLong(options.get(option));
+  }
+
+}
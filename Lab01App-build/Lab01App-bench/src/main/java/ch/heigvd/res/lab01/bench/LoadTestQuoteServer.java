@@ -0,0 +1,162 @@
+package ch.heigvd.res.lab01.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An HTTP server, started on a random local port, which sends jokes with the
+ * JSON schema of the Chuck Norris API (see Quote and Quote.Value), one at a time
+ * (/jokes/random) or by batches (/jokes/random/N). It is used by the LoadTest,
+ * so that the whole application can be measured without the network.
+ *
+ * Every response waits latency milliseconds, plus a random jitter between 0 and
+ * jitter milliseconds. A fraction of the requests (the error rate) is answered
+ * with an HTTP 500 error, without a body. The jokes have payloadSize characters
+ * (words separated by spaces, which Quote.getQuote splits in lines).
+ *
+ * @author Olivier Liechti
+ */
+public class LoadTestQuoteServer implements AutoCloseable {
+
+  private static final String[] WORDS = {"Chuck", "Norris", "can", "divide", "by", "zero", "and", "count", "to", "infinity", "twice"};
+
+  static {
+    /*
+     * The JDK server sends the headers and the body of a response in two packets:
+     * with Nagle's algorithm, the body waits for the ACK of the headers, which
+     * the client delays by up to 40 ms. Every response would take 40 ms more.
+     */
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final AtomicInteger requestCounter = new AtomicInteger();
+  private final AtomicInteger errorCounter = new AtomicInteger();
+  private final AtomicInteger jokeCounter = new AtomicInteger();
+  private final long latency;
+  private final long jitter;
+  private final String joke;
+  private volatile double errorRate;
+
+  /**
+   * @param latency the time (in milliseconds) the server waits before every response
+   * @param jitter the maximum random time (in milliseconds) added to the latency
+   * @param errorRate the fraction of the requests answered with an error (between 0 and 1)
+   * @param payloadSize the number of characters of the jokes
+   */
+  public LoadTestQuoteServer(long latency, long jitter, double errorRate, int payloadSize) throws IOException {
+    if (latency < 0 || jitter < 0 || payloadSize < 1) {
+      throw new IllegalArgumentException("The latency and the jitter cannot be negative, and the payload size must be at least 1");
+    }
+    this.latency = latency;
+    this.jitter = jitter;
+    this.joke = createJoke(payloadSize);
+    setErrorRate(errorRate);
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/jokes/random", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        handleRequest(exchange);
+      }
+    });
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  public String getEndpoint() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/jokes/random";
+  }
+
+  /**
+   * @param errorRate the fraction of the requests answered with an error (between 0 and 1)
+   */
+  public final void setErrorRate(double errorRate) {
+    if (errorRate < 0 || errorRate > 1) {
+      throw new IllegalArgumentException("The error rate must be between 0 and 1, not " + errorRate);
+    }
+    this.errorRate = errorRate;
+  }
+
+  public int getRequestCount() {
+    return requestCounter.get();
+  }
+
+  public int getErrorCount() {
+    return errorCounter.get();
+  }
+
+  private void handleRequest(HttpExchange exchange) throws IOException {
+    requestCounter.incrementAndGet();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long delay = latency + (jitter > 0 ? random.nextLong(jitter + 1) : 0);
+    try {
+      if (delay > 0) {
+        Thread.sleep(delay);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (random.nextDouble() < errorRate) {
+      errorCounter.incrementAndGet();
+      exchange.sendResponseHeaders(500, -1);
+      exchange.close();
+      return;
+    }
+    String[] segments = exchange.getRequestURI().getPath().split("/");
+    String batchSize = segments[segments.length - 1];
+    StringBuilder value = new StringBuilder();
+    if ("random".equals(batchSize)) {
+      appendJoke(value);
+    } else {
+      value.append('[');
+      for (int i = 0; i < Integer.parseInt(batchSize); i++) {
+        if (i > 0) {
+          value.append(',');
+        }
+        appendJoke(value);
+      }
+      value.append(']');
+    }
+    byte[] body = ("{\"type\":\"success\",\"value\":" + value + "}").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+  private void appendJoke(StringBuilder json) {
+    json.append("{\"id\":").append(jokeCounter.incrementAndGet())
+      .append(",\"joke\":\"").append(joke).append("\",\"categories\":[]}");
+  }
+
+  private static String createJoke(int payloadSize) {
+    StringBuilder joke = new StringBuilder(payloadSize + 16);
+    for (int i = 0; joke.length() < payloadSize; i++) {
+      if (i > 0) {
+        joke.append(' ');
+      }
+      joke.append(WORDS[i % WORDS.length]);
+    }
+    joke.setLength(payloadSize);
+    return joke.toString();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+}
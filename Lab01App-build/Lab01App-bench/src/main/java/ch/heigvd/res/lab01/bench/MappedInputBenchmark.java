@@ -0,0 +1,134 @@
+package ch.heigvd.res.lab01.bench;
+
+import ch.heigvd.res.lab01.impl.transformers.FileTransformer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the streamed input of a FileTransformer (read calls into a buffer)
+ * with the mapped input (FileChannel.map), for several file sizes, with the
+ * filter writers and with the byte pipeline.
+ *
+ * The filters of the transformer drop what they receive, so the output files stay
+ * empty: we measure the input side only (reading, and decoding for the filter
+ * writers). The input file is in the page cache after the first iteration, so
+ * this is the cost of getting the bytes from the cache into the filters.
+ *
+ * @author Olivier Liechti
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappedInputBenchmark {
+
+  @Param({"1", "16", "64"})
+  public int megabytes;
+
+  @Param({"false", "true"})
+  public boolean bytePipeline;
+
+  private File directory;
+  private File input;
+  private FileTransformer streamedTransformer;
+  private FileTransformer mappedTransformer;
+
+  @Setup(Level.Trial)
+  public void createInput() throws IOException {
+    directory = new File(System.getProperty("java.io.tmpdir"), "lab01-mapped-bench");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    input = new File(directory, "input.utf8");
+    StringBuilder line = new StringBuilder();
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(input), StandardCharsets.UTF_8)) {
+      for (long written = 0, i = 0; written < megabytes * 1024L * 1024L; i++) {
+        line.setLength(0);
+        line.append("Chuck Norris peut compter jusqu'à l'infini, deux fois (").append(i).append(").\n");
+        writer.write(line.toString());
+        written += line.length();
+      }
+    }
+    streamedTransformer = new DiscardingTransformer();
+    streamedTransformer.setBytePipeline(bytePipeline);
+    mappedTransformer = new DiscardingTransformer();
+    mappedTransformer.setBytePipeline(bytePipeline);
+    mappedTransformer.setMappedInputThreshold(0);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteInput() throws IOException {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Benchmark
+  public void streamed() {
+    streamedTransformer.visit(input);
+  }
+
+  @Benchmark
+  public void mapped() {
+    mappedTransformer.visit(input);
+  }
+
+  /**
+   * A transformer whose filters (char and byte) drop everything
+   */
+  static class DiscardingTransformer extends FileTransformer {
+
+    @Override
+    public Writer decorateWithFilters(Writer writer) {
+      return new FilterWriter(writer) {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+        }
+
+        @Override
+        public void write(int c) {
+        }
+      };
+    }
+
+    @Override
+    public OutputStream decorateWithByteFilters(OutputStream stream) {
+      return new FilterOutputStream(stream) {
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public void write(int b) {
+        }
+      };
+    }
+
+  }
+
+}
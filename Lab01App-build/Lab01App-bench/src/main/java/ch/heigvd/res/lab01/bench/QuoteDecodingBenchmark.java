@@ -0,0 +1,59 @@
+package ch.heigvd.res.lab01.bench;
+
+import ch.heigvd.res.lab01.quotes.Quote;
+import ch.heigvd.res.lab01.quotes.QuoteDecoder;
+import ch.heigvd.res.lab01.quotes.SimpleObjectMapperProvider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the databind path used by jersey (ObjectMapper.readValue, which is
+ * what response.readEntity(Quote.class) ends up calling) with the streaming
+ * QuoteDecoder.
+ *
+ * @author Olivier Liechti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuoteDecodingBenchmark {
+
+  private byte[] payload;
+  private ObjectMapper mapper;
+  private QuoteDecoder decoder;
+
+  @Setup
+  public void setUp() {
+    payload = ("{\"type\":\"success\",\"value\":{\"id\":268,\"joke\":\"Time waits for no man. Unless that man is "
+      + "Olivier Liechti.\",\"categories\":[\"nerdy\"]}}").getBytes(StandardCharsets.UTF_8);
+    mapper = SimpleObjectMapperProvider.getSharedMapper();
+    decoder = new QuoteDecoder();
+  }
+
+  @Benchmark
+  public Quote databind() throws IOException {
+    return mapper.readValue(new ByteArrayInputStream(payload), Quote.class);
+  }
+
+  @Benchmark
+  public Quote streaming() throws IOException {
+    return decoder.decode(new ByteArrayInputStream(payload));
+  }
+
+}
@@ -0,0 +1,126 @@
+package ch.heigvd.res.lab01.bench;
+
+import ch.heigvd.res.lab01.impl.QuoteStore;
+import ch.heigvd.res.lab01.impl.archive.QuoteArchive;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time needed to store a number of quotes in an empty workspace:
+ * with the code that was used by Application.storeQuote before the QuoteStore
+ * (mkdirs and an OutputStreamWriter for every quote), and with a QuoteStore, for
+ * several batch sizes and sync policies. The quoteArchive benchmark appends the
+ * same quotes to a QuoteArchive (which does not depend on the batch size).
+ *
+ * The tag paths are picked like the TagsGenerator does (one to four random tags),
+ * with a fixed seed. The workspace is deleted before every invocation, which is
+ * not measured. To reproduce the numbers for 100k quotes, run with
+ * -p quotes=100000.
+ *
+ * @author Olivier Liechti
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QuoteStoreBenchmark {
+
+  private static final String[] TAGS = {"funny", "popular", "movie", "internet", "joke", "hilarious", "geek"};
+
+  @Param({"10000"})
+  public int quotes;
+
+  @Param({"1", "100"})
+  public int batchSize;
+
+  @Param({"NEVER"})
+  public QuoteStore.SyncPolicy syncPolicy;
+
+  private File root;
+  private final List<List<String>> tags = new ArrayList<>();
+  private final List<String> texts = new ArrayList<>();
+
+  @Setup(Level.Trial)
+  public void createQuotes() {
+    root = new File(System.getProperty("java.io.tmpdir"), "lab01-store-bench");
+    Random random = new Random(42);
+    for (int i = 0; i < quotes; i++) {
+      String[] path = new String[1 + random.nextInt(4)];
+      for (int j = 0; j < path.length; j++) {
+        path[j] = TAGS[random.nextInt(TAGS.length)];
+      }
+      tags.add(Arrays.asList(path));
+      texts.add("Chuck Norris can write to\nthe disk without\nsystem calls (" + i + ").");
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void deleteWorkspace() throws IOException {
+    FileUtils.deleteDirectory(root);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteWorkspaceAtTheEnd() throws IOException {
+    FileUtils.deleteDirectory(root);
+  }
+
+  @Benchmark
+  public void quoteStore() throws IOException {
+    try (QuoteStore store = new QuoteStore(root, batchSize, syncPolicy)) {
+      for (int i = 0; i < quotes; i++) {
+        store.store(tags.get(i), "quote-" + i + ".utf8", texts.get(i));
+      }
+    }
+  }
+
+  @Benchmark
+  public void quoteArchive() throws IOException {
+    try (QuoteArchive archive = new QuoteArchive(root)) {
+      for (int i = 0; i < quotes; i++) {
+        archive.append(tags.get(i), "quote-" + i + ".utf8", texts.get(i).getBytes(StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  @Benchmark
+  public void mkdirsAndWriter() throws IOException {
+    for (int i = 0; i < quotes; i++) {
+      File directory = root;
+      for (String tag : tags.get(i)) {
+        directory = new File(directory, tag);
+      }
+      if (!directory.mkdirs() && !directory.isDirectory()) {
+        throw new IOException("Could not create directory " + directory);
+      }
+      try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, "quote-" + i + ".utf8")), "UTF-8")) {
+        writer.write(texts.get(i));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+package ch.heigvd.res.lab01.bench;
+
+import ch.heigvd.res.lab01.impl.TagIndex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the tag queries of the TagIndex (one tag, and the intersection of two
+ * tags) on a synthetic set of quote paths, and compares them with a scan of the
+ * paths (which is what we do when we look for the tag in the paths given by a
+ * file explorer, without the cost of the exploration itself).
+ *
+ * @author Olivier Liechti
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagIndexBenchmark {
+
+  private static final String[] TAGS = {"funny", "popular", "movie", "internet", "joke", "hilarious", "geek"};
+
+  @Param({"100000"})
+  public int quotes;
+
+  private TagIndex index;
+  private final List<String> paths = new ArrayList<>();
+
+  @Setup
+  public void createIndex() {
+    index = new TagIndex();
+    Random random = new Random(42);
+    for (int i = 0; i < quotes; i++) {
+      String[] tags = new String[1 + random.nextInt(4)];
+      StringBuilder path = new StringBuilder();
+      for (int j = 0; j < tags.length; j++) {
+        tags[j] = TAGS[random.nextInt(TAGS.length)];
+        path.append(tags[j]).append('/');
+      }
+      path.append("quote-").append(i).append(".utf8");
+      index.add(Arrays.asList(tags), path.toString());
+      paths.add(path.toString());
+    }
+  }
+
+  @Benchmark
+  public int countOneTag() {
+    return index.count("geek");
+  }
+
+  @Benchmark
+  public List<String> findOneTag() {
+    return index.find("geek");
+  }
+
+  @Benchmark
+  public List<String> findTwoTags() {
+    return index.find("geek", "movie");
+  }
+
+  @Benchmark
+  public List<String> scanTwoTags() {
+    List<String> result = new ArrayList<>();
+    for (String path : paths) {
+      boolean geek = false;
+      boolean movie = false;
+      for (String directory : path.split("/")) {
+        geek |= directory.equals("geek");
+        movie |= directory.equals("movie");
+      }
+      if (geek && movie) {
+        result.add(path);
+      }
+    }
+    return result;
+  }
+
+}
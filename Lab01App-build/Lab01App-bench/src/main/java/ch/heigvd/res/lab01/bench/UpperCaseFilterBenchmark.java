@@ -0,0 +1,102 @@
+package ch.heigvd.res.lab01.bench;
+
+import ch.heigvd.res.lab01.impl.filters.UpperCaseFilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the UpperCaseFilterWriter, on ASCII text, on text
+ * with accented letters and on text that also has supplementary characters (see
+ * Corpus). Every operation
+ * writes one million characters (by chunks of 8192, like the FileTransformer),
+ * so the score in ops/s is a throughput in millions of characters per second.
+ *
+ * The naive benchmark is the simple implementation that we want to avoid: it
+ * creates a new String for every chunk and calls toUpperCase on it.
+ *
+ * @author Olivier Liechti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpperCaseFilterBenchmark {
+
+  private static final int TEXT_SIZE = 1000 * 1000;
+  private static final int CHUNK_SIZE = 8192;
+
+  @Param({"ascii", "latin", "unicode"})
+  public String text;
+
+  @Param({"60"})
+  public int lineLength;
+
+  private char[] chars;
+  private Writer sink;
+
+  @Setup
+  public void setUp() {
+    chars = Corpus.generate(TEXT_SIZE, lineLength, text, 42).toCharArray();
+    sink = new NullWriter();
+  }
+
+  @Benchmark
+  public Writer upperCaseFilterWriter() throws IOException {
+    Writer writer = new UpperCaseFilterWriter(sink);
+    for (int off = 0; off < chars.length; off += CHUNK_SIZE) {
+      writer.write(chars, off, Math.min(CHUNK_SIZE, chars.length - off));
+    }
+    return writer;
+  }
+
+  @Benchmark
+  public Writer naiveStringToUpperCase() throws IOException {
+    for (int off = 0; off < chars.length; off += CHUNK_SIZE) {
+      sink.write(new String(chars, off, Math.min(CHUNK_SIZE, chars.length - off)).toUpperCase(Locale.ROOT));
+    }
+    return sink;
+  }
+
+  /**
+   * A writer that drops everything, so that we only measure the filter
+   */
+  static class NullWriter extends Writer {
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+    }
+
+    @Override
+    public void write(int c) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+  }
+
+}
@@ -1,20 +1,43 @@
 package ch.heigvd.res.lab01.impl;
 
+import ch.heigvd.res.lab01.impl.archive.ArchiveFileExplorer;
+import ch.heigvd.res.lab01.impl.archive.ArchiveFileTransformer;
+import ch.heigvd.res.lab01.impl.archive.QuoteArchive;
 import ch.heigvd.res.lab01.impl.explorers.DFSFileExplorer;
+import ch.heigvd.res.lab01.impl.explorers.ParallelFileExplorer;
 import ch.heigvd.res.lab01.impl.transformers.CompleteFileTransformer;
+import ch.heigvd.res.lab01.impl.transformers.IncrementalFileTransformer;
+import ch.heigvd.res.lab01.impl.transformers.TransformManifest;
 import ch.heigvd.res.lab01.interfaces.IApplication;
 import ch.heigvd.res.lab01.interfaces.IFileExplorer;
 import ch.heigvd.res.lab01.interfaces.IFileVisitor;
+import ch.heigvd.res.lab01.metrics.Metrics;
+import ch.heigvd.res.lab01.quotes.QuoteCache;
 import ch.heigvd.res.lab01.quotes.QuoteClient;
 import ch.heigvd.res.lab01.quotes.Quote;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.ws.rs.ProcessingException;
 import org.apache.commons.io.FileUtils;
 
 /**
@@ -28,9 +51,205 @@ public class Application implements IApplication {
    * to where the Java application is invoked.
    */
   public static String WORKSPACE_DIRECTORY = "./workspace/quotes";
+
+  /**
+   * This constant defines where the quote cache is persisted. It is next to (and
+   * not in) WORKSPACE_DIRECTORY, so it is not deleted by clearOutputDirectory.
+   */
+  public static String CACHE_FILE = "./workspace/quotes.cache";
+
+  /**
+   * This constant defines where the quotes are stored in archive mode (see
+   * QuoteArchive). It is next to WORKSPACE_DIRECTORY, like CACHE_FILE.
+   */
+  public static String ARCHIVE_DIRECTORY = "./workspace/quotes.archive";
+
+  /**
+   * This constant defines where the tag index of the stored quotes is persisted
+   * (see TagIndex). It is deleted with the quotes by clearOutputDirectory.
+   */
+  public static String TAG_INDEX_FILE = "./workspace/quotes.tags";
   
   private static final Logger LOG = Logger.getLogger(Application.class.getName());
-  
+
+  /**
+   * The number of quotes (and of files) that can wait between two stages of the
+   * pipeline when no value is given
+   */
+  public static final int DEFAULT_PIPELINE_QUEUE_CAPACITY = 256;
+
+  private static final int CACHE_MAX_ENTRIES = 100000;
+  private static final long CACHE_MAX_BYTES = 64L * 1024 * 1024;
+  private static final long CACHE_TIME_TO_LIVE = TimeUnit.DAYS.toMillis(7);
+
+  /**
+   * The URL of the quote web service, or null to use the default endpoint
+   */
+  private final String quoteEndpoint;
+
+  /**
+   * The number of quotes that are fetched (and stored) in parallel
+   */
+  private final int parallelism;
+
+  /**
+   * The number of quotes that are asked to the web service in a single request
+   */
+  private final int batchSize;
+
+  /**
+   * When a cache is set, it records the quotes received from the web service and
+   * serves quotes when the web service fails (or always, in offline mode)
+   */
+  private QuoteCache quoteCache = null;
+  private boolean offline = false;
+
+  /**
+   * In incremental mode, processQuoteFiles only transforms the quote files that
+   * have changed since the last call (see TransformManifest). The fetching methods
+   * delete the workspace and its manifest, so the mode only skips files when
+   * processQuoteFiles is called again on the same workspace.
+   */
+  private boolean incremental = false;
+
+  /**
+   * The quotes are written by batches of storeBatchSize quotes (see QuoteStore).
+   * The store only exists while fetchAndStoreQuotes is running.
+   */
+  private int storeBatchSize = QuoteStore.DEFAULT_BATCH_SIZE;
+  private QuoteStore.SyncPolicy syncPolicy = QuoteStore.SyncPolicy.NEVER;
+  private volatile QuoteStore quoteStore = null;
+
+  /**
+   * In archive mode, the quotes are appended to a QuoteArchive instead of being
+   * written in one file each. The files are shown under WORKSPACE_DIRECTORY by an
+   * ArchiveFileExplorer, and their transformed versions are appended to the archive.
+   */
+  private boolean archiveMode = false;
+  private volatile QuoteArchive quoteArchive = null;
+
+  /**
+   * The tag index of the stored quotes, loaded from TAG_INDEX_FILE when it is
+   * first needed
+   */
+  private TagIndex tagIndex = null;
+
+  /**
+   * In pipelined mode, main calls fetchStoreAndProcessQuotes: the quotes are
+   * stored and transformed while the next ones are fetched. The store and
+   * transform stages have their own threads, and the queues between the stages
+   * hold at most pipelineQueueCapacity elements. processQuoteFiles also uses
+   * transformThreads threads.
+   */
+  private boolean pipelined = false;
+  private int storeThreads = 2;
+  private int transformThreads = Runtime.getRuntime().availableProcessors();
+  private int pipelineQueueCapacity = DEFAULT_PIPELINE_QUEUE_CAPACITY;
+
+  public Application() {
+    this(null, 1);
+  }
+
+  public Application(String quoteEndpoint, int parallelism) {
+    this(quoteEndpoint, parallelism, 1);
+  }
+
+  /**
+   * @param quoteEndpoint the URL of the quote web service, or null to use the default endpoint
+   * @param parallelism the number of requests that are sent in parallel (1 means one after the other)
+   * @param batchSize the number of quotes asked in each request (1 means one request per quote)
+   */
+  public Application(String quoteEndpoint, int parallelism, int batchSize) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("The parallelism must be at least 1, not " + parallelism);
+    }
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("The batch size must be at least 1, not " + batchSize);
+    }
+    this.quoteEndpoint = quoteEndpoint;
+    this.parallelism = parallelism;
+    this.batchSize = batchSize;
+  }
+
+  public void setQuoteCache(QuoteCache quoteCache) {
+    this.quoteCache = quoteCache;
+  }
+
+  /**
+   * @param offline true if the quotes must be served by the quote cache, without
+   * contacting the web service
+   */
+  public void setOffline(boolean offline) {
+    this.offline = offline;
+  }
+
+  /**
+   * @param incremental true if processQuoteFiles must skip the files that have
+   * already been transformed and have not changed since
+   */
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  /**
+   * @param archiveMode true if the quotes must be stored in a QuoteArchive (in
+   * ARCHIVE_DIRECTORY) instead of one file per quote
+   */
+  public void setArchiveMode(boolean archiveMode) {
+    this.archiveMode = archiveMode;
+  }
+
+  /**
+   * @param storeBatchSize the number of quote files written at once by
+   * fetchAndStoreQuotes (1 means that every quote is written as soon as it is received)
+   */
+  public void setStoreBatchSize(int storeBatchSize) {
+    if (storeBatchSize < 1) {
+      throw new IllegalArgumentException("The store batch size must be at least 1, not " + storeBatchSize);
+    }
+    this.storeBatchSize = storeBatchSize;
+  }
+
+  /**
+   * @param syncPolicy defines whether the quote files are forced to the disk at the
+   * end of every batch
+   */
+  public void setSyncPolicy(QuoteStore.SyncPolicy syncPolicy) {
+    this.syncPolicy = syncPolicy;
+  }
+
+  /**
+   * @param pipelined true if main must fetch, store and transform the quotes at the
+   * same time (see fetchStoreAndProcessQuotes)
+   */
+  public void setPipelined(boolean pipelined) {
+    this.pipelined = pipelined;
+  }
+
+  /**
+   * @param storeThreads the number of threads that store the quotes in the pipeline
+   * @param transformThreads the number of threads that transform the quote files, in
+   * the pipeline and in processQuoteFiles
+   */
+  public void setPipelineThreads(int storeThreads, int transformThreads) {
+    if (storeThreads < 1 || transformThreads < 1) {
+      throw new IllegalArgumentException("The pipeline needs at least 1 thread per stage, not " + storeThreads + " and " + transformThreads);
+    }
+    this.storeThreads = storeThreads;
+    this.transformThreads = transformThreads;
+  }
+
+  /**
+   * @param pipelineQueueCapacity the number of elements that can wait between two
+   * stages of the pipeline (when a queue is full, the previous stage waits)
+   */
+  public void setPipelineQueueCapacity(int pipelineQueueCapacity) {
+    if (pipelineQueueCapacity < 1) {
+      throw new IllegalArgumentException("The queue capacity must be at least 1, not " + pipelineQueueCapacity);
+    }
+    this.pipelineQueueCapacity = pipelineQueueCapacity;
+  }
+
   public static void main(String[] args) {
     
     /*
@@ -42,24 +261,80 @@ public class Application implements IApplication {
     
        
     int numberOfQuotes = 0;
+    int parallelism = 1;
+    int batchSize = 1;
+    boolean offline = false;
+    boolean archiveMode = false;
+    boolean pipelined = false;
+    boolean incremental = false;
     try {
       numberOfQuotes = Integer.parseInt(args[0]);
+      if (args.length > 1) {
+        parallelism = Integer.parseInt(args[1]);
+      }
+      if (args.length > 2) {
+        batchSize = Integer.parseInt(args[2]);
+      }
+      for (int i = 3; i < args.length; i++) {
+        if ("offline".equals(args[i])) {
+          offline = true;
+        } else if ("archive".equals(args[i])) {
+          archiveMode = true;
+        } else if ("pipeline".equals(args[i])) {
+          pipelined = true;
+        } else if ("incremental".equals(args[i])) {
+          incremental = true;
+        } else {
+          throw new IllegalArgumentException();
+        }
+      }
+      if (numberOfQuotes < 0 || parallelism < 1 || batchSize < 1 || (numberOfQuotes == 0 && pipelined)) {
+        throw new IllegalArgumentException();
+      }
     } catch (Exception e) {
-      System.err.println("The command accepts a single numeric argument (number of quotes to fetch)");
+      System.err.println("The command accepts a numeric argument (number of quotes to fetch, or 0 to only transform "
+        + "the quotes left in the workspace by a previous run), optionally followed by "
+        + "the number of requests to send in parallel (1 by default), the number of quotes to ask in each request "
+        + "(1 by default), and the words offline (to serve the quotes from the cache), archive (to store the "
+        + "quotes in a single archive), pipeline (to transform the quotes while the next ones are fetched) and "
+        + "incremental (to only transform the quote files that have changed since the last run)");
       System.exit(-1);
     }
         
-    Application app = new Application();
+    /*
+     * The metrics are only recorded when they are enabled; they can be read with JMX
+     * while the application runs, and are logged at the end
+     */
+    Metrics.setEnabled(true);
+    Metrics.registerMBeans();
+
+    Application app = new Application(null, parallelism, batchSize);
+    app.setOffline(offline);
+    app.setArchiveMode(archiveMode);
+    app.setPipelined(pipelined);
+    app.setIncremental(incremental);
     try {
+      QuoteCache cache = new QuoteCache(new File(CACHE_FILE), CACHE_MAX_ENTRIES, CACHE_MAX_BYTES, CACHE_TIME_TO_LIVE);
+      app.setQuoteCache(cache);
+
       /*
        * Step 1 : clear the output directory
-       */
-      app.clearOutputDirectory();
-      
-      /*
        * Step 2 : use the QuotesClient to fetch quotes; store each quote in a file
+       *          (in pipelined mode, the quotes are also transformed, see step 4)
+       *
+       * Fetching rebuilds the workspace from scratch, so every quote file is new and
+       * the incremental mode has nothing to skip. When no quote is asked, the
+       * workspace of the previous run is kept and only transformed (step 4), which
+       * is where the incremental mode saves work.
        */
-      app.fetchAndStoreQuotes(numberOfQuotes);
+      if (numberOfQuotes > 0) {
+        app.clearOutputDirectory();
+        if (pipelined) {
+          app.fetchStoreAndProcessQuotes(numberOfQuotes);
+        } else {
+          app.fetchAndStoreQuotes(numberOfQuotes);
+        }
+      }
       
       /*
        * Step 3 : use a file explorer to traverse the file system; print the name of each directory and file
@@ -72,7 +347,13 @@ public class Application implements IApplication {
        * Step 4 : process the quote files, by applying 2 transformations to their content
        *          (convert to uppercase and add line numbers)
        */
-      app.processQuoteFiles();
+      if (!pipelined) {
+        app.processQuoteFiles();
+      }
+
+      LOG.log(Level.INFO, "Quote cache: {0} entries, {1} hits, {2} misses, {3} evictions",
+        new Object[]{cache.size(), cache.getHits(), cache.getMisses(), cache.getEvictions()});
+      LOG.log(Level.INFO, "Metrics:\n{0}", Metrics.summary());
       
     } catch (IOException ex) {
       LOG.log(Level.SEVERE, "Could not fetch quotes. {0}", ex.getMessage());
@@ -83,20 +364,240 @@ public class Application implements IApplication {
   @Override
   public void fetchAndStoreQuotes(int numberOfQuotes) throws IOException {
     clearOutputDirectory();
-    QuoteClient client = new QuoteClient();
-    for (int i = 0; i < numberOfQuotes; i++) {
-      Quote quote = client.fetchQuote();
-      /* There is a missing piece here!
-       * As you can see, this method handles the first part of the lab. It uses the web service
-       * client to fetch quotes. We have removed a single line from this method. It is a call to
-       * one method provided by this class, which is responsible for storing the content of the
-       * quote in a text file (and for generating the directories based on the tags).
-       */
-      LOG.info("Received a new joke with " + quote.getTags().size() + " tags.");
-      for (String tag : quote.getTags()) {
-        LOG.info("> " + tag);
+    if (offline && quoteCache == null) {
+      throw new IOException("The quotes cannot be fetched offline without a quote cache");
+    }
+    if (archiveMode) {
+      try (QuoteArchive archive = new QuoteArchive(new File(ARCHIVE_DIRECTORY))) {
+        quoteArchive = archive;
+        fetchAndStoreAll(numberOfQuotes);
+      } finally {
+        quoteArchive = null;
+        saveTagIndex();
+      }
+      return;
+    }
+    QuoteStore store = new QuoteStore(new File(WORKSPACE_DIRECTORY), storeBatchSize, syncPolicy);
+    quoteStore = store;
+    try {
+      fetchAndStoreAll(numberOfQuotes);
+      store.flush();
+    } finally {
+      quoteStore = null;
+      saveTagIndex();
+    }
+    LOG.log(Level.INFO, "{0} quotes stored in {1} batches, {2} directories created.",
+      new Object[]{store.getStoredQuotes(), store.getBatches(), store.getCreatedDirectories()});
+  }
+
+  /**
+   * Does the work of fetchAndStoreQuotes and processQuoteFiles at the same time:
+   * the quotes flow from the fetch threads (parallelism threads, as in
+   * fetchAndStoreQuotes) to the store threads, and the stored files flow to the
+   * transform threads, through bounded queues. When a queue is full, the stage
+   * that fills it waits, so a slow stage slows down the previous ones instead of
+   * filling the memory. The first quote is transformed as soon as it has been
+   * fetched and stored, and the total time is close to the time of the slowest
+   * stage.
+   *
+   * Every quote file is written as soon as the quote is stored (the store batch
+   * size is not used), so that it can be transformed right away. The workspace is
+   * not explored to find the files. In archive mode, the stages run one after the
+   * other (fetchAndStoreQuotes, then processQuoteFiles).
+   *
+   * @param numberOfQuotes the number of quotes to fetch, store and transform
+   * @throws IOException if a quote cannot be fetched, stored or transformed
+   */
+  public void fetchStoreAndProcessQuotes(int numberOfQuotes) throws IOException {
+    if (archiveMode) {
+      LOG.info("The archive mode does not support the pipeline, the stages run one after the other.");
+      fetchAndStoreQuotes(numberOfQuotes);
+      processQuoteFiles();
+      return;
+    }
+    clearOutputDirectory();
+    if (offline && quoteCache == null) {
+      throw new IOException("The quotes cannot be fetched offline without a quote cache");
+    }
+    File workspace = new File(WORKSPACE_DIRECTORY);
+    TransformManifest manifest = incremental ? new TransformManifest(workspace) : null;
+    IFileVisitor transformer = incremental
+      ? new IncrementalFileTransformer(new CompleteFileTransformer(), manifest)
+      : new CompleteFileTransformer();
+    QuoteStore store = new QuoteStore(workspace, 1, syncPolicy);
+    quoteStore = store;
+    Pipeline pipeline;
+    try (QuoteClient client = offline ? null : createQuoteClient()) {
+      pipeline = new Pipeline(client, numberOfQuotes, transformer);
+      pipeline.run();
+    } finally {
+      quoteStore = null;
+      saveTagIndex();
+    }
+    if (quoteCache != null && !offline) {
+      quoteCache.save();
+    }
+    if (manifest != null) {
+      manifest.save();
+    }
+    LOG.log(Level.INFO, "{0} quotes fetched, stored and transformed in {1} ms (the first one after {2} ms).",
+      new Object[]{numberOfQuotes, pipeline.getTotalMillis(), pipeline.getFirstQuoteMillis()});
+  }
+
+  /**
+   * Finds the stored quotes that have some tags, with the tag index (without
+   * exploring the workspace).
+   *
+   * @param tags the tags that the quotes must have (all the quotes if there is none)
+   * @return the paths of the quote files, relative to WORKSPACE_DIRECTORY, with '/'
+   * as separator
+   * @throws IOException if the tag index cannot be read
+   */
+  public List<String> findQuoteFiles(String... tags) throws IOException {
+    return getTagIndex().find(tags);
+  }
+
+  /**
+   * @param tags the tags that the quotes must have (all the quotes if there is none)
+   * @return the number of stored quotes that have all the tags
+   * @throws IOException if the tag index cannot be read
+   */
+  public int countQuoteFiles(String... tags) throws IOException {
+    return getTagIndex().count(tags);
+  }
+
+  /**
+   * Writes the tag index in TAG_INDEX_FILE. The index is kept in memory while the
+   * quotes are stored, and written once at the end of fetchAndStoreQuotes (and
+   * fetchStoreAndProcessQuotes).
+   *
+   * @throws IOException if the tag index cannot be written
+   */
+  public void saveTagIndex() throws IOException {
+    getTagIndex().save(new File(TAG_INDEX_FILE));
+  }
+
+  private synchronized TagIndex getTagIndex() throws IOException {
+    if (tagIndex == null) {
+      tagIndex = TagIndex.load(new File(TAG_INDEX_FILE));
+    }
+    return tagIndex;
+  }
+
+  /**
+   * Fetches the quotes and passes them to storeQuote, which adds them to the
+   * QuoteStore or to the QuoteArchive prepared by fetchAndStoreQuotes.
+   */
+  private void fetchAndStoreAll(int numberOfQuotes) throws IOException {
+    try (QuoteClient client = offline ? null : createQuoteClient()) {
+      if (parallelism == 1) {
+        for (int first = 1; first <= numberOfQuotes; first += batchSize) {
+          fetchAndStoreBatch(client, first, Math.min(batchSize, numberOfQuotes - first + 1));
+        }
+      } else {
+        fetchAndStoreQuotesConcurrently(client, numberOfQuotes);
+      }
+    }
+    if (quoteCache != null && !offline) {
+      quoteCache.save();
+    }
+  }
+
+  /**
+   * Fetches the quotes with a pool of parallelism threads, one task per batch. The
+   * numbers of the quotes are decided when a task is submitted (and not when the
+   * response arrives), so the files are named exactly as in the sequential mode.
+   * Each task stores its quotes as soon as they have been received.
+   */
+  private void fetchAndStoreQuotesConcurrently(final QuoteClient client, int numberOfQuotes) throws IOException {
+    int numberOfBatches = (numberOfQuotes + batchSize - 1) / batchSize;
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(numberOfBatches, 1)));
+    try {
+      List<Future<Void>> results = new ArrayList<>(numberOfBatches);
+      for (int first = 1; first <= numberOfQuotes; first += batchSize) {
+        final int firstQuoteNumber = first;
+        final int size = Math.min(batchSize, numberOfQuotes - first + 1);
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            fetchAndStoreBatch(client, firstQuoteNumber, size);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        try {
+          result.get();
+        } catch (ExecutionException e) {
+          throw new IOException("Could not fetch and store a quote", e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while fetching quotes", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Fetches size quotes (in a single request when the web service supports it) and
+   * stores them one by one, numbered from firstQuoteNumber.
+   */
+  private void fetchAndStoreBatch(QuoteClient client, int firstQuoteNumber, int size) throws IOException {
+    List<Quote> quotes = fetchBatch(client, size);
+    for (int i = 0; i < quotes.size(); i++) {
+      Quote quote = quotes.get(i);
+      storeQuote(quote, "quote-" + (firstQuoteNumber + i) + ".utf8");
+      logQuote(quote);
+    }
+  }
+
+  /**
+   * The quotes are logged at the FINE level, with a single message per quote (the
+   * message is only built when this level is enabled).
+   */
+  private static void logQuote(Quote quote) {
+    if (LOG.isLoggable(Level.FINE)) {
+      LOG.log(Level.FINE, "Received a new joke with {0} tags: {1}", new Object[]{quote.getTags().size(), quote.getTags()});
+    }
+  }
+
+  /**
+   * Gets size quotes from the web service and records them in the cache. If the web
+   * service fails (or does not answer before the read timeout), the quotes are served
+   * by the cache. In offline mode (the client is null), they always come from the cache.
+   */
+  private List<Quote> fetchBatch(QuoteClient client, int size) throws IOException {
+    if (client == null) {
+      return quoteCache.serve(size);
+    }
+    List<Quote> quotes;
+    try {
+      quotes = client.fetchQuoteBatch(size);
+    } catch (ProcessingException e) {
+      if (quoteCache == null) {
+        throw e;
       }
+      LOG.log(Level.WARNING, "The web service failed ({0}), the quotes are served by the cache.", e.getMessage());
+      return quoteCache.serve(size);
+    }
+    if (quoteCache != null) {
+      quoteCache.putAll(quotes);
+    }
+    return quotes;
+  }
+
+  /**
+   * The pool has at least one connection per fetching thread, so that the threads
+   * do not wait for each other's connections.
+   */
+  private QuoteClient createQuoteClient() {
+    int poolSize = Math.max(QuoteClient.DEFAULT_POOL_SIZE, parallelism);
+    if (quoteEndpoint == null) {
+      return new QuoteClient(poolSize);
     }
+    return new QuoteClient(quoteEndpoint, poolSize, QuoteClient.DEFAULT_CONNECT_TIMEOUT, QuoteClient.DEFAULT_READ_TIMEOUT);
   }
   
   /**
@@ -107,6 +608,13 @@ public class Application implements IApplication {
    */
   void clearOutputDirectory() throws IOException {
     FileUtils.deleteDirectory(new File(WORKSPACE_DIRECTORY));    
+    if (archiveMode) {
+      FileUtils.deleteDirectory(new File(ARCHIVE_DIRECTORY));
+    }
+    Files.deleteIfExists(new File(TAG_INDEX_FILE).toPath());
+    synchronized (this) {
+      tagIndex = new TagIndex();
+    }
   }
 
   /**
@@ -120,12 +628,55 @@ public class Application implements IApplication {
    * - with quote.getQuote(), it has access to the text of the quote. It stores
    *   this text in UTF-8 file.
    * 
+   * While fetchAndStoreQuotes is running, the quote is added to the current batch of
+   * the QuoteStore, and its file is written with the batch (at the latest when
+   * fetchAndStoreQuotes returns). Otherwise, the file is written right away. In
+   * archive mode, the quote is appended to the archive instead. In all cases, the
+   * quote is added to the tag index, which is saved at the end of
+   * fetchAndStoreQuotes (when this method is called directly, call saveTagIndex
+   * once the quotes have been stored).
+   * 
    * @param quote the quote object, with tags and text
    * @param filename the name of the file to create and where to store the quote text
    * @throws IOException 
    */
   void storeQuote(Quote quote, String filename) throws IOException {
-    throw new UnsupportedOperationException("The student has not implemented this method yet.");
+    long start = Metrics.start();
+    boolean stored = false;
+    try {
+      storeQuoteAndIndexIt(quote, filename);
+      stored = true;
+    } finally {
+      Metrics.STORE.record(start, stored);
+    }
+  }
+
+  private void storeQuoteAndIndexIt(Quote quote, String filename) throws IOException {
+    List<String> tags = quote.getTags();
+    QuoteArchive archive = quoteArchive;
+    QuoteStore store = quoteStore;
+    if (archive != null) {
+      archive.append(tags, filename, quote.getQuote().getBytes(StandardCharsets.UTF_8));
+    } else if (store != null) {
+      store.store(tags, filename, quote.getQuote());
+    } else {
+      try (QuoteStore singleQuoteStore = new QuoteStore(new File(WORKSPACE_DIRECTORY), 1, syncPolicy)) {
+        singleQuoteStore.store(tags, filename, quote.getQuote());
+      }
+    }
+    getTagIndex().add(tags, pathOf(tags, filename));
+  }
+
+  /**
+   * @return the path of a quote file relative to WORKSPACE_DIRECTORY, with '/' as
+   * separator (the path used by the TagIndex and the QuoteArchive)
+   */
+  private static String pathOf(List<String> tags, String filename) {
+    StringBuilder path = new StringBuilder();
+    for (String tag : tags) {
+      path.append(tag).append('/');
+    }
+    return path.append(filename).toString();
   }
   
   /**
@@ -133,15 +684,26 @@ public class Application implements IApplication {
    * encountered file and directory.
    */
   void printFileNames(final Writer writer) {
-    IFileExplorer explorer = new DFSFileExplorer();
-    explorer.explore(new File(WORKSPACE_DIRECTORY), new IFileVisitor() {
+    if (archiveMode) {
+      try (QuoteArchive archive = new QuoteArchive(new File(ARCHIVE_DIRECTORY))) {
+        printFileNames(new ArchiveFileExplorer(archive), writer);
+      } catch (IOException ex) {
+        LOG.log(Level.SEVERE, "Could not open the quote archive", ex);
+      }
+      return;
+    }
+    printFileNames(new DFSFileExplorer(), writer);
+  }
+
+  private void printFileNames(IFileExplorer explorer, final Writer writer) {
+    explore(explorer, new File(WORKSPACE_DIRECTORY), new IFileVisitor() {
       @Override
       public void visit(File file) {
-        /*
-         * There is a missing piece here. Notice how we use an anonymous class here. We provide the implementation
-         * of the the IFileVisitor interface inline. You just have to add the body of the visit method, which should
-         * be pretty easy (we want to write the filename, including the path, to the writer passed in argument).
-         */
+        try {
+          writer.write(file.getPath() + "\n");
+        } catch (IOException ex) {
+          LOG.log(Level.SEVERE, "Could not write the name of " + file, ex);
+        }
       }
     });
   }
@@ -151,10 +713,248 @@ public class Application implements IApplication {
     throw new UnsupportedOperationException("The student has not implemented this method yet.");
   }
 
+  /**
+   * The quote files are transformed in parallel: the CompleteFileTransformer is an
+   * IThreadSafeFileVisitor, so the ParallelFileExplorer uses all the threads of its
+   * pool. The transformations block on file I/O, so the explorer gets its own pool of
+   * transformThreads threads (which is shut down at the end) instead of the common
+   * ForkJoinPool, where they would hold up the other users of the common pool.
+   *
+   * In incremental mode, the transformer is decorated by an IncrementalFileTransformer
+   * and the manifest is saved in WORKSPACE_DIRECTORY after the traversal.
+   *
+   * In archive mode, the files of the archive are transformed one after the other
+   * and the results are appended to the archive (incremental mode does not apply).
+   */
   @Override
   public void processQuoteFiles() throws IOException {
-    IFileExplorer explorer = new DFSFileExplorer();
-    explorer.explore(new File(WORKSPACE_DIRECTORY), new CompleteFileTransformer());    
+    File workspace = new File(WORKSPACE_DIRECTORY);
+    if (archiveMode) {
+      try (QuoteArchive archive = new QuoteArchive(new File(ARCHIVE_DIRECTORY))) {
+        ArchiveFileTransformer transformer = new ArchiveFileTransformer(archive, workspace, new CompleteFileTransformer());
+        explore(new ArchiveFileExplorer(archive), workspace, transformer);
+        LOG.log(Level.INFO, "{0} archived quote files transformed.", transformer.getTransformedFiles());
+      }
+      return;
+    }
+    ForkJoinPool pool = new ForkJoinPool(transformThreads);
+    try {
+      IFileExplorer explorer = new ParallelFileExplorer(pool);
+      if (!incremental) {
+        explore(explorer, workspace, new CompleteFileTransformer());
+        return;
+      }
+      TransformManifest manifest = new TransformManifest(workspace);
+      IncrementalFileTransformer transformer = new IncrementalFileTransformer(new CompleteFileTransformer(), manifest);
+      explore(explorer, workspace, transformer);
+      manifest.save();
+      LOG.log(Level.INFO, "{0} quote files transformed, {1} up to date.",
+        new Object[]{transformer.getTransformedFiles(), transformer.getSkippedFiles()});
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Explores the workspace and records the traversal in Metrics.EXPLORE
+   */
+  private static void explore(IFileExplorer explorer, File rootDirectory, IFileVisitor visitor) {
+    long start = Metrics.start();
+    boolean explored = false;
+    try {
+      explorer.explore(rootDirectory, visitor);
+      explored = true;
+    } finally {
+      Metrics.EXPLORE.record(start, explored);
+    }
+  }
+
+  /**
+   * A quote fetched by the pipeline, with the name of its file
+   */
+  private static final class PendingQuote {
+
+    private final Quote quote;
+    private final String filename;
+
+    PendingQuote(Quote quote, String filename) {
+      this.quote = quote;
+      this.filename = filename;
+    }
+
+  }
+
+  private interface PipelineWorker {
+
+    void work() throws IOException, InterruptedException;
+
+  }
+
+  /**
+   * The stages of fetchStoreAndProcessQuotes. Each stage has a pool with one thread
+   * per worker. When the last worker of a stage is done, it puts one end marker
+   * per worker of the next stage in the queue. When a worker fails, all the pools
+   * are shut down: the threads that wait on a queue are interrupted, so a failure
+   * never leaves the other stages blocked. An Error thrown by a worker is
+   * rethrown as it is by run, the other failures in an IOException.
+   */
+  private class Pipeline {
+
+    private final PendingQuote endOfQuotes = new PendingQuote(null, null);
+    private final File endOfFiles = new File("");
+
+    private final QuoteClient client;
+    private final int numberOfQuotes;
+    private final IFileVisitor transformer;
+    private final BlockingQueue<PendingQuote> quotesToStore = new ArrayBlockingQueue<>(pipelineQueueCapacity);
+    private final BlockingQueue<File> filesToTransform = new ArrayBlockingQueue<>(pipelineQueueCapacity);
+    private final AtomicInteger nextQuoteNumber = new AtomicInteger(1);
+    private final AtomicInteger runningFetchers;
+    private final AtomicInteger runningStorers = new AtomicInteger(storeThreads);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong firstQuoteTransformed = new AtomicLong();
+    private final ExecutorService fetchPool;
+    private final ExecutorService storePool = Executors.newFixedThreadPool(storeThreads);
+    private final ExecutorService transformPool = Executors.newFixedThreadPool(transformThreads);
+    private final List<Future<?>> workers = new ArrayList<>();
+    private long start;
+    private long end;
+
+    Pipeline(QuoteClient client, int numberOfQuotes, IFileVisitor transformer) {
+      this.client = client;
+      this.numberOfQuotes = numberOfQuotes;
+      this.transformer = transformer;
+      int numberOfBatches = (numberOfQuotes + batchSize - 1) / batchSize;
+      int fetchThreads = Math.min(parallelism, Math.max(numberOfBatches, 1));
+      runningFetchers = new AtomicInteger(fetchThreads);
+      fetchPool = Executors.newFixedThreadPool(fetchThreads);
+    }
+
+    void run() throws IOException {
+      start = System.nanoTime();
+      try {
+        /*
+         * The pools have exactly one thread per worker, so every worker starts right
+         * away and every future is completed, even after shutdownNow
+         */
+        startWorkers(transformPool, transformThreads, new PipelineWorker() {
+          @Override
+          public void work() throws IOException, InterruptedException {
+            transformFiles();
+          }
+        });
+        startWorkers(storePool, storeThreads, new PipelineWorker() {
+          @Override
+          public void work() throws IOException, InterruptedException {
+            storeQuotes();
+          }
+        });
+        startWorkers(fetchPool, runningFetchers.get(), new PipelineWorker() {
+          @Override
+          public void work() throws IOException, InterruptedException {
+            fetchQuotes();
+          }
+        });
+        for (Future<?> worker : workers) {
+          worker.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        abort(e);
+      } catch (ExecutionException e) {
+        abort(e.getCause());
+      } finally {
+        end = System.nanoTime();
+        fetchPool.shutdownNow();
+        storePool.shutdownNow();
+        transformPool.shutdownNow();
+      }
+      Throwable cause = failure.get();
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      if (cause != null) {
+        throw new IOException("Could not fetch, store and transform the quotes", cause);
+      }
+    }
+
+    long getTotalMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(end - start);
+    }
+
+    long getFirstQuoteMillis() {
+      long first = firstQuoteTransformed.get();
+      return first == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(first - start);
+    }
+
+    private void fetchQuotes() throws IOException, InterruptedException {
+      int first;
+      while ((first = nextQuoteNumber.getAndAdd(batchSize)) <= numberOfQuotes) {
+        List<Quote> quotes = fetchBatch(client, Math.min(batchSize, numberOfQuotes - first + 1));
+        for (int i = 0; i < quotes.size(); i++) {
+          quotesToStore.put(new PendingQuote(quotes.get(i), "quote-" + (first + i) + ".utf8"));
+        }
+      }
+      if (runningFetchers.decrementAndGet() == 0) {
+        for (int i = 0; i < storeThreads; i++) {
+          quotesToStore.put(endOfQuotes);
+        }
+      }
+    }
+
+    private void storeQuotes() throws IOException, InterruptedException {
+      PendingQuote pending;
+      while ((pending = quotesToStore.take()) != endOfQuotes) {
+        storeQuote(pending.quote, pending.filename);
+        logQuote(pending.quote);
+        filesToTransform.put(new File(WORKSPACE_DIRECTORY, pathOf(pending.quote.getTags(), pending.filename)));
+      }
+      if (runningStorers.decrementAndGet() == 0) {
+        for (int i = 0; i < transformThreads; i++) {
+          filesToTransform.put(endOfFiles);
+        }
+      }
+    }
+
+    private void transformFiles() throws InterruptedException {
+      File file;
+      while ((file = filesToTransform.take()) != endOfFiles) {
+        transformer.visit(file);
+        firstQuoteTransformed.compareAndSet(0, System.nanoTime());
+      }
+    }
+
+    private void startWorkers(ExecutorService pool, int count, final PipelineWorker worker) {
+      for (int i = 0; i < count; i++) {
+        workers.add(pool.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              worker.work();
+            } catch (InterruptedException e) {
+              /*
+               * The pipeline has been aborted
+               */
+            } catch (Throwable t) {
+              /*
+               * Errors too: a worker that stops without aborting the pipeline would
+               * leave the next stage waiting on its queue forever
+               */
+              abort(t);
+            }
+          }
+        }));
+      }
+    }
+
+    private void abort(Throwable cause) {
+      if (failure.compareAndSet(null, cause)) {
+        fetchPool.shutdownNow();
+        storePool.shutdownNow();
+        transformPool.shutdownNow();
+      }
+    }
+
   }
 
 }
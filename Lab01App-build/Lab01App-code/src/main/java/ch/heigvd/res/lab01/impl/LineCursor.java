@@ -0,0 +1,168 @@
+package ch.heigvd.res.lab01.impl;
+
+/**
+ * This class finds the lines of a text, like Utils.getNextLine, without creating
+ * any object: the lines are given as offsets in the text. The line separators are
+ * \r, \n and \r\n, and a line is only returned when it ends with a separator (the
+ * text after the last separator is the remainder).
+ *
+ * LineCursor cursor = new LineCursor(text);
+ * while (cursor.next()) {
+ *   // the line is between getStart() and getEnd() (with its separator),
+ *   // its content ends at getContentEnd()
+ * }
+ * // the remainder starts at getRemainderStart()
+ *
+ * The text can be any CharSequence (a String, a StringBuilder, a CharBuffer...) or
+ * a part of a char[], which is scanned without going through charAt. A cursor can
+ * be reset to scan another text, so a single cursor can be used for a whole
+ * stream of chunks. Note that a \r at the end of the text is a separator (as for
+ * getNextLine): when the text is a chunk of a stream, the next chunk may start
+ * with the \n of the same separator.
+ *
+ * @author Olivier Liechti
+ */
+public final class LineCursor {
+
+  private CharSequence sequence;
+  private char[] array;
+  private int end;
+  private int position;
+  private int lineStart;
+  private int contentEnd;
+
+  /**
+   * Creates a cursor without text (reset must be called before next)
+   */
+  public LineCursor() {
+    reset("");
+  }
+
+  public LineCursor(CharSequence text) {
+    reset(text);
+  }
+
+  /**
+   * Scans a new text, from its first character.
+   */
+  public LineCursor reset(CharSequence text) {
+    return reset(text, 0, text.length());
+  }
+
+  /**
+   * Scans the characters of a text between start (inclusive) and end (exclusive).
+   */
+  public LineCursor reset(CharSequence text, int start, int end) {
+    checkBounds(start, end, text.length());
+    this.sequence = text;
+    this.array = null;
+    return setRange(start, end);
+  }
+
+  /**
+   * Scans the characters of an array between start (inclusive) and end (exclusive).
+   */
+  public LineCursor reset(char[] text, int start, int end) {
+    checkBounds(start, end, text.length);
+    this.sequence = null;
+    this.array = text;
+    return setRange(start, end);
+  }
+
+  /**
+   * Moves to the next line.
+   *
+   * @return true if there is a line (with a separator) after the current one, false
+   * if the rest of the text does not contain any separator
+   */
+  public boolean next() {
+    int i = array != null ? findSeparator(array, position, end) : findSeparator(sequence, position, end);
+    if (i == end) {
+      lineStart = position;
+      contentEnd = position;
+      return false;
+    }
+    lineStart = position;
+    contentEnd = i;
+    position = i + 1;
+    if (charAt(i) == '\r' && position < end && charAt(position) == '\n') {
+      position++;
+    }
+    return true;
+  }
+
+  /**
+   * @return the offset of the first character of the current line
+   */
+  public int getStart() {
+    return lineStart;
+  }
+
+  /**
+   * @return the offset after the separator of the current line
+   */
+  public int getEnd() {
+    return position;
+  }
+
+  /**
+   * @return the offset of the separator of the current line
+   */
+  public int getContentEnd() {
+    return contentEnd;
+  }
+
+  /**
+   * @return the offset of the text that follows the lines returned so far
+   */
+  public int getRemainderStart() {
+    return position;
+  }
+
+  /**
+   * @return true if the separator of the current line is a \r that ends the text
+   * (in a stream, the next chunk may start with a \n)
+   */
+  public boolean endsWithCarriageReturn() {
+    return position == end && contentEnd == end - 1 && charAt(contentEnd) == '\r';
+  }
+
+  private LineCursor setRange(int start, int end) {
+    this.end = end;
+    this.position = start;
+    this.lineStart = start;
+    this.contentEnd = start;
+    return this;
+  }
+
+  private char charAt(int i) {
+    return array != null ? array[i] : sequence.charAt(i);
+  }
+
+  private static int findSeparator(char[] text, int from, int end) {
+    for (int i = from; i < end; i++) {
+      char c = text[i];
+      if (c <= '\r' && (c == '\n' || c == '\r')) {
+        return i;
+      }
+    }
+    return end;
+  }
+
+  private static int findSeparator(CharSequence text, int from, int end) {
+    for (int i = from; i < end; i++) {
+      char c = text.charAt(i);
+      if (c <= '\r' && (c == '\n' || c == '\r')) {
+        return i;
+      }
+    }
+    return end;
+  }
+
+  private static void checkBounds(int start, int end, int length) {
+    if (start < 0 || end > length || start > end) {
+      throw new IndexOutOfBoundsException("Invalid range [" + start + ", " + end + ") for a text of " + length + " characters");
+    }
+  }
+
+}
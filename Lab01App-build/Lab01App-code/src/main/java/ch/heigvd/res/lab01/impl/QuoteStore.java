@@ -0,0 +1,253 @@
+package ch.heigvd.res.lab01.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class writes the quote files in the workspace. A quote is stored in the
+ * directory made of its tags, in a UTF-8 file (see Application.storeQuote).
+ *
+ * The quotes are not written one at a time: store() encodes the text and adds the
+ * quote to a batch, which is written when it holds batchSize quotes (and by flush
+ * and close). The files of a batch are sorted by directory, and the directories
+ * that have been created (or found) once are remembered, so mkdirs is only called
+ * the first time a tag path is seen. Every file is written with a single write
+ * into a temporary file of the same directory, which is then renamed atomically:
+ * a quote file is either complete or absent, even if the application is stopped
+ * in the middle of a batch.
+ *
+ * With the SYNC_EACH_BATCH policy, every file is forced to the disk before being
+ * renamed, and the directories of the batch are forced once the files have been
+ * renamed, so a batch is durable when flush returns.
+ *
+ * The store can be shared by several threads: the batch is swapped under a lock
+ * and written outside of it.
+ *
+ * @author Olivier Liechti
+ */
+public class QuoteStore implements Closeable {
+
+  private static final Logger LOG = Logger.getLogger(QuoteStore.class.getName());
+
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  /**
+   * Defines when the files are forced to the disk
+   */
+  public enum SyncPolicy {
+    /**
+     * The files are left to the operating system (the default)
+     */
+    NEVER,
+    /**
+     * The files and their directories are forced to the disk at the end of every batch
+     */
+    SYNC_EACH_BATCH
+  }
+
+  /**
+   * A quote that has been stored but not written yet
+   */
+  private static class PendingQuote {
+
+    private final File directory;
+    private final String filename;
+    private final byte[] content;
+
+    PendingQuote(File directory, String filename, byte[] content) {
+      this.directory = directory;
+      this.filename = filename;
+      this.content = content;
+    }
+
+  }
+
+  /**
+   * The reverse order of the paths: the subdirectories come before their parent,
+   * which has been created by mkdirs when we reach it
+   */
+  private static final Comparator<PendingQuote> BY_DIRECTORY = new Comparator<PendingQuote>() {
+    @Override
+    public int compare(PendingQuote q1, PendingQuote q2) {
+      return q2.directory.getPath().compareTo(q1.directory.getPath());
+    }
+  };
+
+  private final File rootDirectory;
+  private final int batchSize;
+  private final SyncPolicy syncPolicy;
+  private final Set<String> existingDirectories = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private List<PendingQuote> batch;
+
+  private final AtomicLong storedQuotes = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong createdDirectories = new AtomicLong();
+
+  public QuoteStore(File rootDirectory) {
+    this(rootDirectory, DEFAULT_BATCH_SIZE, SyncPolicy.NEVER);
+  }
+
+  /**
+   * @param rootDirectory the directory where the tag directories are created
+   * @param batchSize the number of quotes written at once (1 means that every quote
+   * is written by store)
+   * @param syncPolicy defines when the files are forced to the disk
+   */
+  public QuoteStore(File rootDirectory, int batchSize, SyncPolicy syncPolicy) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("The batch size must be at least 1, not " + batchSize);
+    }
+    this.rootDirectory = rootDirectory;
+    this.batchSize = batchSize;
+    this.syncPolicy = syncPolicy;
+    this.batch = new ArrayList<>(batchSize);
+  }
+
+  /**
+   * Adds a quote to the current batch, and writes the batch if it is full.
+   *
+   * @param tags the tags of the quote, which give the path of its directory
+   * @param filename the name of the quote file
+   * @param text the text of the quote
+   * @throws IOException if the batch is written and a file cannot be written
+   */
+  public void store(List<String> tags, String filename, String text) throws IOException {
+    File directory = rootDirectory;
+    for (String tag : tags) {
+      directory = new File(directory, tag);
+    }
+    PendingQuote quote = new PendingQuote(directory, filename, text.getBytes(StandardCharsets.UTF_8));
+    List<PendingQuote> fullBatch = null;
+    synchronized (this) {
+      batch.add(quote);
+      if (batch.size() >= batchSize) {
+        fullBatch = batch;
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+    if (fullBatch != null) {
+      write(fullBatch);
+    }
+  }
+
+  /**
+   * Writes the quotes of the current batch.
+   */
+  public void flush() throws IOException {
+    List<PendingQuote> pending;
+    synchronized (this) {
+      if (batch.isEmpty()) {
+        return;
+      }
+      pending = batch;
+      batch = new ArrayList<>(batchSize);
+    }
+    write(pending);
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+  }
+
+  public long getStoredQuotes() {
+    return storedQuotes.get();
+  }
+
+  public long getBatches() {
+    return batches.get();
+  }
+
+  /**
+   * @return the number of times mkdirs has been called (the number of distinct
+   * directories, unless several threads create the same directory at the same time)
+   */
+  public long getCreatedDirectories() {
+    return createdDirectories.get();
+  }
+
+  private void write(List<PendingQuote> quotes) throws IOException {
+    Collections.sort(quotes, BY_DIRECTORY);
+    Set<File> directories = new LinkedHashSet<>();
+    for (PendingQuote quote : quotes) {
+      ensureDirectoryExists(quote.directory);
+      writeAtomically(quote);
+      directories.add(quote.directory);
+    }
+    if (syncPolicy == SyncPolicy.SYNC_EACH_BATCH) {
+      for (File directory : directories) {
+        forceDirectory(directory.toPath());
+      }
+    }
+    storedQuotes.addAndGet(quotes.size());
+    batches.incrementAndGet();
+  }
+
+  /**
+   * When quotes are stored in parallel, another thread may create the same directory
+   * between our check and our call to mkdirs, so we only fail if it still does not exist.
+   */
+  private void ensureDirectoryExists(File directory) throws IOException {
+    if (existingDirectories.contains(directory.getPath())) {
+      return;
+    }
+    createdDirectories.incrementAndGet();
+    if (!directory.mkdirs() && !directory.isDirectory()) {
+      throw new IOException("Could not create directory " + directory);
+    }
+    File d = directory;
+    while (d != null && existingDirectories.add(d.getPath())) {
+      d = d.getParentFile();
+    }
+  }
+
+  private void writeAtomically(PendingQuote quote) throws IOException {
+    Path target = new File(quote.directory, quote.filename).toPath();
+    Path temporary = new File(quote.directory, quote.filename + TEMPORARY_SUFFIX).toPath();
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+      StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer content = ByteBuffer.wrap(quote.content);
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+      if (syncPolicy == SyncPolicy.SYNC_EACH_BATCH) {
+        channel.force(false);
+      }
+    }
+    Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Forces the entries of a directory (the renamed files) to the disk. Some
+   * platforms (Windows) cannot open a directory, we do not insist.
+   */
+  private static void forceDirectory(Path directory) {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException ex) {
+      LOG.log(Level.FINE, "Could not force the directory " + directory, ex);
+    }
+  }
+
+}
@@ -0,0 +1,210 @@
+package ch.heigvd.res.lab01.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class is an inverted index from the tags to the quote files. Every quote
+ * file gets a number when it is added, and the files of a tag are kept in a
+ * BitSet: since there are only a few tags, the index stays small even with
+ * millions of files, and the files that have several tags are found by
+ * intersecting the BitSets of these tags. The queries do not touch the file system.
+ *
+ * The files are identified by their path relative to the workspace (the tags
+ * and the file name, separated by '/'). Since the path is made of the tags, a file
+ * that is added twice has the same tags: it is only indexed once.
+ *
+ * The index is written in a file by save, with a compact binary format: MAGIC,
+ * number of files, paths, number of tags, then for each tag its name and the
+ * words of its BitSet.
+ *
+ * All the methods are synchronized, so an index can be shared by several threads.
+ *
+ * @author Olivier Liechti
+ */
+public class TagIndex {
+
+  private static final Logger LOG = Logger.getLogger(TagIndex.class.getName());
+
+  private static final int MAGIC = 0x54494431; // "TID1"
+
+  private final List<String> paths = new ArrayList<>();
+  private final Map<String, Integer> numbers = new HashMap<>();
+  private final Map<String, BitSet> postings = new TreeMap<>();
+
+  /**
+   * Adds a quote file to the index.
+   *
+   * @param tags the tags of the quote
+   * @param path the path of the file, relative to the workspace
+   */
+  public synchronized void add(List<String> tags, String path) {
+    if (numbers.containsKey(path)) {
+      return;
+    }
+    int number = paths.size();
+    paths.add(path);
+    numbers.put(path, number);
+    for (String tag : tags) {
+      BitSet files = postings.get(tag);
+      if (files == null) {
+        files = new BitSet();
+        postings.put(tag, files);
+      }
+      files.set(number);
+    }
+  }
+
+  /**
+   * @param tags the tags that the quotes must have (all the quotes if there is none)
+   * @return the paths of the quote files that have all the tags, in the order in
+   * which they were added
+   */
+  public synchronized List<String> find(String... tags) {
+    final int[] matches = match(tags).stream().toArray();
+    final List<String> allPaths = paths;
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        synchronized (TagIndex.this) {
+          return allPaths.get(matches[index]);
+        }
+      }
+
+      @Override
+      public int size() {
+        return matches.length;
+      }
+    };
+  }
+
+  /**
+   * @param tags the tags that the quotes must have (all the quotes if there is none)
+   * @return the number of quote files that have all the tags
+   */
+  public synchronized int count(String... tags) {
+    return match(tags).cardinality();
+  }
+
+  /**
+   * @return the tags of the indexed quotes, in alphabetical order
+   */
+  public synchronized List<String> getTags() {
+    return Collections.unmodifiableList(new ArrayList<>(postings.keySet()));
+  }
+
+  public synchronized int size() {
+    return paths.size();
+  }
+
+  /**
+   * Writes the index in a file (through a temporary file, so the file is never
+   * half written).
+   */
+  public synchronized void save(File file) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(paths.size());
+      for (String path : paths) {
+        out.writeUTF(path);
+      }
+      out.writeInt(postings.size());
+      for (Map.Entry<String, BitSet> posting : postings.entrySet()) {
+        out.writeUTF(posting.getKey());
+        long[] words = posting.getValue().toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+          out.writeLong(word);
+        }
+      }
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads an index written by save.
+   *
+   * @param file the file of the index
+   * @return the index, or an empty index if the file does not exist (or is not an
+   * index, or is truncated or corrupt: the problem is logged)
+   * @throws IOException if the file cannot be read
+   */
+  public static TagIndex load(File file) throws IOException {
+    TagIndex index = new TagIndex();
+    if (!file.isFile()) {
+      return index;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        LOG.log(Level.WARNING, "{0} is not a tag index, it is ignored.", file);
+        return index;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String path = in.readUTF();
+        index.paths.add(path);
+        index.numbers.put(path, i);
+      }
+      int tagCount = in.readInt();
+      for (int t = 0; t < tagCount; t++) {
+        String tag = in.readUTF();
+        long[] words = new long[in.readInt()];
+        for (int w = 0; w < words.length; w++) {
+          words[w] = in.readLong();
+        }
+        index.postings.put(tag, BitSet.valueOf(words));
+      }
+    } catch (EOFException | UTFDataFormatException ex) {
+      LOG.log(Level.WARNING, "{0} is truncated or corrupt, it is ignored.", file);
+      return new TagIndex();
+    }
+    return index;
+  }
+
+  /**
+   * @return the files that have all the tags (a new BitSet, that can be modified)
+   */
+  private BitSet match(String... tags) {
+    BitSet result = new BitSet(paths.size());
+    if (tags.length == 0) {
+      result.set(0, paths.size());
+      return result;
+    }
+    BitSet first = postings.get(tags[0]);
+    if (first == null) {
+      return result;
+    }
+    result.or(first);
+    for (int i = 1; i < tags.length && !result.isEmpty(); i++) {
+      BitSet files = postings.get(tags[i]);
+      if (files == null) {
+        result.clear();
+      } else {
+        result.and(files);
+      }
+    }
+    return result;
+  }
+
+}
@@ -18,9 +18,16 @@ public class Utils {
    * @return an array with 2 elements; the first element is the next line with
    * the line separator, the second element is the remaining text. If the argument does not
    * contain any line separator, then the first element is an empty string.
+   *
+   * Code that splits a whole text should use a LineCursor, which finds the same
+   * lines without creating two strings for every line.
    */
   public static String[] getNextLine(String lines) {
-    throw new UnsupportedOperationException("The student has not implemented this method yet.");
+    LineCursor cursor = new LineCursor(lines);
+    if (!cursor.next()) {
+      return new String[]{"", lines};
+    }
+    return new String[]{lines.substring(0, cursor.getEnd()), lines.substring(cursor.getEnd())};
   }
 
 }
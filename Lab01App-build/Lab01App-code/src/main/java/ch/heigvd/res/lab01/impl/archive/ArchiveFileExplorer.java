@@ -0,0 +1,84 @@
+package ch.heigvd.res.lab01.impl.archive;
+
+import ch.heigvd.res.lab01.interfaces.IFileExplorer;
+import ch.heigvd.res.lab01.interfaces.IFileVisitor;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * This implementation of the IFileExplorer interface shows the content of a
+ * QuoteArchive as the tree of files it replaces: the tags of a quote are the
+ * directories of its file, under the root directory passed to explore. The
+ * visitor receives the same File objects, in the same order, as with a
+ * DFSFileExplorer on the equivalent workspace: a directory, then its files, then
+ * its subdirectories, in the alphabetical order of their names.
+ *
+ * The files do not exist on the disk: the visitors that need their content get
+ * it from the archive (see ArchiveFileTransformer). The tree is built from the
+ * entries of the archive when explore is called, so the files appended during the
+ * exploration are not visited.
+ *
+ * @author Olivier Liechti
+ */
+public class ArchiveFileExplorer implements IFileExplorer {
+
+  /**
+   * A directory of the tree, with the names of its files and its subdirectories
+   */
+  private static class Directory {
+
+    final TreeSet<String> files = new TreeSet<>();
+    final TreeMap<String, Directory> subdirectories = new TreeMap<>();
+
+  }
+
+  private final QuoteArchive archive;
+
+  public ArchiveFileExplorer(QuoteArchive archive) {
+    this.archive = archive;
+  }
+
+  @Override
+  public void explore(File rootDirectory, IFileVisitor vistor) {
+    Directory root = new Directory();
+    for (QuoteArchive.Entry entry : archive.getEntries()) {
+      Directory directory = root;
+      for (String tag : entry.getTags()) {
+        Directory subdirectory = directory.subdirectories.get(tag);
+        if (subdirectory == null) {
+          subdirectory = new Directory();
+          directory.subdirectories.put(tag, subdirectory);
+        }
+        directory = subdirectory;
+      }
+      directory.files.add(entry.getFilename());
+    }
+
+    Deque<File> paths = new ArrayDeque<>();
+    Deque<Directory> directories = new ArrayDeque<>();
+    paths.push(rootDirectory);
+    directories.push(root);
+    List<Map.Entry<String, Directory>> subdirectories = new ArrayList<>();
+    while (!directories.isEmpty()) {
+      File path = paths.pop();
+      Directory directory = directories.pop();
+      vistor.visit(path);
+      for (String file : directory.files) {
+        vistor.visit(new File(path, file));
+      }
+      subdirectories.clear();
+      subdirectories.addAll(directory.subdirectories.entrySet());
+      for (int i = subdirectories.size() - 1; i >= 0; i--) {
+        paths.push(new File(path, subdirectories.get(i).getKey()));
+        directories.push(subdirectories.get(i).getValue());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,85 @@
+package ch.heigvd.res.lab01.impl.archive;
+
+import ch.heigvd.res.lab01.impl.transformers.FileTransformer;
+import ch.heigvd.res.lab01.interfaces.IFileVisitor;
+import ch.heigvd.res.lab01.metrics.Metrics;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This visitor applies a FileTransformer to the files visited by an
+ * ArchiveFileExplorer. The content of a file is read from the archive, transformed
+ * and appended to the archive, next to the file, with the .out extension (like
+ * the FileTransformer does on the disk).
+ *
+ * The directories and the .out files are ignored.
+ *
+ * @author Olivier Liechti
+ */
+public class ArchiveFileTransformer implements IFileVisitor {
+
+  private static final Logger LOG = Logger.getLogger(ArchiveFileTransformer.class.getName());
+
+  private final QuoteArchive archive;
+  private final Path rootDirectory;
+  private final FileTransformer transformer;
+  private int transformedFiles = 0;
+
+  /**
+   * @param archive the archive that contains the files
+   * @param rootDirectory the root directory passed to the ArchiveFileExplorer
+   * @param transformer the transformation applied to the content of the files
+   */
+  public ArchiveFileTransformer(QuoteArchive archive, File rootDirectory, FileTransformer transformer) {
+    this.archive = archive;
+    this.rootDirectory = rootDirectory.toPath();
+    this.transformer = transformer;
+  }
+
+  @Override
+  public void visit(File file) {
+    if (file.getName().endsWith(".out")) {
+      return;
+    }
+    QuoteArchive.Entry entry = archive.find(pathOf(file));
+    if (entry == null) {
+      return;
+    }
+    long start = Metrics.start();
+    ByteArrayOutputStream output = new ByteArrayOutputStream(entry.getLength() + entry.getLength() / 4 + 16);
+    try {
+      transformer.transform(new ByteArrayInputStream(archive.read(entry)), output);
+      archive.append(entry.getTags(), entry.getFilename() + ".out", output.toByteArray());
+      transformedFiles++;
+      Metrics.TRANSFORM.record(start, true, entry.getLength(), output.size());
+    } catch (IOException ex) {
+      Metrics.TRANSFORM.record(start, false, entry.getLength(), 0);
+      LOG.log(Level.SEVERE, "Could not transform " + entry.getPath(), ex);
+    }
+  }
+
+  public int getTransformedFiles() {
+    return transformedFiles;
+  }
+
+  /**
+   * @return the path of the file in the archive (with '/' as separator)
+   */
+  private String pathOf(File file) {
+    Path relativePath = rootDirectory.relativize(file.toPath());
+    StringBuilder path = new StringBuilder();
+    for (Path name : relativePath) {
+      if (path.length() > 0) {
+        path.append('/');
+      }
+      path.append(name.toString());
+    }
+    return path.toString();
+  }
+
+}
@@ -0,0 +1,431 @@
+package ch.heigvd.res.lab01.impl.archive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class stores quote files in a few large files, instead of one file per
+ * quote in a tree of tag directories. The archive is a directory that contains
+ * segment files, in which the quotes are appended, and an index.
+ *
+ * A segment starts with SEGMENT_MAGIC, followed by records: the length of the
+ * rest of the record, the number of tags, the tags, the file name, the length of
+ * the content and the content (the strings are length-prefixed UTF-8). When a
+ * segment reaches maxSegmentSize, a new segment is started.
+ *
+ * The index maps the path of every file (the tags and the file name, separated
+ * by '/', as in the workspace) to the segment and the offset of its content. It is
+ * kept in memory and written by flush and close, with INDEX_MAGIC, the number of
+ * segments and the length of the last segment when the index was written, and the
+ * entries. When the archive is opened, the records appended after the last flush
+ * are read from the segments and added to the index, so the index can be lost
+ * without losing quotes. A record that was not completely written (the application
+ * was stopped in the middle of an append) is dropped.
+ *
+ * The archive is append-only: when a file is stored again with the same path, the
+ * index points to the new content and the old record stays in its segment.
+ *
+ * All the methods are synchronized, so an archive can be shared by several threads.
+ *
+ * @author Olivier Liechti
+ */
+public class QuoteArchive implements Closeable {
+
+  private static final Logger LOG = Logger.getLogger(QuoteArchive.class.getName());
+
+  public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+  public static final String INDEX_FILENAME = "index";
+
+  private static final int SEGMENT_MAGIC = 0x51415231; // "QAR1"
+  private static final int INDEX_MAGIC = 0x51414931; // "QAI1"
+  private static final int SEGMENT_HEADER_SIZE = 4;
+  private static final int MAX_TAGS = 255;
+
+  /**
+   * A file stored in the archive
+   */
+  public static class Entry {
+
+    private final List<String> tags;
+    private final String filename;
+    final int segment;
+    final long offset;
+    final int length;
+
+    Entry(List<String> tags, String filename, int segment, long offset, int length) {
+      this.tags = tags;
+      this.filename = filename;
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    public List<String> getTags() {
+      return tags;
+    }
+
+    public String getFilename() {
+      return filename;
+    }
+
+    /**
+     * @return the path of the file, relative to the workspace (the tags and the file
+     * name, separated by '/')
+     */
+    public String getPath() {
+      return pathOf(tags, filename);
+    }
+
+    /**
+     * @return the size of the content, in bytes
+     */
+    public int getLength() {
+      return length;
+    }
+
+  }
+
+  private final File directory;
+  private final long maxSegmentSize;
+  private final Map<String, Entry> index = new LinkedHashMap<>();
+  private final List<FileChannel> segments = new ArrayList<>();
+  private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+  private long currentSegmentSize;
+  private boolean closed = false;
+
+  public QuoteArchive(File directory) throws IOException {
+    this(directory, DEFAULT_MAX_SEGMENT_SIZE);
+  }
+
+  /**
+   * Opens the archive stored in a directory (or creates an empty archive).
+   *
+   * @param directory the directory of the archive
+   * @param maxSegmentSize the size (in bytes) from which a new segment is started
+   * @throws IOException if the archive cannot be read
+   */
+  public QuoteArchive(File directory, long maxSegmentSize) throws IOException {
+    if (maxSegmentSize <= SEGMENT_HEADER_SIZE) {
+      throw new IllegalArgumentException("The segments must be larger than their header: " + maxSegmentSize);
+    }
+    this.directory = directory;
+    this.maxSegmentSize = maxSegmentSize;
+    if (!directory.mkdirs() && !directory.isDirectory()) {
+      throw new IOException("Could not create directory " + directory);
+    }
+    try {
+      open();
+    } catch (IOException | RuntimeException ex) {
+      closeSegments();
+      throw ex;
+    }
+  }
+
+  /**
+   * Appends a file to the archive.
+   *
+   * @param tags the tags of the quote (the directories of the file in the workspace)
+   * @param filename the name of the file
+   * @param content the content of the file
+   * @return the entry of the file
+   * @throws IOException if the file cannot be written
+   */
+  public synchronized Entry append(List<String> tags, String filename, byte[] content) throws IOException {
+    ensureOpen();
+    if (tags.size() > MAX_TAGS) {
+      throw new IllegalArgumentException("A quote cannot have more than " + MAX_TAGS + " tags");
+    }
+    recordBuffer.reset();
+    DataOutputStream out = new DataOutputStream(recordBuffer);
+    out.writeInt(0); // the length of the record, set below
+    out.writeByte(tags.size());
+    for (String tag : tags) {
+      out.writeUTF(tag);
+    }
+    out.writeUTF(filename);
+    out.writeInt(content.length);
+    out.write(content);
+    ByteBuffer record = ByteBuffer.wrap(recordBuffer.toByteArray());
+    record.putInt(0, record.capacity() - 4);
+
+    if (currentSegmentSize > SEGMENT_HEADER_SIZE && currentSegmentSize + record.capacity() > maxSegmentSize) {
+      createSegment(segments.size());
+    }
+    int segment = segments.size() - 1;
+    long position = currentSegmentSize;
+    writeFully(segments.get(segment), record, position);
+    currentSegmentSize += record.capacity();
+
+    Entry entry = new Entry(Collections.unmodifiableList(new ArrayList<>(tags)), filename, segment,
+      position + record.capacity() - content.length, content.length);
+    index.put(entry.getPath(), entry);
+    return entry;
+  }
+
+  /**
+   * @param path the path of a file (the tags and the file name, separated by '/')
+   * @return the entry of the file, or null if there is no such file in the archive
+   */
+  public synchronized Entry find(String path) {
+    return index.get(path);
+  }
+
+  /**
+   * @return the entries of the files of the archive, in the order of their first append
+   */
+  public synchronized List<Entry> getEntries() {
+    return new ArrayList<>(index.values());
+  }
+
+  public synchronized int size() {
+    return index.size();
+  }
+
+  /**
+   * @return the content of a file
+   */
+  public synchronized byte[] read(Entry entry) throws IOException {
+    ensureOpen();
+    ByteBuffer content = ByteBuffer.allocate(entry.length);
+    FileChannel channel = segments.get(entry.segment);
+    while (content.hasRemaining()) {
+      if (channel.read(content, entry.offset + content.position()) < 0) {
+        throw new EOFException("The content of " + entry.getPath() + " is truncated");
+      }
+    }
+    return content.array();
+  }
+
+  /**
+   * Writes the index, so the archive can be opened without reading the segments.
+   */
+  public synchronized void flush() throws IOException {
+    ensureOpen();
+    File file = new File(directory, INDEX_FILENAME);
+    File tmp = new File(directory, INDEX_FILENAME + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(segments.size());
+      out.writeLong(currentSegmentSize);
+      out.writeInt(index.size());
+      for (Entry entry : index.values()) {
+        out.writeByte(entry.tags.size());
+        for (String tag : entry.tags) {
+          out.writeUTF(tag);
+        }
+        out.writeUTF(entry.filename);
+        out.writeInt(entry.segment);
+        out.writeLong(entry.offset);
+        out.writeInt(entry.length);
+      }
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      flush();
+    } finally {
+      closed = true;
+      closeSegments();
+    }
+  }
+
+  static String pathOf(List<String> tags, String filename) {
+    StringBuilder path = new StringBuilder();
+    for (String tag : tags) {
+      path.append(tag).append('/');
+    }
+    return path.append(filename).toString();
+  }
+
+  private void open() throws IOException {
+    long[] indexed = loadIndex();
+    int indexedSegments = (int) indexed[0];
+    long indexedLength = indexed[1];
+    for (int i = 0; segmentFile(i).isFile(); i++) {
+      segments.add(FileChannel.open(segmentFile(i).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+    if (segments.size() < indexedSegments) {
+      LOG.log(Level.WARNING, "Segments are missing in {0}, the index is rebuilt.", directory);
+      index.clear();
+      indexedSegments = 0;
+    }
+    for (int i = Math.max(indexedSegments - 1, 0); i < segments.size(); i++) {
+      long from = i == indexedSegments - 1 ? indexedLength : SEGMENT_HEADER_SIZE;
+      scanSegment(i, from, i == segments.size() - 1);
+    }
+    if (segments.isEmpty()) {
+      createSegment(0);
+    }
+    currentSegmentSize = segments.get(segments.size() - 1).size();
+  }
+
+  /**
+   * @return the number of segments and the length of the last segment covered by
+   * the index (0 and 0 if there is no usable index)
+   */
+  private long[] loadIndex() throws IOException {
+    File file = new File(directory, INDEX_FILENAME);
+    if (!file.isFile()) {
+      return new long[]{0, 0};
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != INDEX_MAGIC) {
+        LOG.log(Level.WARNING, "{0} is not an archive index, it is ignored.", file);
+        return new long[]{0, 0};
+      }
+      int segmentCount = in.readInt();
+      long lastSegmentLength = in.readLong();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String[] tags = new String[in.readUnsignedByte()];
+        for (int t = 0; t < tags.length; t++) {
+          tags[t] = in.readUTF();
+        }
+        Entry entry = new Entry(Collections.unmodifiableList(Arrays.asList(tags)), in.readUTF(),
+          in.readInt(), in.readLong(), in.readInt());
+        index.put(entry.getPath(), entry);
+      }
+      return new long[]{segmentCount, lastSegmentLength};
+    } catch (EOFException ex) {
+      LOG.log(Level.WARNING, "{0} is truncated, the index is rebuilt.", file);
+      index.clear();
+      return new long[]{0, 0};
+    }
+  }
+
+  /**
+   * Adds the records of a segment, from a position, to the index. If the last
+   * record is incomplete and the segment is the last one, the segment is truncated
+   * before this record, so the next append overwrites it.
+   */
+  private void scanSegment(int segment, long from, boolean last) throws IOException {
+    FileChannel channel = segments.get(segment);
+    long size = channel.size();
+    if (last && size < SEGMENT_HEADER_SIZE) {
+      // the application was stopped while the segment was created
+      channel.truncate(0);
+      ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+      header.putInt(0, SEGMENT_MAGIC);
+      writeFully(channel, header, 0);
+      return;
+    }
+    ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+    if (!readFully(channel, header, 0) || header.getInt(0) != SEGMENT_MAGIC) {
+      throw new IOException(segmentFile(segment) + " is not an archive segment");
+    }
+    long position = from;
+    ByteBuffer length = ByteBuffer.allocate(4);
+    while (position < size) {
+      length.clear();
+      if (!readFully(channel, length, position)) {
+        break;
+      }
+      int recordLength = length.getInt(0);
+      if (recordLength < 0 || position + 4 + recordLength > size) {
+        break;
+      }
+      ByteBuffer record = ByteBuffer.allocate(recordLength);
+      readFully(channel, record, position + 4);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array()));
+      String[] tags = new String[in.readUnsignedByte()];
+      for (int t = 0; t < tags.length; t++) {
+        tags[t] = in.readUTF();
+      }
+      String filename = in.readUTF();
+      int contentLength = in.readInt();
+      long recordEnd = position + 4 + recordLength;
+      Entry entry = new Entry(Collections.unmodifiableList(Arrays.asList(tags)), filename, segment,
+        recordEnd - contentLength, contentLength);
+      index.put(entry.getPath(), entry);
+      position = recordEnd;
+    }
+    if (position < size) {
+      LOG.log(Level.WARNING, "{0} ends with an incomplete record ({1} bytes), which is dropped.",
+        new Object[]{segmentFile(segment), size - position});
+      if (last) {
+        channel.truncate(position);
+      }
+    }
+  }
+
+  private void createSegment(int segment) throws IOException {
+    FileChannel channel = FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.CREATE_NEW,
+      StandardOpenOption.READ, StandardOpenOption.WRITE);
+    segments.add(channel);
+    ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+    header.putInt(0, SEGMENT_MAGIC);
+    writeFully(channel, header, 0);
+    currentSegmentSize = SEGMENT_HEADER_SIZE;
+  }
+
+  private File segmentFile(int segment) {
+    return new File(directory, String.format("segment-%05d.qar", segment));
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("The archive " + directory + " is closed");
+    }
+  }
+
+  private void closeSegments() {
+    for (FileChannel channel : segments) {
+      try {
+        channel.close();
+      } catch (IOException ex) {
+        LOG.log(Level.SEVERE, null, ex);
+      }
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  /**
+   * @return false if the end of the channel is reached before the buffer is full
+   */
+  private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, position);
+      if (n < 0) {
+        return false;
+      }
+      position += n;
+    }
+    return true;
+  }
+
+}
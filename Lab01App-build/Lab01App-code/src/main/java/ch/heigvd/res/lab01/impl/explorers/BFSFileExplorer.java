@@ -0,0 +1,98 @@
+package ch.heigvd.res.lab01.impl.explorers;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * This implementation of the IFileExplorer interface performs a breadth-first
+ * exploration of the file system: it visits the root directory, then all the
+ * nodes at depth 1, then all the nodes at depth 2, etc. The file system is read
+ * lazily (see LazyFileExplorer), so the explorer can also be used through the
+ * iterator and stream methods.
+ *
+ * @author Olivier Liechti
+ */
+public class BFSFileExplorer extends LazyFileExplorer {
+
+  public BFSFileExplorer() {
+    this(UNLIMITED_DEPTH);
+  }
+
+  /**
+   * @param maxDepth the depth of the deepest nodes that are visited (0 means that
+   * only the root directory is visited)
+   */
+  public BFSFileExplorer(int maxDepth) {
+    super(maxDepth);
+  }
+
+  @Override
+  protected FileIterator createIterator(Path root) {
+    return new BFSIterator(root);
+  }
+
+  private static class PendingDirectory {
+
+    final Path path;
+    final int depth;
+
+    PendingDirectory(Path path, int depth) {
+      this.path = path;
+      this.depth = depth;
+    }
+
+  }
+
+  private class BFSIterator extends FileIterator {
+
+    private Path root;
+    private OpenDirectory current = null;
+    private final Deque<PendingDirectory> pendingDirectories = new ArrayDeque<>();
+
+    BFSIterator(Path root) {
+      this.root = root;
+    }
+
+    @Override
+    protected Path nextNode() {
+      if (root != null) {
+        Path node = root;
+        root = null;
+        if (maxDepth > 0 && isDirectory(node)) {
+          pendingDirectories.add(new PendingDirectory(node, 0));
+        }
+        return node;
+      }
+      while (true) {
+        if (current != null) {
+          Path entry = current.nextEntry();
+          if (entry != null) {
+            if (current.depth + 1 < maxDepth && isDirectory(entry)) {
+              pendingDirectories.add(new PendingDirectory(entry, current.depth + 1));
+            }
+            return entry;
+          }
+          current.close();
+          current = null;
+        }
+        PendingDirectory directory = pendingDirectories.poll();
+        if (directory == null) {
+          return null;
+        }
+        current = open(directory.path, directory.depth);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (current != null) {
+        current.close();
+        current = null;
+      }
+      pendingDirectories.clear();
+    }
+
+  }
+
+}
@@ -1,22 +1,139 @@
 package ch.heigvd.res.lab01.impl.explorers;
 
+import ch.heigvd.res.lab01.interfaces.IAttributeFileVisitor;
 import ch.heigvd.res.lab01.interfaces.IFileExplorer;
 import ch.heigvd.res.lab01.interfaces.IFileVisitor;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This implementation of the IFileExplorer interface performs a depth-first
  * exploration of the file system and invokes the visitor for every encountered
  * node (file and directory). When the explorer reaches a directory, it visits all
  * files in the directory and then moves into the subdirectories.
- * 
+ *
+ * The files and the subdirectories are visited in the alphabetical order of their
+ * names. The content of each directory is read with a DirectoryStream, and the
+ * attributes of every entry are read once, when its directory is listed: we use
+ * them to tell files from directories (and pass them to visitors that implement
+ * IAttributeFileVisitor), so the explorer does not stat a node more than once
+ * (the root directory is the only node that is stat'ed on its own). The
+ * directories that remain to be explored are kept on an explicit stack, so deep
+ * hierarchies do not grow the call stack.
+ *
  * @author Olivier Liechti
  */
 public class DFSFileExplorer implements IFileExplorer {
 
+  private static final Logger LOG = Logger.getLogger(DFSFileExplorer.class.getName());
+
+  /**
+   * A file system node, with the attributes read when its parent was listed
+   */
+  static class Node {
+
+    final Path path;
+    final BasicFileAttributes attributes;
+
+    Node(Path path, BasicFileAttributes attributes) {
+      this.path = path;
+      this.attributes = attributes;
+    }
+
+    boolean isDirectory() {
+      return attributes != null && attributes.isDirectory();
+    }
+
+  }
+
+  static final Comparator<Node> BY_NAME = new Comparator<Node>() {
+    @Override
+    public int compare(Node n1, Node n2) {
+      return n1.path.getFileName().toString().compareTo(n2.path.getFileName().toString());
+    }
+  };
+
   @Override
   public void explore(File rootDirectory, IFileVisitor vistor) {
-    throw new UnsupportedOperationException("The student has not implemented this method yet.");
+    Deque<Node> directories = new ArrayDeque<>();
+    directories.push(new Node(rootDirectory.toPath(), readAttributes(rootDirectory.toPath())));
+    List<Node> files = new ArrayList<>();
+    List<Node> subdirectories = new ArrayList<>();
+
+    while (!directories.isEmpty()) {
+      Node directory = directories.pop();
+      visit(vistor, directory);
+      if (!directory.isDirectory()) {
+        continue;
+      }
+      files.clear();
+      subdirectories.clear();
+      list(directory.path, files, subdirectories);
+      Collections.sort(files, BY_NAME);
+      for (Node file : files) {
+        visit(vistor, file);
+      }
+      Collections.sort(subdirectories, BY_NAME);
+      for (int i = subdirectories.size() - 1; i >= 0; i--) {
+        directories.push(subdirectories.get(i));
+      }
+    }
+  }
+
+  /**
+   * Reads the entries of a directory (but not the content of its subdirectories) and
+   * sorts them into files and subdirectories.
+   */
+  static void list(Path directory, List<Node> files, List<Node> subdirectories) {
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+      for (Path entry : entries) {
+        BasicFileAttributes attributes;
+        try {
+          attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException ex) {
+          LOG.log(Level.WARNING, "Could not read the attributes of {0}: {1}", new Object[]{entry, ex.getMessage()});
+          continue;
+        }
+        Node node = new Node(entry, attributes);
+        if (node.isDirectory()) {
+          subdirectories.add(node);
+        } else {
+          files.add(node);
+        }
+      }
+    } catch (IOException | DirectoryIteratorException ex) {
+      LOG.log(Level.SEVERE, "Could not list the content of " + directory, ex);
+    }
+  }
+
+  static BasicFileAttributes readAttributes(Path path) {
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    } catch (IOException ex) {
+      return null;
+    }
+  }
+
+  static void visit(IFileVisitor visitor, Node node) {
+    if (node.attributes != null && visitor instanceof IAttributeFileVisitor) {
+      ((IAttributeFileVisitor) visitor).visit(node.path.toFile(), node.attributes);
+    } else {
+      visitor.visit(node.path.toFile());
+    }
   }
 
 }
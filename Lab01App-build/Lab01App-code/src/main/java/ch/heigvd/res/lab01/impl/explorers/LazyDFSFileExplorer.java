@@ -0,0 +1,120 @@
+package ch.heigvd.res.lab01.impl.explorers;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * This implementation of the IFileExplorer interface performs the same kind of
+ * depth-first exploration as the DFSFileExplorer (in each directory, the files
+ * first, then the subdirectories), but it reads the file system lazily (see
+ * LazyFileExplorer). The files of a directory are returned while the directory
+ * is being read: only its subdirectories are kept in memory until all the files
+ * have been returned. Contrary to the DFSFileExplorer, the nodes are not sorted
+ * by name.
+ *
+ * @author Olivier Liechti
+ */
+public class LazyDFSFileExplorer extends LazyFileExplorer {
+
+  public LazyDFSFileExplorer() {
+    this(UNLIMITED_DEPTH);
+  }
+
+  /**
+   * @param maxDepth the depth of the deepest nodes that are visited (0 means that
+   * only the root directory is visited)
+   */
+  public LazyDFSFileExplorer(int maxDepth) {
+    super(maxDepth);
+  }
+
+  @Override
+  protected FileIterator createIterator(Path root) {
+    return new DFSIterator(root);
+  }
+
+  /**
+   * A directory being explored: first we read its entries (and return the files),
+   * then we go down into the subdirectories, one after the other.
+   */
+  private static class Level {
+
+    final int depth;
+    OpenDirectory directory;
+    final List<Path> subdirectories = new ArrayList<>();
+    int nextSubdirectory = 0;
+
+    Level(OpenDirectory directory) {
+      this.directory = directory;
+      this.depth = directory.depth;
+    }
+
+  }
+
+  private class DFSIterator extends FileIterator {
+
+    private Path root;
+    private final Deque<Level> levels = new ArrayDeque<>();
+
+    DFSIterator(Path root) {
+      this.root = root;
+    }
+
+    @Override
+    protected Path nextNode() {
+      if (root != null) {
+        Path node = root;
+        root = null;
+        if (maxDepth > 0 && isDirectory(node)) {
+          enter(node, 0);
+        }
+        return node;
+      }
+      while (!levels.isEmpty()) {
+        Level level = levels.peek();
+        if (level.directory != null) {
+          Path entry = level.directory.nextEntry();
+          if (entry == null) {
+            level.directory.close();
+            level.directory = null;
+          } else if (isDirectory(entry)) {
+            level.subdirectories.add(entry);
+          } else {
+            return entry;
+          }
+        } else if (level.nextSubdirectory < level.subdirectories.size()) {
+          Path subdirectory = level.subdirectories.get(level.nextSubdirectory++);
+          if (level.depth + 1 < maxDepth) {
+            enter(subdirectory, level.depth + 1);
+          }
+          return subdirectory;
+        } else {
+          levels.pop();
+        }
+      }
+      return null;
+    }
+
+    private void enter(Path directory, int depth) {
+      OpenDirectory openDirectory = open(directory, depth);
+      if (openDirectory != null) {
+        levels.push(new Level(openDirectory));
+      }
+    }
+
+    @Override
+    public void close() {
+      for (Level level : levels) {
+        if (level.directory != null) {
+          level.directory.close();
+        }
+      }
+      levels.clear();
+    }
+
+  }
+
+}
@@ -0,0 +1,184 @@
+package ch.heigvd.res.lab01.impl.explorers;
+
+import ch.heigvd.res.lab01.interfaces.IFileVisitor;
+import ch.heigvd.res.lab01.interfaces.IStreamingFileExplorer;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This abstract class is the base of the explorers that read the file system
+ * lazily. The directories are read with a DirectoryStream, one entry at a time,
+ * so a directory with millions of files does not have to be loaded in memory
+ * (only the subdirectories that remain to be explored are kept). The entries
+ * of a directory are returned in the order of the DirectoryStream (which is
+ * not alphabetical).
+ *
+ * The subclasses decide in which order the tree is traversed, by implementing
+ * the nextNode method of the iterator. The traversal can be limited to a maximum
+ * depth: the root directory is at depth 0, its content at depth 1, etc.
+ *
+ * @author Olivier Liechti
+ */
+public abstract class LazyFileExplorer implements IStreamingFileExplorer {
+
+  private static final Logger LOG = Logger.getLogger(LazyFileExplorer.class.getName());
+
+  /**
+   * The value of maxDepth when the depth of the traversal is not limited
+   */
+  public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
+  protected final int maxDepth;
+
+  protected LazyFileExplorer(int maxDepth) {
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("The maximum depth cannot be negative: " + maxDepth);
+    }
+    this.maxDepth = maxDepth;
+  }
+
+  /**
+   * Creates the iterator that implements the traversal order of the subclass.
+   */
+  protected abstract FileIterator createIterator(Path root);
+
+  @Override
+  public Iterator<File> iterator(File rootDirectory) {
+    return createIterator(rootDirectory.toPath());
+  }
+
+  @Override
+  public Stream<File> stream(File rootDirectory) {
+    final FileIterator iterator = createIterator(rootDirectory.toPath());
+    Spliterator<File> spliterator = Spliterators.spliteratorUnknownSize(iterator,
+      Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT);
+    return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+      @Override
+      public void run() {
+        iterator.close();
+      }
+    });
+  }
+
+  @Override
+  public void explore(File rootDirectory, IFileVisitor vistor) {
+    Iterator<File> iterator = iterator(rootDirectory);
+    while (iterator.hasNext()) {
+      vistor.visit(iterator.next());
+    }
+  }
+
+  /**
+   * The base class of the iterators. The subclasses implement nextNode, which returns
+   * the next node of the traversal (or null at the end); this class takes care of
+   * hasNext/next and of closing the directory streams.
+   */
+  protected abstract static class FileIterator implements Iterator<File>, Closeable {
+
+    private Path next = null;
+    private boolean done = false;
+
+    /**
+     * @return the next node of the traversal, or null if there is none
+     */
+    protected abstract Path nextNode();
+
+    /**
+     * Closes the directory streams that are still open.
+     */
+    @Override
+    public abstract void close();
+
+    @Override
+    public boolean hasNext() {
+      if (next == null && !done) {
+        next = nextNode();
+        if (next == null) {
+          done = true;
+          close();
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public File next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      File file = next.toFile();
+      next = null;
+      return file;
+    }
+
+  }
+
+  /**
+   * An open directory, read one entry at a time
+   */
+  protected static class OpenDirectory implements Closeable {
+
+    final int depth;
+    private final DirectoryStream<Path> stream;
+    private final Iterator<Path> entries;
+
+    OpenDirectory(DirectoryStream<Path> stream, int depth) {
+      this.stream = stream;
+      this.entries = stream.iterator();
+      this.depth = depth;
+    }
+
+    /**
+     * @return the next entry of the directory, or null if there is none
+     */
+    Path nextEntry() {
+      try {
+        return entries.hasNext() ? entries.next() : null;
+      } catch (DirectoryIteratorException e) {
+        throw new UncheckedIOException(e.getCause());
+      }
+    }
+
+    @Override
+    public void close() {
+      try {
+        stream.close();
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Could not close a directory stream: {0}", e.getMessage());
+      }
+    }
+
+  }
+
+  /**
+   * @return the open directory, or null if it cannot be read
+   */
+  protected static OpenDirectory open(Path directory, int depth) {
+    try {
+      return new OpenDirectory(Files.newDirectoryStream(directory), depth);
+    } catch (IOException e) {
+      LOG.log(Level.SEVERE, "Could not list the content of " + directory, e);
+      return null;
+    }
+  }
+
+  protected static boolean isDirectory(Path path) {
+    return Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS);
+  }
+
+}
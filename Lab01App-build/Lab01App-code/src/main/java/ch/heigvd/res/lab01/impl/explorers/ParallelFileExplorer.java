@@ -0,0 +1,122 @@
+package ch.heigvd.res.lab01.impl.explorers;
+
+import ch.heigvd.res.lab01.impl.explorers.DFSFileExplorer.Node;
+import ch.heigvd.res.lab01.interfaces.IAttributeFileVisitor;
+import ch.heigvd.res.lab01.interfaces.IFileExplorer;
+import ch.heigvd.res.lab01.interfaces.IFileVisitor;
+import ch.heigvd.res.lab01.interfaces.IThreadSafeFileVisitor;
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This implementation of the IFileExplorer interface explores the subdirectories
+ * in parallel, with a ForkJoinPool: each directory is a task, which visits the
+ * directory and its files, then forks one task per subdirectory. The explore
+ * method returns when the whole tree has been visited.
+ *
+ * Every node is visited exactly once, but the order of the visits is not
+ * defined (use the DFSFileExplorer if the order matters). A directory is
+ * always visited before its content. If the visitor implements the
+ * IThreadSafeFileVisitor interface, it is called by several threads at the same
+ * time; otherwise, the visits are serialized.
+ *
+ * @author Olivier Liechti
+ */
+public class ParallelFileExplorer implements IFileExplorer {
+
+  private final ForkJoinPool pool;
+
+  /**
+   * Creates an explorer that uses the common ForkJoinPool (one thread per core).
+   * The visits run on the threads of the pool, so a visitor that blocks on I/O
+   * (like a FileTransformer) should rather be given a pool of its own, which does
+   * not hold up the other users of the common pool.
+   */
+  public ParallelFileExplorer() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  public ParallelFileExplorer(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public void explore(File rootDirectory, IFileVisitor vistor) {
+    IFileVisitor visitor = vistor instanceof IThreadSafeFileVisitor ? vistor : new SerializedVisitor(vistor);
+    Node root = new Node(rootDirectory.toPath(), DFSFileExplorer.readAttributes(rootDirectory.toPath()));
+    pool.invoke(new ExploreTask(root, visitor));
+  }
+
+  private static class ExploreTask extends RecursiveAction {
+
+    private final Node directory;
+    private final IFileVisitor visitor;
+
+    ExploreTask(Node directory, IFileVisitor visitor) {
+      this.directory = directory;
+      this.visitor = visitor;
+    }
+
+    @Override
+    protected void compute() {
+      DFSFileExplorer.visit(visitor, directory);
+      if (!directory.isDirectory()) {
+        return;
+      }
+      List<Node> files = new ArrayList<>();
+      List<Node> subdirectories = new ArrayList<>();
+      DFSFileExplorer.list(directory.path, files, subdirectories);
+      List<ExploreTask> subtasks = new ArrayList<>(subdirectories.size());
+      for (Node subdirectory : subdirectories) {
+        subtasks.add(new ExploreTask(subdirectory, visitor));
+      }
+      /*
+       * The subdirectories are forked before we visit the files, so that idle threads
+       * can steal them while we are busy with the files of this directory.
+       */
+      for (ExploreTask subtask : subtasks) {
+        subtask.fork();
+      }
+      for (Node file : files) {
+        DFSFileExplorer.visit(visitor, file);
+      }
+      for (ExploreTask subtask : subtasks) {
+        subtask.join();
+      }
+    }
+
+  }
+
+  /**
+   * Wraps a visitor that is not thread-safe, so that only one thread at a time
+   * calls its visit methods.
+   */
+  private static class SerializedVisitor implements IAttributeFileVisitor {
+
+    private final IFileVisitor visitor;
+
+    SerializedVisitor(IFileVisitor visitor) {
+      this.visitor = visitor;
+    }
+
+    @Override
+    public synchronized void visit(File file) {
+      visitor.visit(file);
+    }
+
+    @Override
+    public synchronized void visit(File file, BasicFileAttributes attributes) {
+      if (visitor instanceof IAttributeFileVisitor) {
+        ((IAttributeFileVisitor) visitor).visit(file, attributes);
+      } else {
+        visitor.visit(file);
+      }
+    }
+
+  }
+
+}
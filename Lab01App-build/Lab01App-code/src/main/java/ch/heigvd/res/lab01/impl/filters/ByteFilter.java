@@ -0,0 +1,335 @@
+package ch.heigvd.res.lab01.impl.filters;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is the base of the filters that transform UTF-8 text at the byte
+ * level, without going through a Reader and a Writer. It receives UTF-8 bytes and
+ * writes UTF-8 bytes to the decorated stream.
+ *
+ * Most of the text is ASCII, and the ASCII bytes are passed as they are to
+ * filterAscii. The other bytes (the multi-byte sequences) are decoded and the
+ * characters are passed to filterChars, which can write characters with
+ * writeChars (or with the Writer returned by getCharWriter). The decoding is done
+ * with the same CharsetDecoder as an InputStreamReader, so invalid sequences are
+ * replaced in the same way, and the output of a byte filter is exactly the same
+ * as the output of the equivalent FilterWriter between an InputStreamReader and an
+ * OutputStreamWriter.
+ *
+ * A multi-byte sequence may be split between two writes: the first bytes are
+ * kept until the next write (or until close).
+ *
+ * The subclasses write their output with the emit methods, which collect the
+ * bytes in a buffer: the decorated stream receives a few large writes (when the
+ * buffer is full, and on flush and close), so it does not need to be buffered.
+ *
+ * @author Olivier Liechti
+ */
+public abstract class ByteFilter extends FilterOutputStream {
+
+  private static final int BUFFER_SIZE = 1024;
+  private static final int OUTPUT_SIZE = 8192;
+
+  /**
+   * The upper case of the ASCII characters (a lookup is faster than a range check,
+   * since there is no branch to predict)
+   */
+  private static final byte[] ASCII_UPPER_CASE = new byte[128];
+
+  static {
+    for (int c = 0; c < ASCII_UPPER_CASE.length; c++) {
+      ASCII_UPPER_CASE[c] = (byte) (c >= 'a' && c <= 'z' ? c - ('a' - 'A') : c);
+    }
+  }
+
+  private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+    .onMalformedInput(CodingErrorAction.REPLACE)
+    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final ByteBuffer undecodedBytes = ByteBuffer.allocate(BUFFER_SIZE);
+  private final CharBuffer decodedChars = CharBuffer.allocate(BUFFER_SIZE);
+
+  private final byte[] output = new byte[OUTPUT_SIZE];
+  private int outputLength = 0;
+  private char pendingHighSurrogate = 0;
+  private final byte[] singleByte = new byte[1];
+
+  private final Writer charWriter = new Writer() {
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      writeChars(cbuf, off, len);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+
+  public ByteFilter(OutputStream out) {
+    super(out);
+  }
+
+  /**
+   * Called with a sequence of ASCII bytes (from 0 to 127). The implementation
+   * emits the transformed bytes.
+   */
+  protected abstract void filterAscii(byte[] b, int off, int len) throws IOException;
+
+  /**
+   * Called with the characters decoded from a sequence of multi-byte characters
+   * (there is no ASCII character in the sequence). The implementation writes the
+   * transformed characters with writeChars.
+   */
+  protected abstract void filterChars(char[] cbuf, int off, int len) throws IOException;
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    int end = off + len;
+    int i = off;
+    while (i < end) {
+      int j = i;
+      if (b[i] >= 0 && undecodedBytes.position() == 0) {
+        while (j < end && b[j] >= 0) {
+          j++;
+        }
+        filterAscii(b, i, j - i);
+      } else {
+        while (j < end && b[j] < 0) {
+          j++;
+        }
+        /*
+         * If the sequence is followed by an ASCII byte, we decode it with this byte:
+         * this is how the decoder knows that an incomplete character is invalid.
+         * The ASCII byte is then passed to filterAscii, with the next bytes.
+         */
+        boolean terminated = j < end;
+        decode(b, i, (terminated ? j + 1 : j) - i, terminated);
+      }
+      i = j;
+    }
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    singleByte[0] = (byte) b;
+    write(singleByte, 0, 1);
+  }
+
+  /**
+   * Emits characters, encoded in UTF-8.
+   */
+  protected void writeChars(char[] cbuf, int off, int len) throws IOException {
+    for (int i = off; i < off + len; i++) {
+      if (outputLength > output.length - 4) {
+        flushOutput();
+      }
+      encodeChar(cbuf[i]);
+    }
+  }
+
+  /**
+   * Adds bytes to the output of the filter.
+   */
+  protected final void emit(byte[] b, int off, int len) throws IOException {
+    if (len > output.length - outputLength) {
+      flushOutput();
+      if (len > output.length) {
+        out.write(b, off, len);
+        return;
+      }
+    }
+    System.arraycopy(b, off, output, outputLength, len);
+    outputLength += len;
+  }
+
+  /**
+   * Adds a byte to the output of the filter.
+   */
+  protected final void emit(int b) throws IOException {
+    if (outputLength == output.length) {
+      flushOutput();
+    }
+    output[outputLength++] = (byte) b;
+  }
+
+  /**
+   * Adds ASCII bytes to the output of the filter, converted to upper case.
+   */
+  protected final void emitUpperCase(byte[] b, int off, int len) throws IOException {
+    for (int end = off + len; off < end;) {
+      if (outputLength == output.length) {
+        flushOutput();
+      }
+      int n = Math.min(end - off, output.length - outputLength);
+      for (int i = 0; i < n; i++) {
+        output[outputLength + i] = ASCII_UPPER_CASE[b[off + i]];
+      }
+      outputLength += n;
+      off += n;
+    }
+  }
+
+  /**
+   * @return a writer that writes characters with writeChars (to decorate it with a FilterWriter)
+   */
+  protected Writer getCharWriter() {
+    return charWriter;
+  }
+
+  /**
+   * Called by close, when all the bytes have been received. The incomplete
+   * multi-byte sequence, if any, is decoded (and replaced). Subclasses that keep
+   * a state between writes override this method to write what they still have.
+   */
+  protected void endOfInput() throws IOException {
+    undecodedBytes.flip();
+    CoderResult result;
+    do {
+      result = decoder.decode(undecodedBytes, decodedChars, true);
+      deliverDecodedChars(decodedChars.position());
+    } while (result.isOverflow());
+    do {
+      result = decoder.flush(decodedChars);
+      deliverDecodedChars(decodedChars.position());
+    } while (result.isOverflow());
+    undecodedBytes.clear();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    flushOutput();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      endOfInput();
+      if (pendingHighSurrogate != 0) {
+        pendingHighSurrogate = 0;
+        emit('?');
+      }
+    } finally {
+      super.close();
+    }
+  }
+
+  /**
+   * @return the stream decorated by this filter (used by FilterFusion)
+   */
+  OutputStream getWrappedStream() {
+    return out;
+  }
+
+  private void decode(byte[] b, int off, int len, boolean terminated) throws IOException {
+    while (len > 0) {
+      int n = Math.min(len, undecodedBytes.remaining());
+      undecodedBytes.put(b, off, n);
+      off += n;
+      len -= n;
+      undecodedBytes.flip();
+      boolean lastChunk = terminated && len == 0;
+      CoderResult result;
+      do {
+        result = decoder.decode(undecodedBytes, decodedChars, false);
+        int count = decodedChars.position();
+        if (lastChunk && result.isUnderflow()) {
+          count--; // the ASCII byte that terminates the sequence
+        }
+        deliverDecodedChars(count);
+      } while (result.isOverflow());
+      undecodedBytes.compact();
+    }
+  }
+
+  private void deliverDecodedChars(int count) throws IOException {
+    if (count > 0) {
+      filterChars(decodedChars.array(), 0, count);
+    }
+    decodedChars.clear();
+  }
+
+  /**
+   * Encodes a character like the UTF-8 encoder of an OutputStreamWriter, which
+   * replaces the invalid surrogates with '?'.
+   */
+  private void encodeChar(char c) {
+    if (pendingHighSurrogate != 0) {
+      char high = pendingHighSurrogate;
+      pendingHighSurrogate = 0;
+      if (Character.isLowSurrogate(c)) {
+        int codePoint = Character.toCodePoint(high, c);
+        output[outputLength++] = (byte) (0xf0 | (codePoint >> 18));
+        output[outputLength++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        output[outputLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        output[outputLength++] = (byte) (0x80 | (codePoint & 0x3f));
+        return;
+      }
+      output[outputLength++] = '?';
+    }
+    if (c < 0x80) {
+      output[outputLength++] = (byte) c;
+    } else if (c < 0x800) {
+      output[outputLength++] = (byte) (0xc0 | (c >> 6));
+      output[outputLength++] = (byte) (0x80 | (c & 0x3f));
+    } else if (Character.isHighSurrogate(c)) {
+      pendingHighSurrogate = c;
+    } else if (Character.isLowSurrogate(c)) {
+      output[outputLength++] = '?';
+    } else {
+      output[outputLength++] = (byte) (0xe0 | (c >> 12));
+      output[outputLength++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+      output[outputLength++] = (byte) (0x80 | (c & 0x3f));
+    }
+  }
+
+  /**
+   * Adds ASCII bytes to the output of the filter, converted to upper case, until
+   * the end of the line (the line separator is not added).
+   *
+   * @return the index of the first line separator (\r or \n) after off, or end
+   */
+  protected final int emitUpperCaseLine(byte[] b, int off, int end) throws IOException {
+    int i = off;
+    while (i < end) {
+      if (outputLength == output.length) {
+        flushOutput();
+      }
+      int stop = Math.min(end, i + output.length - outputLength);
+      int k = outputLength;
+      for (; i < stop; i++) {
+        byte c = b[i];
+        if (c == '\n' || c == '\r') {
+          outputLength = k;
+          return i;
+        }
+        output[k++] = ASCII_UPPER_CASE[c];
+      }
+      outputLength = k;
+    }
+    return end;
+  }
+
+  /**
+   * Sends the content of the output buffer to the decorated stream.
+   */
+  private void flushOutput() throws IOException {
+    if (outputLength > 0) {
+      out.write(output, 0, outputLength);
+      outputLength = 0;
+    }
+  }
+
+}
@@ -0,0 +1,108 @@
+package ch.heigvd.res.lab01.impl.filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class is the byte filter equivalent of the FileNumberingFilterWriter. The
+ * line separators are ASCII characters, so they are only found by filterAscii,
+ * which scans the bytes and emits every line (or part of a line) at once.
+ *
+ * Subclasses can transform the text of the lines by overriding writeLineText and
+ * writeLineChars.
+ *
+ * @author Olivier Liechti
+ */
+public class FileNumberingByteFilter extends ByteFilter {
+
+  private final LineNumberPrefix lineNumber = new LineNumberPrefix();
+  private boolean started = false;
+  private boolean pendingCarriageReturn = false;
+
+  public FileNumberingByteFilter(OutputStream out) {
+    super(out);
+  }
+
+  @Override
+  protected void filterAscii(byte[] b, int off, int len) throws IOException {
+    int end = off + len;
+    if (pendingCarriageReturn && b[off] == '\n') {
+      emit('\n');
+      off++;
+    }
+    startLine();
+    int i = off;
+    while (i < end) {
+      i = writeLineText(b, i, end);
+      if (i == end) {
+        return;
+      }
+      emit(b[i]);
+      if (b[i++] == '\r') {
+        if (i == end) {
+          pendingCarriageReturn = true;
+          return;
+        }
+        if (b[i] == '\n') {
+          emit('\n');
+          i++;
+        }
+      }
+      lineNumber.writeNext(this);
+    }
+  }
+
+  @Override
+  protected void filterChars(char[] cbuf, int off, int len) throws IOException {
+    startLine();
+    writeLineChars(cbuf, off, len);
+  }
+
+  @Override
+  protected void endOfInput() throws IOException {
+    super.endOfInput();
+    if (pendingCarriageReturn) {
+      pendingCarriageReturn = false;
+      lineNumber.writeNext(this);
+    }
+  }
+
+  /**
+   * Emits the ASCII bytes of a line, until the line separator (which is not emitted).
+   *
+   * @return the index of the first line separator after off, or end
+   */
+  protected int writeLineText(byte[] b, int off, int end) throws IOException {
+    int i = off;
+    while (i < end) {
+      byte c = b[i];
+      if (c == '\n' || c == '\r') {
+        break;
+      }
+      i++;
+    }
+    emit(b, off, i - off);
+    return i;
+  }
+
+  /**
+   * Writes non-ASCII characters that belong to a line.
+   */
+  protected void writeLineChars(char[] cbuf, int off, int len) throws IOException {
+    writeChars(cbuf, off, len);
+  }
+
+  /**
+   * Writes the number of the line, if we are at the beginning of a line.
+   */
+  private void startLine() throws IOException {
+    if (pendingCarriageReturn) {
+      pendingCarriageReturn = false;
+      lineNumber.writeNext(this);
+    } else if (!started) {
+      started = true;
+      lineNumber.writeNext(this);
+    }
+  }
+
+}
@@ -1,5 +1,6 @@
 package ch.heigvd.res.lab01.impl.filters;
 
+import ch.heigvd.res.lab01.impl.LineCursor;
 import java.io.FilterWriter;
 import java.io.IOException;
 import java.io.Writer;
@@ -13,29 +14,107 @@ import java.util.logging.Logger;
  *
  * Hello\n\World -> 1\Hello\n2\tWorld
  *
+ * The line separators are \n, \r and \r\n. The characters are not processed one
+ * by one: each write is scanned for separators by a LineCursor and every line (or part of a line)
+ * is passed to the decorated writer with a single write. When a write ends with
+ * \r, we do not know yet whether the next write starts with \n, so the line
+ * number is only sent by the next write (or by close).
+ *
+ * The line numbers are written by a LineNumberPrefix, so no String is created
+ * for the prefixes.
+ *
  * @author Olivier Liechti
  */
 public class FileNumberingFilterWriter extends FilterWriter {
 
   private static final Logger LOG = Logger.getLogger(FileNumberingFilterWriter.class.getName());
 
+  private static final int SCRATCH_SIZE = 1024;
+
+  private final LineNumberPrefix lineNumber = new LineNumberPrefix();
+  private final char[] scratch = new char[SCRATCH_SIZE];
+  private final LineCursor cursor = new LineCursor();
+  private boolean started = false;
+  private boolean pendingCarriageReturn = false;
+
   public FileNumberingFilterWriter(Writer out) {
     super(out);
   }
 
   @Override
   public void write(String str, int off, int len) throws IOException {
-    throw new UnsupportedOperationException("The student has not implemented this method yet.");
+    for (int end = off + len; off < end;) {
+      int n = Math.min(end - off, scratch.length);
+      str.getChars(off, off + n, scratch, 0);
+      numberLines(scratch, 0, n);
+      off += n;
+    }
   }
 
   @Override
   public void write(char[] cbuf, int off, int len) throws IOException {
-    throw new UnsupportedOperationException("The student has not implemented this method yet.");
+    numberLines(cbuf, off, len);
   }
 
   @Override
   public void write(int c) throws IOException {
-    throw new UnsupportedOperationException("The student has not implemented this method yet.");
+    scratch[0] = (char) c;
+    numberLines(scratch, 0, 1);
+  }
+
+  /**
+   * If the last character was a \r, the next line has started: we send its number
+   * before closing the writer.
+   */
+  @Override
+  public void close() throws IOException {
+    if (pendingCarriageReturn) {
+      pendingCarriageReturn = false;
+      writeNextLineNumber();
+    }
+    super.close();
+  }
+
+  private void numberLines(char[] cbuf, int off, int len) throws IOException {
+    if (len <= 0) {
+      return;
+    }
+    int end = off + len;
+    if (pendingCarriageReturn) {
+      pendingCarriageReturn = false;
+      if (cbuf[off] == '\n') {
+        out.write('\n');
+        off++;
+      }
+      writeNextLineNumber();
+    } else if (!started) {
+      started = true;
+      writeNextLineNumber();
+    }
+    cursor.reset(cbuf, off, end);
+    while (cursor.next()) {
+      out.write(cbuf, cursor.getStart(), cursor.getEnd() - cursor.getStart());
+      if (cursor.endsWithCarriageReturn()) {
+        pendingCarriageReturn = true;
+        return;
+      }
+      writeNextLineNumber();
+    }
+    int start = cursor.getRemainderStart();
+    if (start < end) {
+      out.write(cbuf, start, end - start);
+    }
+  }
+
+  private void writeNextLineNumber() throws IOException {
+    lineNumber.writeNext(out);
+  }
+
+  /**
+   * @return the writer decorated by this filter (used by FilterFusion)
+   */
+  Writer getWrappedWriter() {
+    return out;
   }
 
 }
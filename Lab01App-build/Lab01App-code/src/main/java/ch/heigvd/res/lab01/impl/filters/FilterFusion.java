@@ -0,0 +1,61 @@
+package ch.heigvd.res.lab01.impl.filters;
+
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * This class replaces known combinations of filters by a single filter that
+ * produces the same output in one pass. It is applied by the FileTransformer to
+ * the writer returned by decorateWithFilters, so a transformer declares its
+ * filters as usual and gets the fused filter for free.
+ *
+ * The known combinations are a FileNumberingFilterWriter decorating an
+ * UpperCaseFilterWriter (and the other way round), which are replaced by an
+ * UpperCaseNumberingFilterWriter, and the same combination of byte filters,
+ * which is replaced by an UpperCaseNumberingByteFilter. Only the exact classes
+ * are fused (not their subclasses), and the filters must not have been used yet.
+ *
+ * @author Olivier Liechti
+ */
+public final class FilterFusion {
+
+  private FilterFusion() {
+  }
+
+  /**
+   * @param writer a writer, possibly decorated by filters that have not been used yet
+   * @return a writer that produces the same output, with the known combinations of
+   * filters replaced by fused filters
+   */
+  public static Writer fuse(Writer writer) {
+    if (writer.getClass() == FileNumberingFilterWriter.class) {
+      Writer wrapped = ((FileNumberingFilterWriter) writer).getWrappedWriter();
+      if (wrapped.getClass() == UpperCaseFilterWriter.class) {
+        return new UpperCaseNumberingFilterWriter(((UpperCaseFilterWriter) wrapped).getWrappedWriter());
+      }
+    } else if (writer.getClass() == UpperCaseFilterWriter.class) {
+      Writer wrapped = ((UpperCaseFilterWriter) writer).getWrappedWriter();
+      if (wrapped.getClass() == FileNumberingFilterWriter.class) {
+        return new UpperCaseNumberingFilterWriter(((FileNumberingFilterWriter) wrapped).getWrappedWriter());
+      }
+    }
+    return writer;
+  }
+
+  /**
+   * @param stream a stream, possibly decorated by byte filters that have not been used yet
+   * @return a stream that produces the same output, with the known combinations of
+   * byte filters replaced by fused filters
+   */
+  public static OutputStream fuse(OutputStream stream) {
+    if (stream.getClass() == FileNumberingByteFilter.class || stream.getClass() == UpperCaseByteFilter.class) {
+      OutputStream wrapped = ((ByteFilter) stream).getWrappedStream();
+      if (wrapped.getClass() != stream.getClass()
+        && (wrapped.getClass() == FileNumberingByteFilter.class || wrapped.getClass() == UpperCaseByteFilter.class)) {
+        return new UpperCaseNumberingByteFilter(((ByteFilter) wrapped).getWrappedStream());
+      }
+    }
+    return stream;
+  }
+
+}
@@ -0,0 +1,53 @@
+package ch.heigvd.res.lab01.impl.filters;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This class writes the line numbers (followed by a tab) for the filters that
+ * number lines. The last number is kept as digits in a char buffer (and in a
+ * byte buffer, for the byte filters), which is incremented digit by digit, so
+ * no String is created for the numbers.
+ *
+ * @author Olivier Liechti
+ */
+class LineNumberPrefix {
+
+  private final char[] prefix = {'0', '0', '0', '0', '0', '0', '0', '0', '0', '0', '0', '\t'};
+  private final byte[] bytes = {'0', '0', '0', '0', '0', '0', '0', '0', '0', '0', '0', '\t'};
+
+  /**
+   * The index of the first digit of the last number (the number 0 is never written)
+   */
+  private int start = prefix.length - 2;
+
+  /**
+   * Increments the line number and writes it, followed by a tab.
+   */
+  void writeNext(Writer out) throws IOException {
+    increment();
+    out.write(prefix, start, prefix.length - start);
+  }
+
+  /**
+   * Increments the line number and emits it in ASCII, followed by a tab.
+   */
+  void writeNext(ByteFilter filter) throws IOException {
+    increment();
+    filter.emit(bytes, start, bytes.length - start);
+  }
+
+  private void increment() {
+    int i = prefix.length - 2;
+    while (i >= start && prefix[i] == '9') {
+      prefix[i] = '0';
+      bytes[i--] = '0';
+    }
+    if (i < start) {
+      start = i;
+    }
+    prefix[i]++;
+    bytes[i]++;
+  }
+
+}
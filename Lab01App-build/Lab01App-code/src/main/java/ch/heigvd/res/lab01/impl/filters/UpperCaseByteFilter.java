@@ -0,0 +1,39 @@
+package ch.heigvd.res.lab01.impl.filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * This class is the byte filter equivalent of the UpperCaseFilterWriter. The ASCII
+ * letters are converted while they are copied to the output buffer; the other
+ * characters are converted by an UpperCaseFilterWriter, so the result is exactly
+ * the same.
+ *
+ * @author Olivier Liechti
+ */
+public class UpperCaseByteFilter extends ByteFilter {
+
+  private final Writer upperCaseWriter = new UpperCaseFilterWriter(getCharWriter());
+
+  public UpperCaseByteFilter(OutputStream out) {
+    super(out);
+  }
+
+  @Override
+  protected void filterAscii(byte[] b, int off, int len) throws IOException {
+    emitUpperCase(b, off, len);
+  }
+
+  @Override
+  protected void filterChars(char[] cbuf, int off, int len) throws IOException {
+    upperCaseWriter.write(cbuf, off, len);
+  }
+
+  @Override
+  protected void endOfInput() throws IOException {
+    super.endOfInput();
+    upperCaseWriter.close();
+  }
+
+}
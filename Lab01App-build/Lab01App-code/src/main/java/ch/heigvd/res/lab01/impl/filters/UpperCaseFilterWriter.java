@@ -3,30 +3,183 @@ package ch.heigvd.res.lab01.impl.filters;
 import java.io.FilterWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 
 /**
+ * This class converts the characters sent to the decorated writer to upper case.
+ * The result is the same as String.toUpperCase(Locale.ROOT): the characters are
+ * converted code point by code point (surrogate pairs are handled, even when a
+ * pair is split between two calls), and the few characters that become several
+ * characters (such as the German sharp s, which becomes "SS") are expanded.
+ *
+ * The characters are copied by chunks into a scratch buffer, converted in place
+ * and passed to the decorated writer with write(char[], int, int). ASCII letters
+ * are converted with a simple range check; the other characters go through
+ * Character.toUpperCase. Nothing is allocated while writing.
+ *
+ * A high surrogate received at the end of a write is kept until the next write
+ * (or until close, if no low surrogate arrives).
  *
  * @author Olivier Liechti
  */
 public class UpperCaseFilterWriter extends FilterWriter {
-  
+
+  private static final int SCRATCH_SIZE = 1024;
+
+  /**
+   * The BMP characters whose upper case is not the single character returned by
+   * Character.toUpperCase (about a hundred of them, in increasing order, so they
+   * can be found with a binary search that does not box the character), and their
+   * upper case
+   */
+  private static final char[] SPECIAL_CHARS;
+  private static final String[] SPECIAL_UPPER_CASES;
+
+  static {
+    StringBuilder chars = new StringBuilder();
+    List<String> upperCases = new ArrayList<>();
+    for (char c = 0x80; c < Character.MAX_VALUE; c++) {
+      if (Character.isSurrogate(c)) {
+        continue;
+      }
+      String upperCase = String.valueOf(c).toUpperCase(Locale.ROOT);
+      if (upperCase.length() != 1 || upperCase.charAt(0) != Character.toUpperCase(c)) {
+        chars.append(c);
+        upperCases.add(upperCase);
+      }
+    }
+    SPECIAL_CHARS = chars.toString().toCharArray();
+    SPECIAL_UPPER_CASES = upperCases.toArray(new String[upperCases.size()]);
+  }
+
+  private final char[] scratch = new char[SCRATCH_SIZE];
+  private char pendingHighSurrogate = 0;
+
   public UpperCaseFilterWriter(Writer wrappedWriter) {
     super(wrappedWriter);
   }
 
   @Override
   public void write(String str, int off, int len) throws IOException {
-    throw new UnsupportedOperationException("The student has not implemented this method yet.");
+    for (int end = off + len; off < end;) {
+      int n = Math.min(end - off, scratch.length);
+      str.getChars(off, off + n, scratch, 0);
+      upperCaseAndWrite(n);
+      off += n;
+    }
   }
 
   @Override
   public void write(char[] cbuf, int off, int len) throws IOException {
-    throw new UnsupportedOperationException("The student has not implemented this method yet.");
+    for (int end = off + len; off < end;) {
+      int n = Math.min(end - off, scratch.length);
+      System.arraycopy(cbuf, off, scratch, 0, n);
+      upperCaseAndWrite(n);
+      off += n;
+    }
   }
 
   @Override
   public void write(int c) throws IOException {
-    throw new UnsupportedOperationException("The student has not implemented this method yet.");
+    scratch[0] = (char) c;
+    upperCaseAndWrite(1);
+  }
+
+  /**
+   * Writes the high surrogate that is still waiting for its low surrogate (it is
+   * not a valid character, but we do not want to lose it) and closes the writer.
+   */
+  @Override
+  public void close() throws IOException {
+    if (pendingHighSurrogate != 0) {
+      out.write(pendingHighSurrogate);
+      pendingHighSurrogate = 0;
+    }
+    super.close();
+  }
+
+  /**
+   * @param c a character
+   * @return the upper case of c if it is not the single character returned by
+   * Character.toUpperCase, null otherwise
+   */
+  static String getSpecialUpperCase(char c) {
+    int index = Arrays.binarySearch(SPECIAL_CHARS, c);
+    return index < 0 ? null : SPECIAL_UPPER_CASES[index];
+  }
+
+  /**
+   * @return the writer decorated by this filter (used by FilterFusion)
+   */
+  Writer getWrappedWriter() {
+    return out;
+  }
+
+  /**
+   * Converts the first length characters of the scratch buffer and writes them.
+   * The characters that do not keep their length are written directly, between
+   * the converted chunks.
+   */
+  private void upperCaseAndWrite(int length) throws IOException {
+    int start = 0;
+    if (pendingHighSurrogate != 0) {
+      char high = pendingHighSurrogate;
+      pendingHighSurrogate = 0;
+      if (Character.isLowSurrogate(scratch[0])) {
+        writeUpperCase(Character.toCodePoint(high, scratch[0]));
+        start = 1;
+      } else {
+        out.write(high);
+      }
+    }
+    for (int i = start; i < length; i++) {
+      char c = scratch[i];
+      if (c < 0x80) {
+        if (c >= 'a' && c <= 'z') {
+          scratch[i] = (char) (c - ('a' - 'A'));
+        }
+      } else if (!Character.isSurrogate(c)) {
+        int special = Arrays.binarySearch(SPECIAL_CHARS, c);
+        if (special >= 0) {
+          out.write(scratch, start, i - start);
+          out.write(SPECIAL_UPPER_CASES[special]);
+          start = i + 1;
+        } else {
+          scratch[i] = Character.toUpperCase(c);
+        }
+      } else if (Character.isHighSurrogate(c)) {
+        if (i + 1 == length) {
+          out.write(scratch, start, i - start);
+          pendingHighSurrogate = c;
+          start = length;
+        } else if (Character.isLowSurrogate(scratch[i + 1])) {
+          int upperCase = Character.toUpperCase(Character.toCodePoint(c, scratch[i + 1]));
+          if (Character.isSupplementaryCodePoint(upperCase)) {
+            scratch[i] = Character.highSurrogate(upperCase);
+            scratch[i + 1] = Character.lowSurrogate(upperCase);
+          } else {
+            out.write(scratch, start, i - start);
+            out.write(upperCase);
+            start = i + 2;
+          }
+          i++;
+        }
+      }
+    }
+    out.write(scratch, start, length - start);
+  }
+
+  private void writeUpperCase(int codePoint) throws IOException {
+    int upperCase = Character.toUpperCase(codePoint);
+    if (Character.isSupplementaryCodePoint(upperCase)) {
+      out.write(Character.highSurrogate(upperCase));
+      out.write(Character.lowSurrogate(upperCase));
+    } else {
+      out.write(upperCase);
+    }
   }
 
 }
@@ -0,0 +1,41 @@
+package ch.heigvd.res.lab01.impl.filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * This class is the byte filter equivalent of the UpperCaseNumberingFilterWriter:
+ * it numbers the lines like a FileNumberingByteFilter and converts the text to
+ * upper case while writing the lines, so the bytes are decoded and scanned once.
+ *
+ * You do not need to create this filter yourself: FilterFusion replaces a
+ * FileNumberingByteFilter and an UpperCaseByteFilter by an instance of this class.
+ *
+ * @author Olivier Liechti
+ */
+public class UpperCaseNumberingByteFilter extends FileNumberingByteFilter {
+
+  private final Writer upperCaseWriter = new UpperCaseFilterWriter(getCharWriter());
+
+  public UpperCaseNumberingByteFilter(OutputStream out) {
+    super(out);
+  }
+
+  @Override
+  protected int writeLineText(byte[] b, int off, int end) throws IOException {
+    return emitUpperCaseLine(b, off, end);
+  }
+
+  @Override
+  protected void writeLineChars(char[] cbuf, int off, int len) throws IOException {
+    upperCaseWriter.write(cbuf, off, len);
+  }
+
+  @Override
+  protected void endOfInput() throws IOException {
+    super.endOfInput();
+    upperCaseWriter.close();
+  }
+
+}
@@ -0,0 +1,165 @@
+package ch.heigvd.res.lab01.impl.filters;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This class does the work of a FileNumberingFilterWriter decorating an
+ * UpperCaseFilterWriter, in a single pass: every chunk is copied once into a
+ * scratch buffer, where the letters are converted to upper case while we look
+ * for the line separators. The output is exactly the same as the output of the
+ * two filters (the order of the filters does not matter, since the line numbers,
+ * the tabs and the line separators are not changed by the conversion).
+ *
+ * You do not need to create this filter yourself: FilterFusion replaces the two
+ * filters by an instance of this class.
+ *
+ * @author Olivier Liechti
+ */
+public class UpperCaseNumberingFilterWriter extends FilterWriter {
+
+  private static final int SCRATCH_SIZE = 1024;
+
+  private final LineNumberPrefix lineNumber = new LineNumberPrefix();
+  private final char[] scratch = new char[SCRATCH_SIZE];
+  private boolean started = false;
+  private boolean pendingCarriageReturn = false;
+  private char pendingHighSurrogate = 0;
+
+  public UpperCaseNumberingFilterWriter(Writer out) {
+    super(out);
+  }
+
+  @Override
+  public void write(String str, int off, int len) throws IOException {
+    for (int end = off + len; off < end;) {
+      int n = Math.min(end - off, scratch.length);
+      str.getChars(off, off + n, scratch, 0);
+      transformAndWrite(n);
+      off += n;
+    }
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    for (int end = off + len; off < end;) {
+      int n = Math.min(end - off, scratch.length);
+      System.arraycopy(cbuf, off, scratch, 0, n);
+      transformAndWrite(n);
+      off += n;
+    }
+  }
+
+  @Override
+  public void write(int c) throws IOException {
+    scratch[0] = (char) c;
+    transformAndWrite(1);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (pendingHighSurrogate != 0) {
+      out.write(pendingHighSurrogate);
+      pendingHighSurrogate = 0;
+    }
+    if (pendingCarriageReturn) {
+      pendingCarriageReturn = false;
+      lineNumber.writeNext(out);
+    }
+    super.close();
+  }
+
+  /**
+   * Converts the first length characters of the scratch buffer, inserts the line
+   * numbers and writes the result (see FileNumberingFilterWriter and
+   * UpperCaseFilterWriter for the handling of the characters that are split
+   * between two writes).
+   */
+  private void transformAndWrite(int length) throws IOException {
+    int i = 0;
+    if (pendingHighSurrogate != 0) {
+      char high = pendingHighSurrogate;
+      pendingHighSurrogate = 0;
+      if (Character.isLowSurrogate(scratch[0])) {
+        writeUpperCase(Character.toCodePoint(high, scratch[0]));
+        i = 1;
+      } else {
+        out.write(high);
+      }
+    } else if (pendingCarriageReturn) {
+      pendingCarriageReturn = false;
+      if (scratch[0] == '\n') {
+        out.write('\n');
+        i = 1;
+      }
+      lineNumber.writeNext(out);
+    } else if (!started) {
+      started = true;
+      lineNumber.writeNext(out);
+    }
+    int start = i;
+    for (; i < length; i++) {
+      char c = scratch[i];
+      if (c < 0x80) {
+        if (c >= 'a' && c <= 'z') {
+          scratch[i] = (char) (c - ('a' - 'A'));
+        } else if (c == '\n') {
+          out.write(scratch, start, i + 1 - start);
+          lineNumber.writeNext(out);
+          start = i + 1;
+        } else if (c == '\r') {
+          if (i + 1 == length) {
+            out.write(scratch, start, i + 1 - start);
+            pendingCarriageReturn = true;
+            return;
+          }
+          if (scratch[i + 1] == '\n') {
+            i++;
+          }
+          out.write(scratch, start, i + 1 - start);
+          lineNumber.writeNext(out);
+          start = i + 1;
+        }
+      } else if (!Character.isSurrogate(c)) {
+        String special = UpperCaseFilterWriter.getSpecialUpperCase(c);
+        if (special != null) {
+          out.write(scratch, start, i - start);
+          out.write(special);
+          start = i + 1;
+        } else {
+          scratch[i] = Character.toUpperCase(c);
+        }
+      } else if (Character.isHighSurrogate(c)) {
+        if (i + 1 == length) {
+          out.write(scratch, start, i - start);
+          pendingHighSurrogate = c;
+          return;
+        } else if (Character.isLowSurrogate(scratch[i + 1])) {
+          int upperCase = Character.toUpperCase(Character.toCodePoint(c, scratch[i + 1]));
+          if (Character.isSupplementaryCodePoint(upperCase)) {
+            scratch[i] = Character.highSurrogate(upperCase);
+            scratch[i + 1] = Character.lowSurrogate(upperCase);
+          } else {
+            out.write(scratch, start, i - start);
+            out.write(upperCase);
+            start = i + 2;
+          }
+          i++;
+        }
+      }
+    }
+    out.write(scratch, start, length - start);
+  }
+
+  private void writeUpperCase(int codePoint) throws IOException {
+    int upperCase = Character.toUpperCase(codePoint);
+    if (Character.isSupplementaryCodePoint(upperCase)) {
+      out.write(Character.highSurrogate(upperCase));
+      out.write(Character.lowSurrogate(upperCase));
+    } else {
+      out.write(upperCase);
+    }
+  }
+
+}
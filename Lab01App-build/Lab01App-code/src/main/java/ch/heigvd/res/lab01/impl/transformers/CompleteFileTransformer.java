@@ -1,5 +1,10 @@
 package ch.heigvd.res.lab01.impl.transformers;
 
+import ch.heigvd.res.lab01.impl.filters.FileNumberingByteFilter;
+import ch.heigvd.res.lab01.impl.filters.FileNumberingFilterWriter;
+import ch.heigvd.res.lab01.impl.filters.UpperCaseByteFilter;
+import ch.heigvd.res.lab01.impl.filters.UpperCaseFilterWriter;
+import java.io.OutputStream;
 import java.io.Writer;
 
 /**
@@ -9,23 +14,26 @@ import java.io.Writer;
  * generate an output file with 1) uppercase letters and 2) line numbers at the
  * beginning of each line.
  * 
+ * The FileTransformer replaces the two filters by an UpperCaseNumberingFilterWriter
+ * (see FilterFusion), which gives the same output in a single pass. The same
+ * filters are available as byte filters, for the byte pipeline.
+ * 
  * @author Olivier Liechti
  */
 public class CompleteFileTransformer extends FileTransformer {
 
   @Override
   public Writer decorateWithFilters(Writer writer) {
-    if (true) {
-      throw new UnsupportedOperationException("The student has not implemented this method yet.");
-    }
     /*
-     * If you uncomment the following line (and get rid of th 3 previous lines...), you will restore the decoration 
-     * of the writer (connected to the file. You can see that you first decorate the writer with an UpperCaseFilterWriter, which you then
-     * decorate with a FileNumberingFilterWriter. The resulting writer is used by the abstract class to write the characters read from the
-     * input files. So, the input is first prefixed with line numbers, then transformed to uppercase, then sent to the output file.f
+     * The input is first prefixed with line numbers, then transformed to uppercase, then sent to the output file.
      */
-    //writer = new FileNumberingFilterWriter(new UpperCaseFilterWriter(writer));
-    return writer; 
+    writer = new FileNumberingFilterWriter(new UpperCaseFilterWriter(writer));
+    return writer;
+  }
+
+  @Override
+  public OutputStream decorateWithByteFilters(OutputStream stream) {
+    return new FileNumberingByteFilter(new UpperCaseByteFilter(stream));
   }
 
 }
@@ -1,15 +1,32 @@
 package ch.heigvd.res.lab01.impl.transformers;
 
-import ch.heigvd.res.lab01.interfaces.IFileVisitor;
+import ch.heigvd.res.lab01.impl.filters.FilterFusion;
+import ch.heigvd.res.lab01.interfaces.IAttributeFileVisitor;
+import ch.heigvd.res.lab01.interfaces.IThreadSafeFileVisitor;
+import ch.heigvd.res.lab01.metrics.Metrics;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -23,12 +40,73 @@ import java.util.logging.Logger;
  * The subclasses have to implement the decorateWithFilters method, which instantiates
  * a list of filters and decorates the output writer with them.
  * 
+ * Directories are ignored. When the explorer gives us the attributes of the visited
+ * node, we use them to check that it is a regular file (instead of asking the file
+ * system again).
+ * 
+ * Every visit opens its own reader and writer, so several files can be transformed
+ * at the same time (the class implements IThreadSafeFileVisitor). The subclasses
+ * must keep it that way: decorateWithFilters must create new filters at every call.
+ * The writer returned by decorateWithFilters goes through FilterFusion, which
+ * replaces the known combinations of filters by a single filter.
+ * 
+ * The characters are copied by chunks: they are read into a char[] buffer and
+ * each chunk is passed to write(char[], int, int) on the decorated writer, so
+ * the filters can process a whole chunk at once. The size of the buffer can be
+ * changed with setBufferSize. The buffers up to MAX_POOLED_BUFFER_SIZE are kept
+ * in a ThreadLocal and reused by all the files transformed by the same thread.
+ * 
+ * When decorateWithFilters returns the writer without any decoration (like the
+ * NoOpFileTransformer), there is nothing to transform: the bytes of the input
+ * file are copied as they are with FileChannel.transferTo, without decoding and
+ * encoding the characters. For a valid UTF-8 file, the output is the same (an
+ * invalid file is copied as it is, instead of having its invalid sequences
+ * replaced).
+ * 
+ * When the byte pipeline is enabled (with setBytePipeline), the subclasses that
+ * implement decorateWithByteFilters get their file read into a ByteBuffer and
+ * passed to byte filters, which work on the UTF-8 bytes directly and only decode
+ * the multi-byte characters.
+ * 
+ * The files of at least setMappedInputThreshold bytes are not read with read
+ * calls: they are mapped in memory with FileChannel.map, and the mapped bytes are
+ * passed to the filters by chunks of the buffer size (for the filter writers, they
+ * are decoded with a CharsetDecoder that replaces the invalid sequences, like an
+ * InputStreamReader). A file is mapped by regions of at most MAX_MAPPED_REGION_SIZE
+ * bytes, and every region is unmapped as soon as it has been processed, so large
+ * files do not use more address space than one region. If a region cannot be
+ * mapped, the rest of the file is read with read calls.
+ * 
  * @author Olivier Liechti
  */
-public abstract class FileTransformer implements IFileVisitor {
+public abstract class FileTransformer implements IAttributeFileVisitor, IThreadSafeFileVisitor {
 
   private static final Logger LOG = Logger.getLogger(FileTransformer.class.getName());
+
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  /**
+   * Larger buffers are allocated for every file, so that we do not keep big arrays
+   * alive in every thread that has transformed a file
+   */
+  public static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The size of the regions mapped at once by the mapped input mode (a single
+   * MappedByteBuffer cannot be larger than 2 GB anyway)
+   */
+  public static final long MAX_MAPPED_REGION_SIZE = 256 * 1024 * 1024;
+
+  private static final int MIN_DECODING_BUFFER_SIZE = 16;
+
+  private static final ThreadLocal<char[]> POOLED_BUFFER = new ThreadLocal<>();
+  private static final ThreadLocal<ByteBuffer> POOLED_BYTE_BUFFER = new ThreadLocal<>();
+
   private final List<FilterWriter> filters = new ArrayList<>();
+  private int bufferSize = DEFAULT_BUFFER_SIZE;
+  private boolean bytePipeline = false;
+  private long mappedInputThreshold = Long.MAX_VALUE;
+  private long maxMappedRegionSize = MAX_MAPPED_REGION_SIZE;
   
   /**
    * The subclasses implement this method to define what transformation(s) are
@@ -43,28 +121,416 @@ public abstract class FileTransformer implements IFileVisitor {
    */
   public abstract Writer decorateWithFilters(Writer writer);
 
+  /**
+   * The subclasses can implement this method to define the same transformation(s)
+   * with byte filters (see ByteFilter), which are used instead of the filter writers
+   * when the byte pipeline is enabled. The byte filters must produce exactly the
+   * same output as the filter writers.
+   * 
+   * @param stream the stream connected to the output file
+   * @return the stream decorated by 0, 1 or more byte filters, or null if the
+   * transformation is not available with byte filters (the default)
+   */
+  public OutputStream decorateWithByteFilters(OutputStream stream) {
+    return null;
+  }
+
+  /**
+   * @param bufferSize the number of characters read from the input file and passed
+   * to the writer at once
+   */
+  public void setBufferSize(int bufferSize) {
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("The buffer size must be at least 1, not " + bufferSize);
+    }
+    this.bufferSize = bufferSize;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * @param bytePipeline true if the files must be transformed by the byte filters
+   * returned by decorateWithByteFilters (when there are some), instead of being
+   * decoded and passed to the filter writers
+   */
+  public void setBytePipeline(boolean bytePipeline) {
+    this.bytePipeline = bytePipeline;
+  }
+
+  /**
+   * @param mappedInputThreshold the size (in bytes) from which the input files are
+   * mapped in memory instead of being read (by default, no file is mapped)
+   */
+  public void setMappedInputThreshold(long mappedInputThreshold) {
+    if (mappedInputThreshold < 0) {
+      throw new IllegalArgumentException("The mapped input threshold cannot be negative: " + mappedInputThreshold);
+    }
+    this.mappedInputThreshold = mappedInputThreshold;
+  }
+
+  public long getMappedInputThreshold() {
+    return mappedInputThreshold;
+  }
+
+  /**
+   * Used by the tests, to cross region boundaries with small files.
+   */
+  void setMaxMappedRegionSize(long maxMappedRegionSize) {
+    if (maxMappedRegionSize < 1 || maxMappedRegionSize > MAX_MAPPED_REGION_SIZE) {
+      throw new IllegalArgumentException("Invalid mapped region size: " + maxMappedRegionSize);
+    }
+    this.maxMappedRegionSize = maxMappedRegionSize;
+  }
+
   @Override
   public void visit(File file) {
-    if (!file.isFile()) {
+    if (!file.isFile() || isManifestFile(file)) {
       return;
     }
-    try {
-      Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
-      Writer writer = new OutputStreamWriter(new FileOutputStream(file.getPath()+ ".out"), "UTF-8"); // the bug fix by teacher
-      writer = decorateWithFilters(writer);
-
-      /*
-       * There is a missing piece here: you have an input reader and an ouput writer (notice how the 
-       * writer has been decorated by the concrete subclass!). You need to write a loop to read the
-       * characters and write them to the writer.
-       */
-      
-      reader.close();
-      writer.flush();
-      writer.close();
+    long start = Metrics.start();
+    boolean transformed = transform(file, null);
+    if (start != 0) {
+      recordTransform(start, transformed, file, file.length());
+    }
+  }
+
+  @Override
+  public void visit(File file, BasicFileAttributes attributes) {
+    visitAndReport(file, attributes, null);
+  }
+
+  /**
+   * Does the work of visit(file, attributes) and tells whether the file has been
+   * transformed, so that a decorator (see IncrementalFileTransformer) does not
+   * take a failed transformation for a successful one.
+   *
+   * When a digest is given, it is updated with the content of the file while the
+   * file is transformed, so the caller can hash the file without reading it again.
+   * The mapped input and the byte pipeline hash the bytes as they go through the
+   * JVM; the copy of an undecorated file does not use transferTo, because the
+   * bytes have to be read to be hashed.
+   *
+   * @param digest the digest to update with the content of the file, or null
+   * @return true if the output file has been written completely, false if the
+   * file is not a regular file or could not be transformed (the error has been
+   * logged)
+   */
+  protected boolean visitAndReport(File file, BasicFileAttributes attributes, MessageDigest digest) {
+    if (!attributes.isRegularFile() || isManifestFile(file)) {
+      return false;
+    }
+    long start = Metrics.start();
+    boolean transformed = transform(file, digest);
+    if (start != 0) {
+      recordTransform(start, transformed, file, attributes.size());
+    }
+    return transformed;
+  }
+
+  /**
+   * The manifest of the IncrementalFileTransformer is not a quote file, it must
+   * not be transformed by a normal run either
+   */
+  private static boolean isManifestFile(File file) {
+    return TransformManifest.FILENAME.equals(file.getName());
+  }
+
+  /**
+   * The size of the output file is only read when the metrics are enabled
+   */
+  private static void recordTransform(long start, boolean transformed, File file, long inputSize) {
+    Metrics.TRANSFORM.record(start, transformed, inputSize, new File(file.getPath() + ".out").length());
+  }
+
+  /**
+   * @param digest the digest to update with the content of the file, or null
+   * @return false if the file could not be transformed (the error has been logged)
+   */
+  private boolean transform(File file, MessageDigest digest) {
+    try (FileOutputStream output = new FileOutputStream(file.getPath() + ".out")) {
+      if (bytePipeline) {
+        OutputStream decoratedStream = decorateWithByteFilters(output);
+        if (decoratedStream == output) {
+          copyBytes(file, output, digest);
+          return true;
+        }
+        if (decoratedStream != null) {
+          transformBytes(file, FilterFusion.fuse(decoratedStream), digest);
+          return true;
+        }
+      }
+      try (Writer writer = new OutputStreamWriter(output, "UTF-8")) {
+        Writer decoratedWriter = decorateWithFilters(writer);
+        if (decoratedWriter == writer) {
+          copyBytes(file, output, digest);
+          return true;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+          Writer filteredWriter = FilterFusion.fuse(decoratedWriter)) {
+          if (in.size() >= mappedInputThreshold) {
+            transformMappedChars(in, filteredWriter, digest);
+          } else {
+            InputStream stream = Channels.newInputStream(in);
+            if (digest != null) {
+              stream = new DigestInputStream(stream, digest);
+            }
+            Reader reader = new InputStreamReader(stream, "UTF-8");
+            copy(reader, filteredWriter, acquireBuffer(bufferSize), bufferSize);
+          }
+          filteredWriter.flush();
+        }
+      }
+      return true;
     } catch (IOException ex) {
       LOG.log(Level.SEVERE, null, ex);
+      return false;
+    }
+  }
+
+  /**
+   * Applies the transformation to a stream, for the content that does not come
+   * from a file (such as the files of a QuoteArchive). The byte pipeline is used
+   * when it is enabled, like for the files. Both streams are closed.
+   *
+   * @param input the content to transform (UTF-8)
+   * @param output where the transformed content is written (UTF-8)
+   * @throws IOException if the content cannot be read or written
+   */
+  public void transform(InputStream input, OutputStream output) throws IOException {
+    try (InputStream in = input; OutputStream out = output) {
+      OutputStream decoratedStream = bytePipeline ? decorateWithByteFilters(out) : null;
+      if (decoratedStream != null && decoratedStream != out) {
+        try (OutputStream filteredStream = FilterFusion.fuse(decoratedStream)) {
+          ByteBuffer buffer = acquireByteBuffer(bufferSize);
+          int n;
+          while ((n = in.read(buffer.array(), 0, bufferSize)) != -1) {
+            filteredStream.write(buffer.array(), 0, n);
+          }
+        }
+        return;
+      }
+      try (Writer writer = new OutputStreamWriter(out, "UTF-8")) {
+        Writer decoratedWriter = decorateWithFilters(writer);
+        try (Reader reader = new InputStreamReader(in, "UTF-8");
+          Writer filteredWriter = FilterFusion.fuse(decoratedWriter)) {
+          copy(reader, filteredWriter, acquireBuffer(bufferSize), bufferSize);
+          filteredWriter.flush();
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the file into a ByteBuffer (or maps it) and passes the bytes to the byte
+   * filters.
+   */
+  private void transformBytes(File file, OutputStream filteredStream, MessageDigest digest) throws IOException {
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      OutputStream out = filteredStream) {
+      if (in.size() >= mappedInputThreshold) {
+        transformMappedBytes(in, out, digest);
+      } else {
+        readBytes(in, out, digest);
+      }
+    }
+  }
+
+  /**
+   * Passes the bytes from the current position of the channel to the byte filters.
+   */
+  private void readBytes(FileChannel in, OutputStream out, MessageDigest digest) throws IOException {
+    ByteBuffer buffer = acquireByteBuffer(bufferSize);
+    while (in.read(buffer) != -1) {
+      buffer.flip();
+      if (digest != null) {
+        digest.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      }
+      out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      buffer.clear().limit(bufferSize);
+    }
+  }
+
+  /**
+   * Maps the file region by region and passes the bytes to the byte filters, by
+   * chunks of the buffer size.
+   */
+  private void transformMappedBytes(FileChannel in, OutputStream out, MessageDigest digest) throws IOException {
+    byte[] chunk = acquireByteBuffer(bufferSize).array();
+    long size = in.size();
+    long position = 0;
+    while (position < size) {
+      MappedByteBuffer region = map(in, position, Math.min(size - position, maxMappedRegionSize));
+      if (region == null) {
+        in.position(position);
+        readBytes(in, out, digest);
+        return;
+      }
+      try {
+        while (region.hasRemaining()) {
+          int n = Math.min(region.remaining(), bufferSize);
+          region.get(chunk, 0, n);
+          if (digest != null) {
+            digest.update(chunk, 0, n);
+          }
+          out.write(chunk, 0, n);
+        }
+      } finally {
+        MappedBuffers.unmap(region);
+      }
+      position += region.capacity();
+    }
+  }
+
+  /**
+   * Maps the file region by region, decodes the bytes and passes the characters to
+   * the filter writers, by chunks of the buffer size. The mapped bytes are copied
+   * into a heap buffer before being decoded, because the UTF-8 decoder is much
+   * faster with arrays than with direct buffers; the incomplete character at the
+   * end of a chunk stays in the buffer and is decoded with the next chunk.
+   */
+  private void transformMappedChars(FileChannel in, Writer writer, MessageDigest digest) throws IOException {
+    CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // the buffers must be able to hold a whole character, whatever the buffer size
+    int chunkSize = Math.max(bufferSize, MIN_DECODING_BUFFER_SIZE);
+    ByteBuffer bytes = acquireByteBuffer(chunkSize);
+    char[] buffer = acquireBuffer(chunkSize);
+    CharBuffer chars = CharBuffer.wrap(buffer, 0, chunkSize);
+    long size = in.size();
+    long position = 0;
+    while (position < size) {
+      MappedByteBuffer region = map(in, position, Math.min(size - position, maxMappedRegionSize));
+      if (region == null) {
+        break;
+      }
+      try {
+        while (region.hasRemaining()) {
+          int n = Math.min(region.remaining(), bytes.remaining());
+          region.get(bytes.array(), bytes.arrayOffset() + bytes.position(), n);
+          if (digest != null) {
+            digest.update(bytes.array(), bytes.arrayOffset() + bytes.position(), n);
+          }
+          bytes.position(bytes.position() + n);
+          decode(decoder, bytes, chars, writer, false);
+        }
+      } finally {
+        MappedBuffers.unmap(region);
+      }
+      position += region.capacity();
+    }
+    if (position < size) {
+      in.position(position);
+      int from = bytes.position();
+      while (in.read(bytes) != -1) {
+        if (digest != null) {
+          digest.update(bytes.array(), bytes.arrayOffset() + from, bytes.position() - from);
+        }
+        decode(decoder, bytes, chars, writer, false);
+        from = bytes.position();
+      }
+    }
+    decode(decoder, bytes, chars, writer, true);
+    CoderResult result;
+    do {
+      result = decoder.flush(chars);
+      writer.write(buffer, 0, chars.position());
+      chars.clear();
+    } while (result.isOverflow());
+  }
+
+  /**
+   * Decodes the bytes written in the buffer and writes the characters. The bytes
+   * of an incomplete character are kept at the beginning of the buffer.
+   */
+  private static void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars, Writer writer, boolean endOfInput) throws IOException {
+    bytes.flip();
+    CoderResult result;
+    do {
+      result = decoder.decode(bytes, chars, endOfInput);
+      writer.write(chars.array(), 0, chars.position());
+      chars.clear();
+    } while (result.isOverflow());
+    bytes.compact();
+  }
+
+  /**
+   * @return the mapped region, or null if it cannot be mapped (for instance when
+   * the address space is exhausted)
+   */
+  private static MappedByteBuffer map(FileChannel in, long position, long size) {
+    try {
+      return in.map(FileChannel.MapMode.READ_ONLY, position, size);
+    } catch (IOException | UnsupportedOperationException ex) {
+      LOG.log(Level.WARNING, "Could not map {0} bytes at {1}, reading the rest of the file: {2}", new Object[]{size, position, ex.getMessage()});
+      return null;
+    }
+  }
+
+  /**
+   * Copies the content of the file without decoding it, with FileChannel.transferTo
+   * (which lets the kernel copy the bytes, without bringing them into the JVM).
+   * When the content must be hashed, the bytes are read and written instead.
+   */
+  private void copyBytes(File file, FileOutputStream output, MessageDigest digest) throws IOException {
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      FileChannel out = output.getChannel();
+      if (digest != null) {
+        ByteBuffer buffer = acquireByteBuffer(bufferSize);
+        while (in.read(buffer) != -1) {
+          buffer.flip();
+          digest.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+          while (buffer.hasRemaining()) {
+            out.write(buffer);
+          }
+          buffer.clear().limit(bufferSize);
+        }
+        return;
+      }
+      long size = in.size();
+      long position = 0;
+      while (position < size) {
+        long n = in.transferTo(position, size - position, out);
+        if (n <= 0) {
+          break;
+        }
+        position += n;
+      }
+    }
+  }
+
+  private static void copy(Reader reader, Writer writer, char[] buffer, int length) throws IOException {
+    int n;
+    while ((n = reader.read(buffer, 0, length)) != -1) {
+      writer.write(buffer, 0, n);
+    }
+  }
+
+  private static ByteBuffer acquireByteBuffer(int size) {
+    if (size > MAX_POOLED_BUFFER_SIZE) {
+      return ByteBuffer.allocate(size);
+    }
+    ByteBuffer buffer = POOLED_BYTE_BUFFER.get();
+    if (buffer == null || buffer.capacity() < size) {
+      buffer = ByteBuffer.allocate(size);
+      POOLED_BYTE_BUFFER.set(buffer);
+    }
+    buffer.clear().limit(size);
+    return buffer;
+  }
+
+  private static char[] acquireBuffer(int size) {
+    if (size > MAX_POOLED_BUFFER_SIZE) {
+      return new char[size];
+    }
+    char[] buffer = POOLED_BUFFER.get();
+    if (buffer == null || buffer.length < size) {
+      buffer = new char[size];
+      POOLED_BUFFER.set(buffer);
     }
+    return buffer;
   }
 
 }
@@ -0,0 +1,96 @@
+package ch.heigvd.res.lab01.impl.transformers;
+
+import ch.heigvd.res.lab01.interfaces.IAttributeFileVisitor;
+import ch.heigvd.res.lab01.interfaces.IThreadSafeFileVisitor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This visitor decorates a FileTransformer and only lets it transform the files
+ * that are new or that have changed since the last transformation (according to
+ * a TransformManifest), or whose output file has disappeared. The output files
+ * (.out) and the manifest itself are never transformed.
+ *
+ * When the explorer gives us the attributes of the visited file, we use its
+ * modification time and size without asking the file system again, so checking
+ * an unchanged file only costs one look-up in the manifest (and one check that
+ * the output file still exists).
+ *
+ * A file is only recorded in the manifest when its transformation has succeeded.
+ * When it fails, the file is removed from the manifest, so that the (possibly
+ * partial) output file is replaced by the next traversal.
+ *
+ * Call save() on the manifest after the traversal to keep the new state.
+ *
+ * @author Olivier Liechti
+ */
+public class IncrementalFileTransformer implements IAttributeFileVisitor, IThreadSafeFileVisitor {
+
+  private static final Logger LOG = Logger.getLogger(IncrementalFileTransformer.class.getName());
+
+  private static final String OUTPUT_EXTENSION = ".out";
+
+  private final FileTransformer transformer;
+  private final TransformManifest manifest;
+  private final AtomicInteger transformedFiles = new AtomicInteger();
+  private final AtomicInteger skippedFiles = new AtomicInteger();
+
+  public IncrementalFileTransformer(FileTransformer transformer, TransformManifest manifest) {
+    this.transformer = transformer;
+    this.manifest = manifest;
+  }
+
+  @Override
+  public void visit(File file) {
+    try {
+      visit(file, Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+    } catch (IOException ex) {
+      LOG.log(Level.SEVERE, null, ex);
+    }
+  }
+
+  @Override
+  public void visit(File file, BasicFileAttributes attributes) {
+    if (!attributes.isRegularFile() || file.getName().endsWith(OUTPUT_EXTENSION) || manifest.isManifestFile(file)) {
+      return;
+    }
+    long lastModified = attributes.lastModifiedTime().toMillis();
+    try {
+      if (manifest.isUpToDate(file, lastModified, attributes.size())
+        && new File(file.getPath() + OUTPUT_EXTENSION).isFile()) {
+        skippedFiles.incrementAndGet();
+        return;
+      }
+      MessageDigest digest = TransformManifest.newDigest();
+      if (transformer.visitAndReport(file, attributes, digest)) {
+        manifest.record(file, lastModified, attributes.size(), digest);
+        transformedFiles.incrementAndGet();
+      } else {
+        manifest.forget(file);
+      }
+    } catch (IOException ex) {
+      LOG.log(Level.SEVERE, null, ex);
+    }
+  }
+
+  /**
+   * @return the number of files that have been transformed by this visitor
+   */
+  public int getTransformedFiles() {
+    return transformedFiles.get();
+  }
+
+  /**
+   * @return the number of files that were up to date and have not been transformed
+   */
+  public int getSkippedFiles() {
+    return skippedFiles.get();
+  }
+
+}
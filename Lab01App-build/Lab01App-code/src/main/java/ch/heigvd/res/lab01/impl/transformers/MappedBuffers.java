@@ -0,0 +1,83 @@
+package ch.heigvd.res.lab01.impl.transformers;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class releases the memory mapped by FileChannel.map. A MappedByteBuffer
+ * is only unmapped when it is garbage collected, which can take a long time when
+ * the buffers are short lived but large: the address space (and, on Windows, the
+ * file itself) stays locked in the meantime. There is no public API to unmap a
+ * buffer, so we use the cleaner of the buffer: with Unsafe.invokeCleaner since
+ * Java 9, and with DirectBuffer.cleaner() on Java 8.
+ *
+ * If none of them is available, the buffers are left to the garbage collector.
+ * A buffer must not be used after it has been unmapped.
+ *
+ * @author Olivier Liechti
+ */
+final class MappedBuffers {
+
+  private static final Logger LOG = Logger.getLogger(MappedBuffers.class.getName());
+
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+  private static final Method GET_CLEANER;
+  private static final Method CLEAN;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    Method getCleaner = null;
+    Method clean = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      invokeCleaner = null;
+      try {
+        getCleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+        clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      } catch (ReflectiveOperationException | RuntimeException ex2) {
+        LOG.log(Level.FINE, "The mapped buffers cannot be unmapped explicitly", ex2);
+        getCleaner = null;
+        clean = null;
+      }
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+    GET_CLEANER = getCleaner;
+    CLEAN = clean;
+  }
+
+  private MappedBuffers() {
+  }
+
+  /**
+   * Unmaps the buffer (or does nothing if we do not know how to do it).
+   *
+   * @param buffer a buffer returned by FileChannel.map, that is not used anymore
+   */
+  static void unmap(MappedByteBuffer buffer) {
+    try {
+      if (INVOKE_CLEANER != null) {
+        INVOKE_CLEANER.invoke(UNSAFE, buffer);
+      } else if (GET_CLEANER != null) {
+        Object cleaner = GET_CLEANER.invoke(buffer);
+        if (cleaner != null) {
+          CLEAN.invoke(cleaner);
+        }
+      }
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      LOG.log(Level.FINE, "Could not unmap a buffer", ex);
+    }
+  }
+
+}
@@ -7,20 +7,21 @@ import java.io.Writer;
  * this class is passed to a file system explorer, it will simply duplicate
  * the content of the input file into the output file.
  * 
+ * Since the writer is not decorated, the FileTransformer copies the bytes of
+ * the file directly (see FileTransformer).
+ * 
  * @author Olivier Liechti
  */
 public class NoOpFileTransformer extends FileTransformer {
 
   @Override
   public Writer decorateWithFilters(Writer writer) {
-    throw new UnsupportedOperationException("The student has not implemented this method yet.");
     /*
      * The NoOpFileTransformer does not apply any transformation of the character stream
      * (no uppercase, no line number, etc.). So, we don't need to decorate the writer connected to
-     * the output file at all. Just uncomment the following line and get rid of the UnsupportedOperationException and
-     * you will be all set.
+     * the output file at all.
      */
-    //return writer;
+    return writer;
   }
 
 }
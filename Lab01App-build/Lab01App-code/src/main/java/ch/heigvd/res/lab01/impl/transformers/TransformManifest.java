@@ -0,0 +1,231 @@
+package ch.heigvd.res.lab01.impl.transformers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class records, for every file transformed under a root directory, the
+ * last modification time, the size and a hash of the content of the source
+ * file. It is used by the IncrementalFileTransformer to decide which files have
+ * changed since the last transformation.
+ *
+ * The manifest is stored in the root directory, in a file named
+ * .transform-manifest, with a compact binary format: MAGIC, number of entries,
+ * then for each entry the path (relative to the root directory), the modification
+ * time, the size and the hash (the first 8 bytes of the SHA-1 of the content).
+ *
+ * The manifest does not read the files it records: their content is hashed by
+ * the transformer while it reads them (with a digest returned by newDigest), so
+ * every transformed file is only read once. The manifest only reads a file when
+ * its modification time has changed and its size has not.
+ *
+ * The manifest is only a cache: if its file is truncated or corrupt, the problem
+ * is logged and all the files are transformed again.
+ *
+ * The methods can be called by several threads at the same time.
+ *
+ * @author Olivier Liechti
+ */
+public class TransformManifest {
+
+  private static final Logger LOG = Logger.getLogger(TransformManifest.class.getName());
+
+  public static final String FILENAME = ".transform-manifest";
+
+  private static final int MAGIC = 0x544d4631; // "TMF1"
+
+  private static class Entry {
+
+    final long lastModified;
+    final long size;
+    final long hash;
+
+    Entry(long lastModified, long size, long hash) {
+      this.lastModified = lastModified;
+      this.size = size;
+      this.hash = hash;
+    }
+
+  }
+
+  private final Path root;
+  private final File file;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Loads the manifest of a directory (or creates an empty one, if the directory
+   * does not have a manifest yet).
+   *
+   * @param rootDirectory the directory that contains the transformed files
+   * @throws IOException if the manifest exists but cannot be read
+   */
+  public TransformManifest(File rootDirectory) throws IOException {
+    this.root = rootDirectory.toPath();
+    this.file = new File(rootDirectory, FILENAME);
+    load();
+  }
+
+  /**
+   * @return true if file is the file where this manifest is stored
+   */
+  public boolean isManifestFile(File file) {
+    return this.file.getAbsoluteFile().equals(file.getAbsoluteFile());
+  }
+
+  /**
+   * Checks whether a source file has changed since it was recorded. If only the
+   * modification time has changed, the content is hashed and compared with the
+   * recorded hash (so touching a file does not trigger a new transformation).
+   *
+   * @param source the source file
+   * @param lastModified the current modification time of the source file
+   * @param size the current size of the source file
+   * @return true if the content of the file is the one that was recorded
+   * @throws IOException if the file has to be hashed and cannot be read
+   */
+  public boolean isUpToDate(File source, long lastModified, long size) throws IOException {
+    String key = keyOf(source);
+    seen.add(key);
+    Entry entry = entries.get(key);
+    if (entry == null || entry.size != size) {
+      return false;
+    }
+    if (entry.lastModified == lastModified) {
+      return true;
+    }
+    long hash = hash(source);
+    if (hash != entry.hash) {
+      return false;
+    }
+    entries.put(key, new Entry(lastModified, size, hash));
+    return true;
+  }
+
+  /**
+   * @return a digest for the content of a file, to pass to record once the whole
+   * file has been read
+   */
+  public static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not available", e);
+    }
+  }
+
+  /**
+   * Records the current state of a source file, after it has been transformed.
+   *
+   * @param digest a digest (see newDigest) updated with the whole content of the
+   * file, as it was read by the transformer
+   */
+  public void record(File source, long lastModified, long size, MessageDigest digest) {
+    String key = keyOf(source);
+    seen.add(key);
+    entries.put(key, new Entry(lastModified, size, toHash(digest)));
+  }
+
+  /**
+   * Removes a source file from the manifest (after its transformation has
+   * failed), so that it is transformed again the next time.
+   */
+  public void forget(File source) {
+    entries.remove(keyOf(source));
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Writes the manifest in its file. The entries of the files that have not been
+   * seen (checked or recorded) since the manifest was loaded are dropped: their
+   * source files do not exist anymore.
+   *
+   * @throws IOException if the manifest cannot be written
+   */
+  public void save() throws IOException {
+    entries.keySet().retainAll(seen);
+    File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(entries.size());
+      for (Map.Entry<String, Entry> e : entries.entrySet()) {
+        out.writeUTF(e.getKey());
+        out.writeLong(e.getValue().lastModified);
+        out.writeLong(e.getValue().size);
+        out.writeLong(e.getValue().hash);
+      }
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void load() throws IOException {
+    if (!file.isFile()) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        LOG.log(Level.WARNING, "{0} is not a transformation manifest, it is ignored.", file);
+        return;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String key = in.readUTF();
+        entries.put(key, new Entry(in.readLong(), in.readLong(), in.readLong()));
+      }
+    } catch (EOFException | UTFDataFormatException ex) {
+      LOG.log(Level.WARNING, "{0} is truncated or corrupt, all the files will be transformed.", file);
+      entries.clear();
+    }
+  }
+
+  private String keyOf(File source) {
+    return root.relativize(source.toPath()).toString();
+  }
+
+  private static long hash(File source) throws IOException {
+    MessageDigest digest = newDigest();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = new FileInputStream(source)) {
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, n);
+      }
+    }
+    return toHash(digest);
+  }
+
+  /**
+   * @return the first 8 bytes of the SHA-1
+   */
+  private static long toHash(MessageDigest digest) {
+    byte[] sha1 = digest.digest();
+    long hash = 0;
+    for (int i = 0; i < 8; i++) {
+      hash = (hash << 8) | (sha1[i] & 0xff);
+    }
+    return hash;
+  }
+
+}
@@ -0,0 +1,29 @@
+package ch.heigvd.res.lab01.interfaces;
+
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * This interface can be implemented by visitors that need to know whether the
+ * visited node is a regular file or a directory. When an IFileExplorer already
+ * has the attributes of a node (because it has read them to decide how to
+ * continue the traversal), it calls this method instead of visit(File), so the
+ * visitor does not have to ask the file system again.
+ *
+ * Explorers that do not know this interface simply call visit(File), so an
+ * implementation must behave the same way with both methods.
+ *
+ * @author Olivier Liechti
+ */
+public interface IAttributeFileVisitor extends IFileVisitor {
+
+  /**
+   * This method is called instead of visit(File) when the explorer knows the
+   * attributes of the visited node.
+   *
+   * @param file the current file or directory visited by the IFileExplorer instance
+   * @param attributes the attributes of this file or directory
+   */
+  public void visit(File file, BasicFileAttributes attributes);
+
+}
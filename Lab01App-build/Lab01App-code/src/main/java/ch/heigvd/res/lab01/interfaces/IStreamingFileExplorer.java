@@ -0,0 +1,36 @@
+package ch.heigvd.res.lab01.interfaces;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * This interface is implemented by the explorers that can also be used in
+ * "pull" mode: instead of calling a visitor for every node, they return the
+ * nodes one by one, when the caller asks for them. The file system is read
+ * lazily, so the caller can stop early, process the nodes in batches, etc.
+ * without waiting for the whole tree to be traversed.
+ *
+ * The iterator and the stream keep some directories open while they are used.
+ * The iterator closes them when it reaches the end of the traversal. If you may
+ * stop before the end, use the stream in a try-with-resources statement.
+ *
+ * @author Olivier Liechti
+ */
+public interface IStreamingFileExplorer extends IFileExplorer {
+
+  /**
+   * @param rootDirectory the directory where to start the traversal
+   * @return an iterator over the files and directories under rootDirectory
+   * (rootDirectory included), in the order defined by the implementation
+   */
+  public Iterator<File> iterator(File rootDirectory);
+
+  /**
+   * @param rootDirectory the directory where to start the traversal
+   * @return a sequential stream of the files and directories under rootDirectory
+   * (rootDirectory included); closing the stream releases the open directories
+   */
+  public Stream<File> stream(File rootDirectory);
+
+}
@@ -0,0 +1,13 @@
+package ch.heigvd.res.lab01.interfaces;
+
+/**
+ * This marker interface is implemented by the visitors whose visit method can
+ * be called by several threads at the same time. An IFileExplorer that explores
+ * the file system with several threads calls these visitors concurrently; the
+ * calls to other visitors are serialized (one visit at a time).
+ *
+ * @author Olivier Liechti
+ */
+public interface IThreadSafeFileVisitor extends IFileVisitor {
+
+}
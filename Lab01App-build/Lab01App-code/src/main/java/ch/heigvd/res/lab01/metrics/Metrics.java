@@ -0,0 +1,139 @@
+package ch.heigvd.res.lab01.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class is the registry of the metrics of the application: it has one
+ * StageMetrics per stage, which the code of the stage uses like this:
+ *
+ * long start = Metrics.start();
+ * ... (the operation)
+ * Metrics.TRANSFORM.record(start, succeeded, bytesIn, bytesOut);
+ *
+ * The metrics are disabled by default (they are enabled by Application.main, or
+ * with -Dlab01.metrics=true). When they are disabled, start returns 0 without
+ * reading the clock and record returns immediately, so the instrumentation only
+ * costs the test of a static field.
+ *
+ * The stages can be read with JMX, once registerMBeans has been called (they are
+ * named ch.heigvd.res.lab01:type=Metrics,stage=...), and summary gives a table
+ * of all the stages.
+ *
+ * @author Olivier Liechti
+ */
+public final class Metrics {
+
+  private static final Logger LOG = Logger.getLogger(Metrics.class.getName());
+
+  public static final String ENABLED_PROPERTY = "lab01.metrics";
+
+  /**
+   * An HTTP request sent by the QuoteClient, until its response has been decoded
+   */
+  public static final StageMetrics FETCH = new StageMetrics("fetch");
+
+  /**
+   * The decoding of the JSON payload of a response (one quote or a batch)
+   */
+  public static final StageMetrics DECODE = new StageMetrics("decode");
+
+  /**
+   * A quote stored by Application.storeQuote
+   */
+  public static final StageMetrics STORE = new StageMetrics("store");
+
+  /**
+   * A traversal of the workspace by a file explorer (with the visits)
+   */
+  public static final StageMetrics EXPLORE = new StageMetrics("explore");
+
+  /**
+   * A file transformed by a FileTransformer (or a file of a QuoteArchive)
+   */
+  public static final StageMetrics TRANSFORM = new StageMetrics("transform");
+
+  private static final List<StageMetrics> STAGES = Collections.unmodifiableList(Arrays.asList(FETCH, DECODE, STORE, EXPLORE, TRANSFORM));
+
+  private static boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+  private Metrics() {
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * The metrics should be enabled (or disabled) before the application starts:
+   * the operations that are running at that time may not be recorded.
+   */
+  public static void setEnabled(boolean enabled) {
+    Metrics.enabled = enabled;
+  }
+
+  /**
+   * @return the time at which an operation starts, to pass to StageMetrics.record
+   * at the end of the operation (0 if the metrics are disabled)
+   */
+  public static long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * @return all the stages, in the order in which a quote goes through them
+   */
+  public static List<StageMetrics> getStages() {
+    return STAGES;
+  }
+
+  /**
+   * Registers every stage in the platform MBean server. The stages that are
+   * already registered are not registered again.
+   */
+  public static synchronized void registerMBeans() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (StageMetrics stage : STAGES) {
+      try {
+        ObjectName name = new ObjectName("ch.heigvd.res.lab01:type=Metrics,stage=" + stage.getName());
+        if (!server.isRegistered(name)) {
+          server.registerMBean(stage, name);
+        }
+      } catch (JMException e) {
+        LOG.log(Level.WARNING, "Could not register the metrics of the " + stage.getName() + " stage", e);
+      }
+    }
+  }
+
+  public static void reset() {
+    for (StageMetrics stage : STAGES) {
+      stage.reset();
+    }
+  }
+
+  /**
+   * @return a table with the counters and the latencies of the stages that have
+   * recorded at least one operation
+   */
+  public static String summary() {
+    StringBuilder summary = new StringBuilder(String.format("%-10s %10s %9s %12s %12s %10s %10s %10s %10s%n",
+      "Stage", "Count", "Failures", "Bytes in", "Bytes out", "Mean (ms)", "p50 (ms)", "p99 (ms)", "Max (ms)"));
+    for (StageMetrics stage : STAGES) {
+      if (stage.getCount() == 0) {
+        continue;
+      }
+      summary.append(String.format("%-10s %10d %9d %12d %12d %10.3f %10.3f %10.3f %10.3f%n", stage.getName(),
+        stage.getCount(), stage.getFailures(), stage.getBytesIn(), stage.getBytesOut(), stage.getMeanMillis(),
+        stage.getP50Millis(), stage.getP99Millis(), stage.getMaxMillis()));
+    }
+    return summary.toString();
+  }
+
+}
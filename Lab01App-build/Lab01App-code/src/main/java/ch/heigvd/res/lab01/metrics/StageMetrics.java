@@ -0,0 +1,217 @@
+package ch.heigvd.res.lab01.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records the operations of one stage of the application: how many
+ * there were, how many have failed, how many bytes they have read and written,
+ * and how long they have taken.
+ *
+ * The durations are counted in a histogram with 8 buckets per power of two (a
+ * duration of 1000 ns falls in the bucket [960, 1024), for instance), so the
+ * memory used does not depend on the number of operations and the percentiles
+ * are given with an error of less than 12.5%. The counters are LongAdders and
+ * the buckets are updated atomically, so the operations can be recorded by
+ * several threads without locking.
+ *
+ * An operation is recorded with the time returned by Metrics.start when it
+ * started. When the metrics are disabled, this time is 0 and nothing is recorded.
+ *
+ * @author Olivier Liechti
+ */
+public final class StageMetrics implements StageMetricsMBean {
+
+  private static final int SUB_BUCKETS = 8;
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final String name;
+  private final LongAdder count = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder bytesIn = new LongAdder();
+  private final LongAdder bytesOut = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong firstCompletion = new AtomicLong();
+
+  StageMetrics(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Records an operation that has succeeded.
+   *
+   * @param start the value returned by Metrics.start at the beginning of the operation
+   */
+  public void record(long start) {
+    record(start, true, 0, 0);
+  }
+
+  /**
+   * @param start the value returned by Metrics.start at the beginning of the operation
+   * @param succeeded false if the operation has failed
+   */
+  public void record(long start, boolean succeeded) {
+    record(start, succeeded, 0, 0);
+  }
+
+  /**
+   * @param start the value returned by Metrics.start at the beginning of the operation
+   * @param succeeded false if the operation has failed
+   * @param in the number of bytes read by the operation
+   * @param out the number of bytes written by the operation
+   */
+  public void record(long start, boolean succeeded, long in, long out) {
+    if (start == 0 || !Metrics.isEnabled()) {
+      return;
+    }
+    long end = System.nanoTime();
+    long duration = Math.max(end - start, 0);
+    if (firstCompletion.get() == 0) {
+      firstCompletion.compareAndSet(0, end);
+    }
+    count.increment();
+    if (!succeeded) {
+      failures.increment();
+    }
+    if (in != 0) {
+      bytesIn.add(in);
+    }
+    if (out != 0) {
+      bytesOut.add(out);
+    }
+    totalNanos.add(duration);
+    maxNanos.accumulate(duration);
+    buckets.incrementAndGet(bucketOf(duration));
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public long getCount() {
+    return count.sum();
+  }
+
+  @Override
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  @Override
+  public long getBytesIn() {
+    return bytesIn.sum();
+  }
+
+  @Override
+  public long getBytesOut() {
+    return bytesOut.sum();
+  }
+
+  @Override
+  public double getMeanMillis() {
+    long n = count.sum();
+    return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+  }
+
+  @Override
+  public double getP50Millis() {
+    return getPercentileNanos(50) / 1e6;
+  }
+
+  @Override
+  public double getP99Millis() {
+    return getPercentileNanos(99) / 1e6;
+  }
+
+  @Override
+  public double getMaxMillis() {
+    return maxNanos.get() / 1e6;
+  }
+
+  /**
+   * @param percentile the percentile (between 0 and 100)
+   * @return the upper bound of the bucket that contains this percentile of the
+   * durations (in nanoseconds, and never more than the longest duration), or 0 if
+   * no operation has been recorded
+   */
+  public long getPercentileNanos(double percentile) {
+    long[] counts = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max((long) Math.ceil(percentile / 100 * total), 1);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), maxNanos.get());
+      }
+    }
+    return maxNanos.get();
+  }
+
+  /**
+   * @return the value of System.nanoTime when the first operation recorded since
+   * the last reset has ended, or 0 if no operation has been recorded
+   */
+  public long getFirstCompletionNanos() {
+    return firstCompletion.get();
+  }
+
+  /**
+   * Forgets all the operations recorded so far (the operations that are recorded
+   * at the same time may be partially counted).
+   */
+  @Override
+  public void reset() {
+    count.reset();
+    failures.reset();
+    bytesIn.reset();
+    bytesOut.reset();
+    totalNanos.reset();
+    maxNanos.reset();
+    firstCompletion.set(0);
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, 0);
+    }
+  }
+
+  /**
+   * The durations below 8 ns have their own bucket. Above, the bucket is given by
+   * the position of the highest bit and by the next three bits.
+   */
+  static int bucketOf(long duration) {
+    if (duration < SUB_BUCKETS) {
+      return (int) duration;
+    }
+    int highestBit = 63 - Long.numberOfLeadingZeros(duration);
+    int subBucket = (int) (duration >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @return the largest duration of a bucket
+   */
+  static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int highestBit = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = bucket % SUB_BUCKETS;
+    long lowerBound = (SUB_BUCKETS + subBucket) << (highestBit - SUB_BUCKET_BITS);
+    return lowerBound + (1L << (highestBit - SUB_BUCKET_BITS)) - 1;
+  }
+
+}
@@ -0,0 +1,30 @@
+package ch.heigvd.res.lab01.metrics;
+
+/**
+ * The attributes and operations of a StageMetrics that are exposed with JMX.
+ *
+ * @author Olivier Liechti
+ */
+public interface StageMetricsMBean {
+
+  public String getName();
+
+  public long getCount();
+
+  public long getFailures();
+
+  public long getBytesIn();
+
+  public long getBytesOut();
+
+  public double getMeanMillis();
+
+  public double getP50Millis();
+
+  public double getP99Millis();
+
+  public double getMaxMillis();
+
+  public void reset();
+
+}
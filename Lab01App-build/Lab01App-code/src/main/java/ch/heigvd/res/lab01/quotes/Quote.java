@@ -17,9 +17,10 @@ public class Quote implements Serializable {
    * This is a class that describes the structure of the JSON payload that is
    * sent by the Chuck Norris API. The deserialization from JSON into Java is
    * handled automatically for us. This is something that we will see in the
-   * AMT course next year.
+   * AMT course next year. The class is static, so that the values found in
+   * a batch of jokes can be deserialized without a Quote.
    */
-  public class Value {
+  public static class Value {
 
     private long id;
     private String joke;
@@ -90,6 +91,7 @@ public class Quote implements Serializable {
 
   public void setValue(Value value) {
     this.value = value;
+    this.quoteSplitInLines = null;
   }
 
   public List<String> getTags() {
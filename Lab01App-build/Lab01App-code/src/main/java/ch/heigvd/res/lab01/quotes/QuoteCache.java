@@ -0,0 +1,370 @@
+package ch.heigvd.res.lab01.quotes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class keeps the quotes received from the web service, so that they can be
+ * served again when we are offline or when the web service does not answer. The
+ * quotes are identified by their id (Quote.Value.getId()).
+ *
+ * The cache is an LRU map bounded by a number of entries and by a number of
+ * bytes (the size of an entry is estimated from the length of its strings, see
+ * sizeOf). Each entry expires after a time to live, counted from the moment it
+ * was received. The content of the cache is loaded from a file when the cache is
+ * created and written back to this file by save(). The file uses a compact binary
+ * format:
+ *
+ * MAGIC, number of entries, then for each entry: id, reception time, joke,
+ * number of categories, categories (strings are length-prefixed UTF-8).
+ *
+ * The cache only saves requests: if its file cannot be read (or is truncated),
+ * the problem is logged and the cache starts empty. The quotes are copied when
+ * they enter and when they leave the cache, so the callers can modify them.
+ *
+ * All the methods are synchronized, so the cache can be shared by several threads.
+ *
+ * @author Olivier Liechti
+ */
+public class QuoteCache {
+
+  private static final Logger LOG = Logger.getLogger(QuoteCache.class.getName());
+
+  private static final int MAGIC = 0x51434831; // "QCH1"
+
+  /**
+   * The lengths read in the file above this limit mean that the file is corrupt
+   */
+  private static final int MAX_LENGTH = 1 << 20;
+
+  /**
+   * The estimated size of an entry without its strings (the map entry, the value,
+   * the arrays and the string headers)
+   */
+  private static final int ENTRY_OVERHEAD = 128;
+
+  private static class CachedQuote {
+
+    private final Quote.Value value;
+    private final long receivedAt;
+    private final long size;
+
+    CachedQuote(Quote.Value value, long receivedAt) {
+      this.value = value;
+      this.receivedAt = receivedAt;
+      this.size = sizeOf(value);
+    }
+
+  }
+
+  private final File file;
+  private final long maxBytes;
+  private final long timeToLive;
+  private final LinkedHashMap<Long, CachedQuote> entries;
+
+  private long bytes = 0;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  /**
+   * Creates a cache that is only bounded by a number of entries.
+   *
+   * @see #QuoteCache(File, int, long, long)
+   */
+  public QuoteCache(File file, int maxEntries, long timeToLive) {
+    this(file, maxEntries, Long.MAX_VALUE, timeToLive);
+  }
+
+  /**
+   * Creates a cache and loads the entries found in the file (if it exists). The
+   * entries that have already expired are not loaded.
+   *
+   * @param file the file where the cache is persisted
+   * @param maxEntries the maximum number of quotes kept in the cache
+   * @param maxBytes the maximum (estimated) size of the quotes kept in the cache
+   * @param timeToLive the time (in milliseconds) after which a quote is evicted
+   */
+  public QuoteCache(File file, final int maxEntries, long maxBytes, long timeToLive) {
+    if (maxEntries < 1) {
+      throw new IllegalArgumentException("The cache must accept at least 1 entry, not " + maxEntries);
+    }
+    if (maxBytes < 1) {
+      throw new IllegalArgumentException("The cache must accept at least 1 byte, not " + maxBytes);
+    }
+    this.file = file;
+    this.maxBytes = maxBytes;
+    this.timeToLive = timeToLive;
+    this.entries = new LinkedHashMap<Long, CachedQuote>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, CachedQuote> eldest) {
+        if (size() > maxEntries) {
+          bytes -= eldest.getValue().size;
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+    load();
+  }
+
+  /**
+   * Adds a quote to the cache (or refreshes it, if a quote with the same id is
+   * already in the cache).
+   */
+  public synchronized void put(Quote quote) {
+    /*
+     * We keep a copy of the value: the caller may modify the original.
+     */
+    add(new CachedQuote(copyOf(quote.getValue()), System.currentTimeMillis()));
+  }
+
+  public synchronized void putAll(List<Quote> quotes) {
+    for (Quote quote : quotes) {
+      put(quote);
+    }
+  }
+
+  /**
+   * @param id the id of a joke
+   * @return a new Quote with the joke, or null if the joke is not in the cache (or has expired)
+   */
+  public synchronized Quote get(long id) {
+    CachedQuote entry = entries.get(id);
+    if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+      entries.remove(id);
+      bytes -= entry.size;
+      evictions++;
+      entry = null;
+    }
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return createQuote(entry);
+  }
+
+  /**
+   * Serves quotes from the cache, without knowing their ids. The least recently
+   * served quotes are returned first, so calling this method several times goes
+   * round the whole cache. If the cache has fewer quotes than requested, some
+   * quotes are returned more than once. Each returned quote has new tags.
+   *
+   * @param numberOfQuotes the number of quotes to return
+   * @return a list of numberOfQuotes quotes
+   * @throws IOException if the cache is empty
+   */
+  public synchronized List<Quote> serve(int numberOfQuotes) throws IOException {
+    evictExpiredEntries();
+    if (entries.isEmpty() && numberOfQuotes > 0) {
+      misses += numberOfQuotes;
+      throw new IOException("There is no quote in the cache");
+    }
+    List<Quote> quotes = new ArrayList<>(numberOfQuotes);
+    while (quotes.size() < numberOfQuotes) {
+      /*
+       * We copy the least recently used entries, then touch them with get() so
+       * that they move to the end of the access order.
+       */
+      List<Long> ids = new ArrayList<>(Math.min(entries.size(), numberOfQuotes - quotes.size()));
+      for (Iterator<Long> it = entries.keySet().iterator(); it.hasNext() && quotes.size() + ids.size() < numberOfQuotes;) {
+        ids.add(it.next());
+      }
+      for (Long id : ids) {
+        quotes.add(createQuote(entries.get(id)));
+        hits++;
+      }
+    }
+    return quotes;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the estimated size of the quotes in the cache
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Writes the content of the cache to its file. The entries are first written to
+   * a temporary file, which then replaces the file, so a crash never leaves a half
+   * written cache behind.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  public synchronized void save() throws IOException {
+    evictExpiredEntries();
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.mkdirs() && !parent.isDirectory()) {
+      throw new IOException("Could not create directory " + parent);
+    }
+    File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(entries.size());
+      for (Map.Entry<Long, CachedQuote> e : entries.entrySet()) {
+        Quote.Value value = e.getValue().value;
+        out.writeLong(value.getId());
+        out.writeLong(e.getValue().receivedAt);
+        writeString(out, value.getJoke());
+        String[] categories = value.getCategories() == null ? new String[0] : value.getCategories();
+        out.writeInt(categories.length);
+        for (String category : categories) {
+          writeString(out, category);
+        }
+      }
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void load() {
+    if (!file.isFile()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        LOG.log(Level.WARNING, "{0} is not a quote cache, it is ignored.", file);
+        return;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        Quote.Value value = new Quote.Value();
+        value.setId(in.readLong());
+        long receivedAt = in.readLong();
+        value.setJoke(readString(in));
+        int categoryCount = in.readInt();
+        if (categoryCount < 0 || categoryCount > MAX_LENGTH) {
+          throw new IOException("Invalid number of categories " + categoryCount);
+        }
+        String[] categories = new String[categoryCount];
+        for (int j = 0; j < categories.length; j++) {
+          categories[j] = readString(in);
+        }
+        value.setCategories(categories);
+        CachedQuote entry = new CachedQuote(value, receivedAt);
+        if (!isExpired(entry, now)) {
+          add(entry);
+        }
+      }
+    } catch (IOException ex) {
+      LOG.log(Level.WARNING, "Could not read the quote cache " + file + ", the cache starts empty.", ex);
+      entries.clear();
+      bytes = 0;
+    }
+  }
+
+  /**
+   * Adds (or replaces) an entry, then evicts the least recently used entries
+   * until the cache fits in maxBytes. The new entry is always kept.
+   */
+  private void add(CachedQuote entry) {
+    CachedQuote previous = entries.put(entry.value.getId(), entry);
+    bytes += entry.size - (previous == null ? 0 : previous.size);
+    for (Iterator<CachedQuote> it = entries.values().iterator(); bytes > maxBytes && entries.size() > 1;) {
+      bytes -= it.next().size;
+      it.remove();
+      evictions++;
+    }
+  }
+
+  private void evictExpiredEntries() {
+    long now = System.currentTimeMillis();
+    for (Iterator<CachedQuote> it = entries.values().iterator(); it.hasNext();) {
+      CachedQuote entry = it.next();
+      if (isExpired(entry, now)) {
+        bytes -= entry.size;
+        it.remove();
+        evictions++;
+      }
+    }
+  }
+
+  private boolean isExpired(CachedQuote entry, long now) {
+    return now - entry.receivedAt > timeToLive;
+  }
+
+  private static Quote createQuote(CachedQuote entry) {
+    Quote quote = new Quote();
+    quote.setType("success");
+    quote.setValue(copyOf(entry.value));
+    return quote;
+  }
+
+  private static Quote.Value copyOf(Quote.Value value) {
+    Quote.Value copy = new Quote.Value();
+    copy.setId(value.getId());
+    copy.setJoke(value.getJoke());
+    copy.setCategories(value.getCategories() == null ? null : value.getCategories().clone());
+    return copy;
+  }
+
+  /**
+   * @return the estimated number of bytes used by a value in memory (2 bytes per
+   * character, and a fixed overhead)
+   */
+  private static long sizeOf(Quote.Value value) {
+    long size = ENTRY_OVERHEAD;
+    if (value.getJoke() != null) {
+      size += 2L * value.getJoke().length();
+    }
+    if (value.getCategories() != null) {
+      for (String category : value.getCategories()) {
+        size += 8 + (category == null ? 0 : 2L * category.length());
+      }
+    }
+    return size;
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_LENGTH) {
+      throw new IOException("Invalid string length " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+}
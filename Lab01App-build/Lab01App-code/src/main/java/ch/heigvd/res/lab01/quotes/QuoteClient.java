@@ -1,23 +1,62 @@
 package ch.heigvd.res.lab01.quotes;
 
+import ch.heigvd.res.lab01.metrics.Metrics;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.jackson.JacksonFeature;
 
 /**
- * This class provides a method to invoke a web service and to receive a quote.
- * The implementation uses the jersey framework, but you do not need to worry
- * about that. You do not need to modify this file.
- * 
- * You will use this class to fetch quotes, which you will then save on the
+ * This class invokes the quote web service (WEB_SERVICE_ENDPOINT by default, or
+ * the endpoint given to the constructor) and decodes the quotes it receives. The
+ * implementation uses the jersey framework, with the Apache connector.
+ *
+ * The Application uses this class to fetch quotes, which it then saves on the
  * file system.
- * 
+ *
+ * An instance of this class owns a single jersey client, backed by a pool of
+ * keep-alive connections. The client is created once and reused for every
+ * quote, so you should create one QuoteClient, use it for all your requests
+ * and close it when you are done (it implements AutoCloseable, so you can use
+ * it in a try-with-resources statement).
+ *
+ * Quotes can also be fetched asynchronously, with fetchQuoteAsync and
+ * fetchQuotes. The number of requests in flight is never larger than the size
+ * of the connection pool: the requests above this limit wait in a queue and are
+ * sent when a response arrives.
+ *
+ * Finally, fetchQuoteBatch asks the web service for several jokes in a single
+ * request (the Chuck Norris API sends N jokes when we call /jokes/random/N).
+ *
+ * Every request is recorded in Metrics.FETCH, and the decoding of every response
+ * in Metrics.DECODE.
+ *
  * @author Olivier Liechti
  */
-public class QuoteClient {
+public class QuoteClient implements AutoCloseable {
+
+  private static final Logger LOG = Logger.getLogger(QuoteClient.class.getName());
 
   /*
    * This has changed in the 2016 version of the lab. We were using the "itheardquotes" API, which is now down. We have
@@ -26,21 +65,313 @@ public class QuoteClient {
     static String WEB_SERVICE_ENDPOINT = "http://api.icndb.com/jokes/random?firstName=Olivier&lastName=Liechti&escape=javascript";
 
   /**
-   * Use this method to invoke the iheartquotes.com web service and receive
-   * an instance of a Quote.
-   * 
-   * @return an instance of Quote, with values provided by the web service
+   * The maximum number of connections kept in the pool when no value is given
    */
-  public Quote fetchQuote() {
-    Client client = ClientBuilder.newBuilder()
+  public static final int DEFAULT_POOL_SIZE = 20;
+
+  /**
+   * The connect and read timeouts (in milliseconds) used when no value is given
+   */
+  public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+  public static final int DEFAULT_READ_TIMEOUT = 10000;
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final Client client;
+  private final WebTarget target;
+  private final QuoteDecoder decoder = new QuoteDecoder();
+
+  /**
+   * One permit per request that may be in flight, and the asynchronous requests that wait for a permit
+   */
+  private final Semaphore outstandingRequests;
+  private final Queue<CompletableFuture<Quote>> waitingRequests = new ConcurrentLinkedQueue<>();
+  private volatile boolean closed = false;
+
+  /**
+   * Becomes false the first time the web service answers a batch request with a 404 or
+   * with a payload that is not a list of jokes
+   */
+  private volatile boolean batchesSupported = true;
+
+  public QuoteClient() {
+    this(WEB_SERVICE_ENDPOINT);
+  }
+
+  /**
+   * @param poolSize the maximum number of connections kept open to the web service
+   */
+  public QuoteClient(int poolSize) {
+    this(WEB_SERVICE_ENDPOINT, poolSize, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+  }
+
+  public QuoteClient(String endpoint) {
+    this(endpoint, DEFAULT_POOL_SIZE, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+  }
+
+  /**
+   * Creates a client connected to the given endpoint. All the requests sent by
+   * this instance go through the same connection pool.
+   *
+   * @param endpoint the URL of the web service
+   * @param poolSize the maximum number of connections kept open to the web service, which
+   * is also the maximum number of asynchronous requests in flight
+   * @param connectTimeout the connect timeout, in milliseconds (0 means no timeout)
+   * @param readTimeout the read timeout, in milliseconds (0 means no timeout)
+   */
+  public QuoteClient(String endpoint, int poolSize, int connectTimeout, int readTimeout) {
+    if (poolSize < 1) {
+      throw new IllegalArgumentException("The pool size must be at least 1, not " + poolSize);
+    }
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(poolSize);
+    connectionManager.setDefaultMaxPerRoute(poolSize);
+
+    ClientConfig config = new ClientConfig()
+      .connectorProvider(new ApacheConnectorProvider())
+      .property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+      .property(ClientProperties.CONNECT_TIMEOUT, connectTimeout)
+      .property(ClientProperties.READ_TIMEOUT, readTimeout)
+      .property(ClientProperties.ASYNC_THREADPOOL_SIZE, poolSize);
+    outstandingRequests = new Semaphore(poolSize);
+
+    client = ClientBuilder.newBuilder()
+      .withConfig(config)
       .register(JacksonFeature.class)
       .register(SimpleObjectMapperProvider.class)
       .build();
-    WebTarget target = client.target(WEB_SERVICE_ENDPOINT);
-    Invocation.Builder invocationBuilder = target.request();
-    Response response = invocationBuilder.get();
-    Quote quote = response.readEntity(Quote.class);
-    return quote;
+    target = client.target(endpoint);
+  }
+
+  /**
+   * Use this method to invoke the iheartquotes.com web service and receive
+   * an instance of a Quote. This method can be called concurrently by several
+   * threads.
+   *
+   * @return an instance of Quote, with values provided by the web service
+   */
+  public Quote fetchQuote() {
+    long start = Metrics.start();
+    boolean fetched = false;
+    try {
+      Invocation.Builder invocationBuilder = target.request();
+      Response response = invocationBuilder.get();
+      try {
+        Quote quote = decodeQuote(response);
+        fetched = true;
+        return quote;
+      } finally {
+        /*
+         * Closing the response gives the connection back to the pool, so that it can be reused
+         * by the next request.
+         */
+        response.close();
+      }
+    } finally {
+      Metrics.FETCH.record(start, fetched);
+    }
+  }
+
+  /**
+   * Use this method to fetch several quotes with a single request. If the web
+   * service does not support batches (or sends fewer jokes than requested), the
+   * missing quotes are fetched one by one. Once the web service has shown that it
+   * does not support batches (it answered with a 404, or with a payload that is
+   * not a list of jokes), this client always fetches the quotes one by one.
+   *
+   * The other errors (a 5xx or 429 status, a connection lost while the response
+   * is read) only fail this request: a ProcessingException is thrown, and the
+   * next batches are still requested with a single request.
+   *
+   * @param numberOfQuotes the number of quotes to fetch
+   * @return a list with numberOfQuotes quotes
+   * @throws ProcessingException if the batch request fails
+   */
+  public List<Quote> fetchQuoteBatch(int numberOfQuotes) {
+    List<Quote> quotes = new ArrayList<>(numberOfQuotes);
+    if (numberOfQuotes > 1 && batchesSupported) {
+      quotes.addAll(fetchBatch(numberOfQuotes));
+      if (quotes.size() > numberOfQuotes) {
+        quotes.subList(numberOfQuotes, quotes.size()).clear();
+      }
+    }
+    while (quotes.size() < numberOfQuotes) {
+      quotes.add(fetchQuote());
+    }
+    return quotes;
+  }
+
+  private List<Quote> fetchBatch(int numberOfQuotes) {
+    List<Quote> quotes = new ArrayList<>(numberOfQuotes);
+    long start = Metrics.start();
+    Response response;
+    try {
+      response = target.path(Integer.toString(numberOfQuotes)).request().get();
+    } catch (RuntimeException e) {
+      Metrics.FETCH.record(start, false);
+      throw e;
+    }
+    try {
+      int status = response.getStatus();
+      if (status == Status.NOT_FOUND.getStatusCode()) {
+        disableBatches("the web service answered with status " + status);
+        return quotes;
+      }
+      if (status != Status.OK.getStatusCode()) {
+        throw new ProcessingException("The web service answered the batch request with status " + status);
+      }
+      long decodingStart = Metrics.start();
+      try (InputStream in = response.readEntity(InputStream.class)) {
+        quotes.addAll(decoder.decodeBatch(in));
+      } finally {
+        Metrics.DECODE.record(decodingStart, !quotes.isEmpty());
+      }
+    } catch (QuoteDecoder.NotABatchException e) {
+      disableBatches(e.getOriginalMessage());
+    } catch (IOException e) {
+      throw new ProcessingException("Could not read the batch sent by the web service", e);
+    } finally {
+      response.close();
+      Metrics.FETCH.record(start, !quotes.isEmpty());
+    }
+    return quotes;
+  }
+
+  /**
+   * The JSON payload is decoded by a QuoteDecoder, directly from the entity stream
+   * (we do not go through the jersey/jackson databind pipeline).
+   */
+  private Quote decodeQuote(Response response) {
+    long start = Metrics.start();
+    boolean decoded = false;
+    try (InputStream in = response.readEntity(InputStream.class)) {
+      Quote quote = decoder.decode(in);
+      decoded = true;
+      return quote;
+    } catch (IOException e) {
+      throw new ProcessingException("Could not decode the quote sent by the web service", e);
+    } finally {
+      Metrics.DECODE.record(start, decoded);
+    }
+  }
+
+  private void disableBatches(String reason) {
+    if (batchesSupported) {
+      batchesSupported = false;
+      LOG.log(Level.WARNING, "The web service does not support batches ({0}), quotes will be fetched one by one.", reason);
+    }
+  }
+
+  /**
+   * Use this method to fetch a quote without blocking the calling thread. If too
+   * many requests are already in flight, the request is queued and sent as soon
+   * as one of them is done.
+   *
+   * @return a future completed with the quote sent by the web service, or completed
+   * exceptionally if the request fails
+   */
+  public CompletableFuture<Quote> fetchQuoteAsync() {
+    CompletableFuture<Quote> result = new CompletableFuture<>();
+    if (closed) {
+      result.completeExceptionally(new IllegalStateException("The client has been closed"));
+      return result;
+    }
+    waitingRequests.add(result);
+    sendWaitingRequests();
+    return result;
+  }
+
+  /**
+   * Fetches several quotes asynchronously. The futures are returned immediately, in
+   * the order of the requests, and each one is completed as soon as its own response
+   * arrives, so that the caller can process the quotes one by one.
+   *
+   * @param numberOfQuotes the number of quotes to fetch
+   * @return one future per quote
+   */
+  public List<CompletableFuture<Quote>> fetchQuotes(int numberOfQuotes) {
+    List<CompletableFuture<Quote>> results = new ArrayList<>(numberOfQuotes);
+    for (int i = 0; i < numberOfQuotes; i++) {
+      results.add(fetchQuoteAsync());
+    }
+    return results;
+  }
+
+  /**
+   * Sends queued requests for as long as there are free permits. This is called
+   * when a request is queued and when a response arrives (and gives its permit
+   * back), so a queued request never waits for a free permit.
+   */
+  private void sendWaitingRequests() {
+    while (!waitingRequests.isEmpty() && outstandingRequests.tryAcquire()) {
+      CompletableFuture<Quote> result = waitingRequests.poll();
+      if (result == null) {
+        outstandingRequests.release();
+      } else {
+        sendRequest(result);
+      }
+    }
+  }
+
+  private void sendRequest(final CompletableFuture<Quote> result) {
+    final long start = Metrics.start();
+    try {
+      target.request().async().get(new InvocationCallback<Response>() {
+        @Override
+        public void completed(Response response) {
+          Quote quote = null;
+          RuntimeException error = null;
+          try {
+            quote = decodeQuote(response);
+          } catch (RuntimeException e) {
+            error = e;
+          } finally {
+            response.close();
+          }
+          Metrics.FETCH.record(start, error == null);
+          requestDone();
+          if (error == null) {
+            result.complete(quote);
+          } else {
+            result.completeExceptionally(error);
+          }
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+          Metrics.FETCH.record(start, false);
+          requestDone();
+          result.completeExceptionally(throwable);
+        }
+      });
+    } catch (RuntimeException e) {
+      /*
+       * We are already in the loop of sendWaitingRequests, which will use the permit again.
+       */
+      Metrics.FETCH.record(start, false);
+      outstandingRequests.release();
+      result.completeExceptionally(e);
+    }
+  }
+
+  private void requestDone() {
+    outstandingRequests.release();
+    sendWaitingRequests();
+  }
+
+  /**
+   * Releases the jersey client and closes all the pooled connections. The instance
+   * cannot be used anymore after this call, and the asynchronous requests that are
+   * still queued are cancelled.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    CompletableFuture<Quote> waiting;
+    while ((waiting = waitingRequests.poll()) != null) {
+      waiting.completeExceptionally(new CancellationException("The client has been closed"));
+    }
+    client.close();
+    connectionManager.shutdown();
   }
 
 }
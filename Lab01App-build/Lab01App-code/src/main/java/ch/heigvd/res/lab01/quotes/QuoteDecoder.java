@@ -0,0 +1,191 @@
+package ch.heigvd.res.lab01.quotes;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads the JSON payloads sent by the Chuck Norris API directly from
+ * an input stream, token by token, with the Jackson streaming API. Contrary to
+ * the databind path (ObjectMapper.readValue), it does not need reflection.
+ *
+ * The payload of a single joke looks like this:
+ *
+ * {"type":"success","value":{"id":1,"joke":"...","categories":["nerdy"]}}
+ *
+ * When several jokes are requested, "value" is an array of such objects. The
+ * fields that we do not know are skipped. An instance of this class can be
+ * used by several threads at the same time.
+ *
+ * @author Olivier Liechti
+ */
+public class QuoteDecoder {
+
+  private static final String[] NO_CATEGORIES = new String[0];
+
+  /**
+   * Thrown by decodeBatch when the payload is valid but does not have an array of
+   * jokes (the web service does not support batches), as opposed to a payload
+   * that cannot be read
+   */
+  public static class NotABatchException extends JsonParseException {
+
+    NotABatchException(String message, JsonLocation location) {
+      super(message, location);
+    }
+
+  }
+
+  private final JsonFactory factory;
+
+  public QuoteDecoder() {
+    this(SimpleObjectMapperProvider.getSharedMapper().getFactory());
+  }
+
+  public QuoteDecoder(JsonFactory factory) {
+    this.factory = factory;
+    warmUp();
+  }
+
+  /**
+   * Reads a payload with a single joke and returns it in a new Quote.
+   *
+   * @param in the stream from which the payload is read (it is not closed)
+   * @return the quote
+   * @throws IOException if the stream cannot be read or does not contain a joke
+   */
+  public Quote decode(InputStream in) throws IOException {
+    Quote quote = new Quote();
+    try (JsonParser parser = createParser(in)) {
+      readQuote(parser, quote);
+    }
+    return quote;
+  }
+
+  /**
+   * Reads a payload with an array of jokes and returns one Quote per joke.
+   *
+   * @param in the stream from which the payload is read (it is not closed)
+   * @return the quotes, in the order of the array
+   * @throws NotABatchException if the payload does not contain an array of jokes
+   * @throws IOException if the stream cannot be read or the payload is malformed
+   */
+  public List<Quote> decodeBatch(InputStream in) throws IOException {
+    List<Quote> quotes = new ArrayList<>();
+    try (JsonParser parser = createParser(in)) {
+      expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+      String type = null;
+      boolean hasValue = false;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+        if ("type".equals(field)) {
+          type = readText(parser, token);
+        } else if ("value".equals(field)) {
+          if (token != JsonToken.START_ARRAY) {
+            throw new NotABatchException("Expected an array of jokes but found " + token, parser.getCurrentLocation());
+          }
+          hasValue = true;
+          while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            Quote quote = new Quote();
+            quote.setValue(readValue(parser, token, new Quote.Value()));
+            quotes.add(quote);
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+      if (!hasValue) {
+        throw new NotABatchException("The payload does not contain an array of jokes", parser.getCurrentLocation());
+      }
+      for (Quote quote : quotes) {
+        quote.setType(type);
+      }
+    }
+    return quotes;
+  }
+
+  private JsonParser createParser(InputStream in) throws IOException {
+    JsonParser parser = factory.createParser(in);
+    parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    return parser;
+  }
+
+  private void readQuote(JsonParser parser, Quote quote) throws IOException {
+    expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+    boolean hasValue = false;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      if ("type".equals(field)) {
+        quote.setType(readText(parser, token));
+      } else if ("value".equals(field)) {
+        quote.setValue(readValue(parser, token, new Quote.Value()));
+        hasValue = true;
+      } else {
+        parser.skipChildren();
+      }
+    }
+    if (!hasValue) {
+      throw new JsonParseException("The payload does not contain a joke", parser.getCurrentLocation());
+    }
+  }
+
+  private Quote.Value readValue(JsonParser parser, JsonToken token, Quote.Value value) throws IOException {
+    expect(parser, token, JsonToken.START_OBJECT);
+    value.setId(0);
+    value.setJoke(null);
+    value.setCategories(NO_CATEGORIES);
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      token = parser.nextToken();
+      if ("id".equals(field)) {
+        value.setId(parser.getLongValue());
+      } else if ("joke".equals(field)) {
+        value.setJoke(readText(parser, token));
+      } else if ("categories".equals(field) && token == JsonToken.START_ARRAY) {
+        List<String> categories = new ArrayList<>(2);
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+          categories.add(readText(parser, token));
+        }
+        value.setCategories(categories.toArray(new String[categories.size()]));
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return value;
+  }
+
+  private static String readText(JsonParser parser, JsonToken token) throws IOException {
+    return token == JsonToken.VALUE_NULL ? null : parser.getText();
+  }
+
+  private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+    if (actual != expected) {
+      throw new JsonParseException("Expected " + expected + " but found " + actual, parser.getCurrentLocation());
+    }
+  }
+
+  /**
+   * Decodes a sample payload, so that the parser classes are loaded and the field
+   * names are in the symbol tables of the factory before the first real quote.
+   */
+  private void warmUp() {
+    byte[] sample = "{\"type\":\"success\",\"value\":{\"id\":0,\"joke\":\"\",\"categories\":[]}}"
+      .getBytes(StandardCharsets.UTF_8);
+    try {
+      decode(new ByteArrayInputStream(sample));
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not decode the sample payload", e);
+    }
+  }
+
+}
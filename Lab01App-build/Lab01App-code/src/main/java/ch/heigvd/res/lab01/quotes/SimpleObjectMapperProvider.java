@@ -11,6 +11,9 @@ import javax.ws.rs.ext.Provider;
  * HTTP responses into Java objects. You don't need to modify, nor to use
  * this file. It is used automatically when fetching quotes from a
  * web service.
+ *
+ * All the instances share the same ObjectMapper, which is created and warmed
+ * up (its deserializers for the quote classes are built) only once.
  * 
  * @author Olivier Liechti
  */
@@ -19,10 +22,19 @@ public class SimpleObjectMapperProvider implements ContextResolver<ObjectMapper>
 
   private static final Logger LOG = Logger.getLogger(SimpleObjectMapperProvider.class.getName());
 
+  private static final ObjectMapper SHARED_MAPPER = createDefaultMapper();
+
   final ObjectMapper defaultObjectMapper;
 
   public SimpleObjectMapperProvider() {
-    defaultObjectMapper = createDefaultMapper();
+    defaultObjectMapper = SHARED_MAPPER;
+  }
+
+  /**
+   * @return the ObjectMapper shared by all the instances of this class
+   */
+  public static ObjectMapper getSharedMapper() {
+    return SHARED_MAPPER;
   }
 
   @Override
@@ -33,6 +45,7 @@ public class SimpleObjectMapperProvider implements ContextResolver<ObjectMapper>
   private static ObjectMapper createDefaultMapper() {
     final ObjectMapper result = new ObjectMapper();
     result.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+    result.canDeserialize(result.constructType(Quote.class));
     return result;
   }
 
@@ -0,0 +1,214 @@
+package ch.heigvd.res.lab01.impl;
+
+import ch.heigvd.res.lab01.impl.archive.QuoteArchive;
+import ch.heigvd.res.lab01.quotes.Quote;
+import ch.heigvd.res.lab01.quotes.QuoteCache;
+import ch.heigvd.res.lab01.quotes.StubQuoteServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * These tests run the application against a local stub server, which waits
+ * a fixed amount of time before sending each quote.
+ *
+ * @author Olivier Liechti
+ */
+public class ConcurrentFetchTest {
+
+  private static final Logger LOG = Logger.getLogger(ConcurrentFetchTest.class.getName());
+
+  private static final int NUMBER_OF_QUOTES = 20;
+  private static final long LATENCY = 50;
+  private static final int PARALLELISM = 10;
+
+  @Test
+  public void itShouldStoreTheSameFilesWhenFetchingConcurrently() throws IOException {
+    try (StubQuoteServer server = new StubQuoteServer(0)) {
+      new Application(server.getEndpoint(), 8).fetchAndStoreQuotes(NUMBER_OF_QUOTES);
+    }
+    assertThatAllQuoteFilesExist();
+  }
+
+  @Test
+  public void itShouldStoreTheSameFilesWhenFetchingBatches() throws IOException {
+    try (StubQuoteServer server = new StubQuoteServer(0)) {
+      new Application(server.getEndpoint(), 3, 6).fetchAndStoreQuotes(NUMBER_OF_QUOTES);
+      assertEquals(4, server.getRequestCount());
+    }
+    assertThatAllQuoteFilesExist();
+  }
+
+  @Test
+  public void itShouldServeTheQuotesFromTheCacheWhenOffline() throws IOException {
+    File cacheFile = new File("./tmp-cache/quotes.cache");
+    FileUtils.deleteDirectory(cacheFile.getParentFile());
+    QuoteCache cache = new QuoteCache(cacheFile, 100, 3600 * 1000);
+    try (StubQuoteServer server = new StubQuoteServer(0)) {
+      Application online = new Application(server.getEndpoint(), 2, 5);
+      online.setQuoteCache(cache);
+      online.fetchAndStoreQuotes(NUMBER_OF_QUOTES);
+    }
+    assertTrue(cacheFile.isFile());
+
+    Application offline = new Application(null, 2, 5);
+    offline.setQuoteCache(new QuoteCache(cacheFile, 100, 3600 * 1000));
+    offline.setOffline(true);
+    offline.fetchAndStoreQuotes(NUMBER_OF_QUOTES);
+    assertThatAllQuoteFilesExist();
+    FileUtils.deleteDirectory(cacheFile.getParentFile());
+  }
+
+  @Test
+  public void itShouldFindTheQuotesOfATagWithTheIndex() throws IOException {
+    try (StubQuoteServer server = new StubQuoteServer(0)) {
+      new Application(server.getEndpoint(), 2, 5).fetchAndStoreQuotes(NUMBER_OF_QUOTES);
+    }
+    Application app = new Application();
+    assertEquals(NUMBER_OF_QUOTES, app.countQuoteFiles());
+    Path workspace = new File(Application.WORKSPACE_DIRECTORY).toPath();
+    for (String tag : new String[]{"funny", "popular", "movie", "internet", "joke", "hilarious", "geek"}) {
+      Set<String> expected = new HashSet<>();
+      for (File file : FileUtils.listFiles(workspace.toFile(), new String[]{"utf8"}, true)) {
+        Path path = workspace.relativize(file.toPath());
+        for (Path directory : path.getParent() == null ? Collections.<Path>emptyList() : path.getParent()) {
+          if (directory.toString().equals(tag)) {
+            expected.add(path.toString().replace(File.separatorChar, '/'));
+          }
+        }
+      }
+      assertEquals(expected, new HashSet<>(app.findQuoteFiles(tag)));
+    }
+  }
+
+  @Test
+  public void itShouldSaveTheTagIndexOnceWhenQuotesAreStoredOneByOne() throws IOException {
+    Application app = new Application();
+    app.clearOutputDirectory();
+    for (int i = 1; i <= NUMBER_OF_QUOTES; i++) {
+      Quote.Value value = new Quote.Value();
+      value.setId(i);
+      value.setJoke("Joke number " + i);
+      Quote quote = new Quote();
+      quote.setValue(value);
+      app.storeQuote(quote, "quote-" + i + ".utf8");
+    }
+    assertFalse(new File(Application.TAG_INDEX_FILE).exists());
+    app.saveTagIndex();
+    assertEquals(NUMBER_OF_QUOTES, new Application().countQuoteFiles());
+    assertThatAllQuoteFilesExist();
+  }
+
+  @Test
+  public void itShouldStoreAndTransformTheQuotesInAnArchive() throws IOException {
+    Application app;
+    try (StubQuoteServer server = new StubQuoteServer(0)) {
+      app = new Application(server.getEndpoint(), 4, 5);
+      app.setArchiveMode(true);
+      app.fetchAndStoreQuotes(NUMBER_OF_QUOTES);
+    }
+    app.processQuoteFiles();
+    assertFalse(new File(Application.WORKSPACE_DIRECTORY).exists());
+    StringWriter names = new StringWriter();
+    app.printFileNames(names);
+    int quoteFiles = 0;
+    int outputFiles = 0;
+    for (String name : names.toString().split("\n")) {
+      quoteFiles += name.endsWith(".utf8") ? 1 : 0;
+      outputFiles += name.endsWith(".utf8.out") ? 1 : 0;
+    }
+    assertEquals(NUMBER_OF_QUOTES, quoteFiles);
+    assertEquals(NUMBER_OF_QUOTES, outputFiles);
+    try (QuoteArchive archive = new QuoteArchive(new File(Application.ARCHIVE_DIRECTORY))) {
+      assertEquals(2 * NUMBER_OF_QUOTES, archive.size());
+    }
+    app.clearOutputDirectory();
+    assertFalse(new File(Application.ARCHIVE_DIRECTORY).exists());
+  }
+
+  @Test
+  public void itShouldFetchStoreAndTransformTheQuotesInAPipeline() throws IOException {
+    try (StubQuoteServer server = new StubQuoteServer(0)) {
+      Application app = new Application(server.getEndpoint(), 3, 4);
+      app.setPipelineThreads(2, 3);
+      app.setPipelineQueueCapacity(2);
+      app.fetchStoreAndProcessQuotes(NUMBER_OF_QUOTES);
+      assertEquals(5, server.getRequestCount());
+    }
+    assertThatAllQuoteFilesExist();
+    Collection<File> outputFiles = FileUtils.listFiles(new File(Application.WORKSPACE_DIRECTORY), new String[]{"out"}, true);
+    assertEquals(NUMBER_OF_QUOTES, outputFiles.size());
+    for (File outputFile : outputFiles) {
+      assertTrue(new File(outputFile.getPath().replaceFirst("\\.out$", "")).isFile());
+    }
+    assertEquals(NUMBER_OF_QUOTES, new Application().countQuoteFiles());
+  }
+
+  @Test(timeout = 30000, expected = AssertionError.class)
+  public void itShouldStopThePipelineWhenAWorkerThrowsAnError() throws IOException {
+    try (StubQuoteServer server = new StubQuoteServer(0)) {
+      Application app = new Application(server.getEndpoint(), 2, 5) {
+        @Override
+        void storeQuote(Quote quote, String filename) throws IOException {
+          throw new AssertionError("The store stage is broken");
+        }
+      };
+      app.setPipelineQueueCapacity(1);
+      app.fetchStoreAndProcessQuotes(NUMBER_OF_QUOTES);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void itShouldStopThePipelineWhenAQuoteCannotBeFetched() throws IOException {
+    Application app = new Application("http://localhost:1/", 2, 5);
+    app.setPipelineQueueCapacity(1);
+    app.fetchStoreAndProcessQuotes(NUMBER_OF_QUOTES);
+  }
+
+  @Test
+  public void itShouldFetchTheQuotesConcurrently() throws IOException {
+    try (StubQuoteServer server = new StubQuoteServer(LATENCY)) {
+      new Application(server.getEndpoint(), 1).fetchAndStoreQuotes(NUMBER_OF_QUOTES);
+      assertEquals(1, server.getMaxRequestsInFlight());
+    }
+    try (StubQuoteServer server = new StubQuoteServer(LATENCY)) {
+      new Application(server.getEndpoint(), PARALLELISM).fetchAndStoreQuotes(NUMBER_OF_QUOTES);
+      LOG.info("Requests in flight: " + server.getMaxRequestsInFlight());
+      assertTrue(server.getMaxRequestsInFlight() > 1);
+      assertTrue(server.getMaxRequestsInFlight() <= PARALLELISM);
+    }
+    assertThatAllQuoteFilesExist();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void itShouldRejectABatchSizeLowerThanOne() {
+    new Application(null, 1, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void itShouldRejectAParallelismLowerThanOne() {
+    new Application(null, 0);
+  }
+
+  private void assertThatAllQuoteFilesExist() {
+    Collection<File> files = FileUtils.listFiles(new File(Application.WORKSPACE_DIRECTORY), new String[]{"utf8"}, true);
+    Set<String> names = new HashSet<>();
+    for (File file : files) {
+      names.add(file.getName());
+    }
+    assertEquals(NUMBER_OF_QUOTES, names.size());
+    for (int i = 1; i <= NUMBER_OF_QUOTES; i++) {
+      assertTrue(names.contains("quote-" + i + ".utf8"));
+    }
+  }
+
+}
@@ -0,0 +1,92 @@
+package ch.heigvd.res.lab01.impl;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class LineCursorTest {
+
+  @Test
+  public void itShouldGiveTheOffsetsOfTheLines() {
+    LineCursor cursor = new LineCursor("ab\r\ncd\ref\n\ngh");
+    assertTrue(cursor.next());
+    assertEquals(0, cursor.getStart());
+    assertEquals(2, cursor.getContentEnd());
+    assertEquals(4, cursor.getEnd());
+    assertTrue(cursor.next());
+    assertEquals(4, cursor.getStart());
+    assertEquals(7, cursor.getEnd());
+    assertTrue(cursor.next());
+    assertEquals(10, cursor.getEnd());
+    assertTrue(cursor.next());
+    assertEquals(10, cursor.getStart());
+    assertEquals(11, cursor.getEnd());
+    assertFalse(cursor.next());
+    assertEquals(11, cursor.getRemainderStart());
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void itShouldDetectACarriageReturnAtTheEndOfTheText() {
+    char[] text = "a\rb\r\nc\r".toCharArray();
+    LineCursor cursor = new LineCursor().reset(text, 0, 5);
+    assertTrue(cursor.next());
+    assertFalse(cursor.endsWithCarriageReturn());
+    assertTrue(cursor.next());
+    assertFalse(cursor.endsWithCarriageReturn());
+    assertFalse(cursor.next());
+
+    cursor.reset(text, 2, 4);
+    assertTrue(cursor.next());
+    assertEquals(4, cursor.getEnd());
+    assertTrue(cursor.endsWithCarriageReturn());
+    cursor.reset(text, 5, 7);
+    assertTrue(cursor.next());
+    assertTrue(cursor.endsWithCarriageReturn());
+  }
+
+  @Test
+  public void itShouldFindTheSameLinesAsGetNextLine() {
+    Random random = new Random(42);
+    char[] alphabet = {'a', 'b', ' ', '\r', '\n', 'é'};
+    LineCursor cursor = new LineCursor();
+    for (int n = 0; n < 1000; n++) {
+      StringBuilder text = new StringBuilder();
+      int length = random.nextInt(30);
+      for (int i = 0; i < length; i++) {
+        text.append(alphabet[random.nextInt(alphabet.length)]);
+      }
+      String lines = text.toString();
+      List<String> expected = new ArrayList<>();
+      String[] next = Utils.getNextLine(lines);
+      while (!next[0].isEmpty()) {
+        expected.add(next[0]);
+        next = Utils.getNextLine(next[1]);
+      }
+      expected.add(next[1]);
+
+      assertEquals(expected, split(cursor.reset(lines), lines));
+      assertEquals(expected, split(cursor.reset(text), lines));
+      assertEquals(expected, split(cursor.reset(CharBuffer.wrap(lines)), lines));
+      char[] array = ("xx" + lines + "yy").toCharArray();
+      assertEquals(expected, split(cursor.reset(array, 2, 2 + lines.length()), "xx" + lines));
+    }
+  }
+
+  private static List<String> split(LineCursor cursor, String text) {
+    List<String> lines = new ArrayList<>();
+    while (cursor.next()) {
+      lines.add(text.substring(cursor.getStart(), cursor.getEnd()));
+    }
+    lines.add(text.substring(cursor.getRemainderStart()));
+    return lines;
+  }
+
+}
@@ -0,0 +1,131 @@
+package ch.heigvd.res.lab01.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class QuoteStoreTest {
+
+  private static final File ROOT = new File("./tmp-store");
+
+  private static final List<List<String>> TAG_PATHS = Arrays.asList(
+    Arrays.asList("nerdy"),
+    Arrays.asList("nerdy", "geek"),
+    Arrays.asList("explicit", "funny", "mode"),
+    Arrays.<String>asList());
+
+  @Before
+  public void createRoot() throws IOException {
+    FileUtils.deleteDirectory(ROOT);
+  }
+
+  @After
+  public void deleteRoot() throws IOException {
+    FileUtils.deleteDirectory(ROOT);
+  }
+
+  @Test
+  public void itShouldWriteTheQuotesByBatches() throws IOException {
+    QuoteStore store = new QuoteStore(ROOT, 10, QuoteStore.SyncPolicy.NEVER);
+    for (int i = 0; i < 25; i++) {
+      store.store(TAG_PATHS.get(i % TAG_PATHS.size()), "quote-" + i + ".utf8", "Quote " + i + " élève");
+    }
+    assertEquals(20, store.getStoredQuotes());
+    assertEquals(2, store.getBatches());
+    assertFalse(quoteFile(24).exists());
+    store.close();
+    assertEquals(25, store.getStoredQuotes());
+    assertEquals(3, store.getBatches());
+    for (int i = 0; i < 25; i++) {
+      assertEquals("Quote " + i + " élève", FileUtils.readFileToString(quoteFile(i), "UTF-8"));
+    }
+  }
+
+  @Test
+  public void itShouldOnlyCreateEachDirectoryOnce() throws IOException {
+    try (QuoteStore store = new QuoteStore(ROOT, 7, QuoteStore.SyncPolicy.NEVER)) {
+      for (int i = 0; i < 100; i++) {
+        store.store(TAG_PATHS.get(i % TAG_PATHS.size()), "quote-" + i + ".utf8", "Quote " + i);
+      }
+      store.flush();
+      /*
+       * nerdy/geek is written before nerdy, so only nerdy/geek and explicit/funny/mode
+       * need mkdirs (the other directories are their parents)
+       */
+      assertEquals(2, store.getCreatedDirectories());
+    }
+  }
+
+  @Test
+  public void itShouldNotLeaveTemporaryFiles() throws IOException {
+    try (QuoteStore store = new QuoteStore(ROOT, 3, QuoteStore.SyncPolicy.SYNC_EACH_BATCH)) {
+      for (int i = 0; i < 10; i++) {
+        store.store(TAG_PATHS.get(i % TAG_PATHS.size()), "quote-" + i + ".utf8", "Quote " + i);
+      }
+      store.store(TAG_PATHS.get(0), "quote-0.utf8", "Replaced");
+    }
+    Collection<File> files = FileUtils.listFiles(ROOT, TrueFileFilter.INSTANCE, TrueFileFilter.INSTANCE);
+    assertEquals(10, files.size());
+    for (File file : files) {
+      assertTrue(file.getName().endsWith(".utf8"));
+    }
+    assertEquals("Replaced", FileUtils.readFileToString(quoteFile(0), "UTF-8"));
+  }
+
+  @Test
+  public void itShouldAcceptQuotesFromSeveralThreads() throws Exception {
+    final QuoteStore store = new QuoteStore(ROOT, 16, QuoteStore.SyncPolicy.NEVER);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> results = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        final int thread = t;
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            for (int i = thread; i < 1000; i += 4) {
+              store.store(TAG_PATHS.get(i % TAG_PATHS.size()), "quote-" + i + ".utf8", "Quote " + i);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    store.close();
+    assertEquals(1000, store.getStoredQuotes());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("Quote " + i, FileUtils.readFileToString(quoteFile(i), "UTF-8"));
+    }
+  }
+
+  private static File quoteFile(int i) {
+    File directory = ROOT;
+    for (String tag : TAG_PATHS.get(i % TAG_PATHS.size())) {
+      directory = new File(directory, tag);
+    }
+    return new File(directory, "quote-" + i + ".utf8");
+  }
+
+}
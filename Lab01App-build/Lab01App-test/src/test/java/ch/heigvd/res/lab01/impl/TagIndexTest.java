@@ -0,0 +1,88 @@
+package ch.heigvd.res.lab01.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class TagIndexTest {
+
+  @Test
+  public void itShouldFindTheQuotesOfATag() {
+    TagIndex index = createIndex();
+    assertEquals(Arrays.asList("nerdy/quote-1.utf8", "nerdy/geek/quote-2.utf8", "geek/nerdy/quote-4.utf8"), index.find("nerdy"));
+    assertEquals(3, index.count("nerdy"));
+    assertEquals(Collections.emptyList(), index.find("unknown"));
+    assertEquals(Arrays.asList("explicit", "funny", "geek", "nerdy"), index.getTags());
+  }
+
+  @Test
+  public void itShouldIntersectTheTags() {
+    TagIndex index = createIndex();
+    assertEquals(Arrays.asList("nerdy/geek/quote-2.utf8", "geek/nerdy/quote-4.utf8"), index.find("geek", "nerdy"));
+    assertEquals(Arrays.asList("nerdy/geek/quote-2.utf8", "geek/nerdy/quote-4.utf8"), index.find("nerdy", "geek", "geek"));
+    assertEquals(0, index.count("nerdy", "funny"));
+    assertEquals(0, index.count("nerdy", "unknown"));
+    assertEquals(5, index.count());
+  }
+
+  @Test
+  public void itShouldOnlyIndexAFileOnce() {
+    TagIndex index = createIndex();
+    index.add(Arrays.asList("nerdy"), "nerdy/quote-1.utf8");
+    assertEquals(5, index.size());
+    assertEquals(3, index.count("nerdy"));
+  }
+
+  @Test
+  public void itShouldSaveAndLoadTheIndex() throws IOException {
+    File file = new File("./tmp-tags/quotes.tags");
+    FileUtils.deleteDirectory(file.getParentFile());
+    file.getParentFile().mkdirs();
+    TagIndex index = createIndex();
+    index.save(file);
+    TagIndex loaded = TagIndex.load(file);
+    assertEquals(index.size(), loaded.size());
+    assertEquals(index.getTags(), loaded.getTags());
+    for (String tag : index.getTags()) {
+      assertEquals(index.find(tag), loaded.find(tag));
+    }
+    loaded.add(Arrays.asList("funny"), "funny/quote-6.utf8");
+    assertEquals(Arrays.asList("explicit/funny/quote-3.utf8", "funny/quote-6.utf8"), loaded.find("funny"));
+    assertEquals(0, TagIndex.load(new File("./tmp-tags/missing")).size());
+    FileUtils.deleteDirectory(file.getParentFile());
+  }
+
+  @Test
+  public void itShouldIgnoreATruncatedIndex() throws IOException {
+    File file = new File("./tmp-tags/quotes.tags");
+    FileUtils.deleteDirectory(file.getParentFile());
+    file.getParentFile().mkdirs();
+    createIndex().save(file);
+    byte[] content = FileUtils.readFileToByteArray(file);
+    FileUtils.writeByteArrayToFile(file, Arrays.copyOf(content, content.length - 5));
+    TagIndex loaded = TagIndex.load(file);
+    assertEquals(0, loaded.size());
+    assertTrue(loaded.getTags().isEmpty());
+    FileUtils.deleteDirectory(file.getParentFile());
+  }
+
+  private static TagIndex createIndex() {
+    TagIndex index = new TagIndex();
+    index.add(Arrays.asList("nerdy"), "nerdy/quote-1.utf8");
+    index.add(Arrays.asList("nerdy", "geek"), "nerdy/geek/quote-2.utf8");
+    index.add(Arrays.asList("explicit", "funny"), "explicit/funny/quote-3.utf8");
+    index.add(Arrays.asList("geek", "nerdy"), "geek/nerdy/quote-4.utf8");
+    index.add(Collections.<String>emptyList(), "quote-5.utf8");
+    return index;
+  }
+
+}
@@ -0,0 +1,169 @@
+package ch.heigvd.res.lab01.impl.archive;
+
+import ch.heigvd.res.lab01.impl.explorers.DFSFileExplorer;
+import ch.heigvd.res.lab01.impl.transformers.CompleteFileTransformer;
+import ch.heigvd.res.lab01.interfaces.IFileExplorer;
+import ch.heigvd.res.lab01.interfaces.IFileVisitor;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class QuoteArchiveTest {
+
+  private static final File ARCHIVE = new File("./tmp-archive/archive");
+  private static final File WORKSPACE = new File("./tmp-archive/workspace");
+
+  private static final List<List<String>> TAG_PATHS = Arrays.asList(
+    Arrays.asList("nerdy"),
+    Arrays.asList("nerdy", "geek"),
+    Arrays.asList("explicit", "funny", "mode"),
+    Arrays.<String>asList());
+
+  @Before
+  public void clean() throws IOException {
+    FileUtils.deleteDirectory(new File("./tmp-archive"));
+  }
+
+  @After
+  public void cleanAtTheEnd() throws IOException {
+    FileUtils.deleteDirectory(new File("./tmp-archive"));
+  }
+
+  @Test
+  public void itShouldReadTheQuotesAfterReopeningTheArchive() throws IOException {
+    try (QuoteArchive archive = new QuoteArchive(ARCHIVE, 200)) {
+      appendQuotes(archive, 50);
+      assertEquals(50, archive.size());
+      assertEquals("Quote 7\nélève", text(archive, 7));
+    }
+    assertTrue(new File(ARCHIVE, "segment-00001.qar").isFile());
+    try (QuoteArchive archive = new QuoteArchive(ARCHIVE, 200)) {
+      assertEquals(50, archive.size());
+      for (int i = 0; i < 50; i++) {
+        assertEquals("Quote " + i + "\nélève", text(archive, i));
+      }
+    }
+  }
+
+  @Test
+  public void itShouldRebuildTheIndexFromTheSegments() throws IOException {
+    File index = new File(ARCHIVE, QuoteArchive.INDEX_FILENAME);
+    File flushedIndex = new File(ARCHIVE.getParentFile(), "flushed-index");
+    try (QuoteArchive archive = new QuoteArchive(ARCHIVE, 200)) {
+      appendQuotes(archive, 30);
+      archive.flush();
+      FileUtils.copyFile(index, flushedIndex);
+      archive.append(TAG_PATHS.get(0), "quote-0.utf8", "Replaced".getBytes(StandardCharsets.UTF_8));
+      archive.append(TAG_PATHS.get(1), "late.utf8", "Appended after the flush".getBytes(StandardCharsets.UTF_8));
+    }
+    /*
+     * We put back the index as it was at the last flush, as if the application had
+     * been stopped before closing the archive
+     */
+    FileUtils.copyFile(flushedIndex, index);
+    try (QuoteArchive archive = new QuoteArchive(ARCHIVE, 200)) {
+      assertEquals(31, archive.size());
+      assertEquals("Replaced", new String(archive.read(archive.find("nerdy/quote-0.utf8")), StandardCharsets.UTF_8));
+    }
+    assertTrue(index.delete());
+    try (QuoteArchive archive = new QuoteArchive(ARCHIVE, 200)) {
+      assertEquals(31, archive.size());
+      assertEquals("Appended after the flush", new String(archive.read(archive.find("nerdy/geek/late.utf8")), StandardCharsets.UTF_8));
+      assertEquals("Quote 29\nélève", text(archive, 29));
+    }
+  }
+
+  @Test
+  public void itShouldDropAnIncompleteRecord() throws IOException {
+    try (QuoteArchive archive = new QuoteArchive(ARCHIVE)) {
+      appendQuotes(archive, 10);
+    }
+    assertTrue(new File(ARCHIVE, QuoteArchive.INDEX_FILENAME).delete());
+    File segment = new File(ARCHIVE, "segment-00000.qar");
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.setLength(file.length() - 3);
+    }
+    try (QuoteArchive archive = new QuoteArchive(ARCHIVE)) {
+      assertEquals(9, archive.size());
+      assertNull(archive.find(path(9)));
+      archive.append(TAG_PATHS.get(1), "quote-9.utf8", "Quote 9 again".getBytes(StandardCharsets.UTF_8));
+    }
+    try (QuoteArchive archive = new QuoteArchive(ARCHIVE)) {
+      assertEquals(10, archive.size());
+      assertEquals("Quote 9 again", new String(archive.read(archive.find("nerdy/geek/quote-9.utf8")), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void itShouldVisitTheSameFilesAsTheDFSFileExplorer() throws IOException {
+    try (QuoteArchive archive = new QuoteArchive(ARCHIVE)) {
+      appendQuotes(archive, 20);
+      for (QuoteArchive.Entry entry : archive.getEntries()) {
+        File file = new File(WORKSPACE, entry.getPath());
+        FileUtils.writeByteArrayToFile(file, archive.read(entry));
+      }
+      assertEquals(visitedFiles(new DFSFileExplorer()), visitedFiles(new ArchiveFileExplorer(archive)));
+    }
+  }
+
+  @Test
+  public void itShouldTransformTheFilesOfTheArchive() throws IOException {
+    try (QuoteArchive archive = new QuoteArchive(ARCHIVE)) {
+      appendQuotes(archive, 20);
+      for (QuoteArchive.Entry entry : archive.getEntries()) {
+        FileUtils.writeByteArrayToFile(new File(WORKSPACE, entry.getPath()), archive.read(entry));
+      }
+      new DFSFileExplorer().explore(WORKSPACE, new CompleteFileTransformer());
+      ArchiveFileTransformer transformer = new ArchiveFileTransformer(archive, WORKSPACE, new CompleteFileTransformer());
+      new ArchiveFileExplorer(archive).explore(WORKSPACE, transformer);
+
+      assertEquals(20, transformer.getTransformedFiles());
+      assertEquals(40, archive.size());
+      assertEquals(visitedFiles(new DFSFileExplorer()), visitedFiles(new ArchiveFileExplorer(archive)));
+      for (int i = 0; i < 20; i++) {
+        byte[] expected = FileUtils.readFileToByteArray(new File(WORKSPACE, path(i) + ".out"));
+        assertArrayEquals(expected, archive.read(archive.find(path(i) + ".out")));
+      }
+    }
+  }
+
+  private static void appendQuotes(QuoteArchive archive, int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      archive.append(TAG_PATHS.get(i % TAG_PATHS.size()), "quote-" + i + ".utf8",
+        ("Quote " + i + "\nélève").getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static String path(int i) {
+    return QuoteArchive.pathOf(TAG_PATHS.get(i % TAG_PATHS.size()), "quote-" + i + ".utf8");
+  }
+
+  private static String text(QuoteArchive archive, int i) throws IOException {
+    return new String(archive.read(archive.find(path(i))), StandardCharsets.UTF_8);
+  }
+
+  private static List<String> visitedFiles(IFileExplorer explorer) {
+    final List<String> files = new ArrayList<>();
+    explorer.explore(WORKSPACE, new IFileVisitor() {
+      @Override
+      public void visit(File file) {
+        files.add(file.getPath());
+      }
+    });
+    return files;
+  }
+
+}
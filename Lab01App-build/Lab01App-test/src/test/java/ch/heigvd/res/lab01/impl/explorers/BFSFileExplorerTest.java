@@ -0,0 +1,80 @@
+package ch.heigvd.res.lab01.impl.explorers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class BFSFileExplorerTest {
+
+  private static final File ROOT = new File("./fs-bfs-test");
+
+  @Before
+  public void generateTestTree() throws IOException {
+    FileUtils.deleteDirectory(ROOT);
+    new File(ROOT, "a/b/c").mkdirs();
+    new File(ROOT, "x/y").mkdirs();
+    new File(ROOT, "root.txt").createNewFile();
+    new File(ROOT, "a/a.txt").createNewFile();
+    new File(ROOT, "a/b/c/c.txt").createNewFile();
+  }
+
+  @After
+  public void deleteTestTree() throws IOException {
+    FileUtils.deleteDirectory(ROOT);
+  }
+
+  @Test
+  public void itShouldVisitTheNodesLevelByLevel() {
+    List<Integer> depths = new ArrayList<>();
+    Iterator<File> iterator = new BFSFileExplorer().iterator(ROOT);
+    while (iterator.hasNext()) {
+      depths.add(depth(iterator.next()));
+    }
+    assertEquals(9, depths.size());
+    for (int i = 1; i < depths.size(); i++) {
+      assertTrue(depths.get(i - 1) <= depths.get(i));
+    }
+  }
+
+  @Test
+  public void itShouldNotGoDeeperThanTheMaximumDepth() {
+    try (Stream<File> stream = new BFSFileExplorer(2).stream(ROOT)) {
+      List<String> names = stream.map(File::getName).sorted().collect(Collectors.toList());
+      assertEquals(7, names.size());
+      assertFalse(names.contains("c"));
+      assertTrue(names.contains("b"));
+    }
+  }
+
+  @Test
+  public void itShouldOnlyReturnTheRootWhenTheMaximumDepthIsZero() {
+    try (Stream<File> stream = new BFSFileExplorer(0).stream(ROOT)) {
+      assertEquals(1, stream.count());
+    }
+  }
+
+  @Test
+  public void itShouldAllowTheCallerToStopEarly() {
+    try (Stream<File> stream = new BFSFileExplorer().stream(ROOT)) {
+      assertEquals(3, stream.limit(3).count());
+    }
+  }
+
+  private static int depth(File file) {
+    return file.toPath().getNameCount() - ROOT.toPath().getNameCount();
+  }
+
+}
@@ -1,15 +1,18 @@
 package ch.heigvd.res.lab01.impl.explorers;
 
+import ch.heigvd.res.lab01.interfaces.IAttributeFileVisitor;
 import ch.heigvd.res.lab01.interfaces.IFileExplorer;
 import ch.heigvd.res.lab01.interfaces.IFileVisitor;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.io.FileUtils;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import org.junit.Test;
 
 /**
@@ -52,6 +55,69 @@ public class DFSFileExplorerTest {
     assertArrayEquals(dfsNodes.toArray(), directories.toArray());
   }
   
+  @Test
+  public void dfsExplorerShouldVisitTheFilesBeforeTheSubdirectories() throws IOException {
+    File root = new File("./fs-test");
+    FileUtils.deleteDirectory(root);
+    new File(root, "b/d").mkdirs();
+    new File(root, "a").mkdirs();
+    new File(root, "z.txt").createNewFile();
+    new File(root, "b/c.txt").createNewFile();
+    new File(root, "b/d/e.txt").createNewFile();
+
+    final List<String> nodes = new ArrayList<>();
+    new DFSFileExplorer().explore(root, new IFileVisitor() {
+      @Override
+      public void visit(File file) {
+        nodes.add(file.getName());
+      }
+    });
+    assertArrayEquals(new String[]{"fs-test", "z.txt", "a", "b", "c.txt", "d", "e.txt"}, nodes.toArray());
+  }
+
+  @Test
+  public void dfsExplorerShouldGiveTheAttributesToTheVisitorsThatWantThem() throws IOException {
+    File root = new File("./fs-test");
+    FileUtils.deleteDirectory(root);
+    new File(root, "a").mkdirs();
+    new File(root, "a/file.txt").createNewFile();
+
+    final List<String> nodes = new ArrayList<>();
+    new DFSFileExplorer().explore(root, new IAttributeFileVisitor() {
+      @Override
+      public void visit(File file, BasicFileAttributes attributes) {
+        nodes.add(file.getName() + (attributes.isDirectory() ? "/" : ""));
+      }
+
+      @Override
+      public void visit(File file) {
+        throw new AssertionError("The explorer should have given the attributes of " + file);
+      }
+    });
+    assertArrayEquals(new String[]{"fs-test/", "a/", "file.txt"}, nodes.toArray());
+  }
+
+  @Test
+  public void dfsExplorerShouldWorkOnDeepHierarchies() throws IOException {
+    File root = new File("./fs-test");
+    FileUtils.deleteDirectory(root);
+    StringBuilder path = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      path.append("/d");
+    }
+    new File(root, path.toString()).mkdirs();
+
+    final int[] counter = {0};
+    new DFSFileExplorer().explore(root, new IFileVisitor() {
+      @Override
+      public void visit(File file) {
+        counter[0]++;
+      }
+    });
+    assertEquals(1001, counter[0]);
+    FileUtils.deleteDirectory(root);
+  }
+
   private List<String> generateTestTree(int levels, int maxChildrenFolders, int maxChildrenFiles) {
     List<String> dfsNodes = new ArrayList<>();  
     File dir = new File("./fs-test");
@@ -0,0 +1,89 @@
+package ch.heigvd.res.lab01.impl.explorers;
+
+import ch.heigvd.res.lab01.interfaces.IFileVisitor;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class LazyDFSFileExplorerTest {
+
+  private static final File ROOT = new File("./fs-lazy-dfs-test");
+
+  @Before
+  public void generateTestTree() throws IOException {
+    FileUtils.deleteDirectory(ROOT);
+    new File(ROOT, "a/b").mkdirs();
+    new File(ROOT, "c").mkdirs();
+    for (int i = 0; i < 100; i++) {
+      new File(ROOT, "file" + i + ".txt").createNewFile();
+    }
+    new File(ROOT, "a/a.txt").createNewFile();
+    new File(ROOT, "a/b/b.txt").createNewFile();
+    new File(ROOT, "c/c.txt").createNewFile();
+  }
+
+  @After
+  public void deleteTestTree() throws IOException {
+    FileUtils.deleteDirectory(ROOT);
+  }
+
+  @Test
+  public void itShouldVisitTheSameNodesAsTheDfsExplorer() {
+    final List<String> dfsNodes = new ArrayList<>();
+    new DFSFileExplorer().explore(ROOT, new IFileVisitor() {
+      @Override
+      public void visit(File file) {
+        dfsNodes.add(file.getPath());
+      }
+    });
+    try (Stream<File> stream = new LazyDFSFileExplorer().stream(ROOT)) {
+      List<String> lazyNodes = stream.map(File::getPath).collect(Collectors.toList());
+      assertEquals(dfsNodes.size(), lazyNodes.size());
+      assertEquals(new HashSet<>(dfsNodes), new HashSet<>(lazyNodes));
+    }
+  }
+
+  @Test
+  public void itShouldVisitTheFilesBeforeTheSubdirectoriesAndTheirContent() {
+    List<String> names = new ArrayList<>();
+    new LazyDFSFileExplorer().explore(ROOT, new IFileVisitor() {
+      @Override
+      public void visit(File file) {
+        names.add(file.getName());
+      }
+    });
+    assertEquals(ROOT.getName(), names.get(0));
+    for (int i = 1; i <= 100; i++) {
+      assertTrue(names.get(i).startsWith("file"));
+    }
+    int a = names.indexOf("a");
+    int c = names.indexOf("c");
+    if (a < c) {
+      assertEquals(names.subList(a, a + 4), Arrays.asList("a", "a.txt", "b", "b.txt"));
+    } else {
+      assertEquals(names.subList(c, c + 2), Arrays.asList("c", "c.txt"));
+    }
+  }
+
+  @Test
+  public void itShouldNotGoDeeperThanTheMaximumDepth() {
+    try (Stream<File> stream = new LazyDFSFileExplorer(1).stream(ROOT)) {
+      assertEquals(1 + 100 + 2, stream.count());
+    }
+  }
+
+}
@@ -0,0 +1,107 @@
+package ch.heigvd.res.lab01.impl.explorers;
+
+import ch.heigvd.res.lab01.interfaces.IFileVisitor;
+import ch.heigvd.res.lab01.interfaces.IThreadSafeFileVisitor;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class ParallelFileExplorerTest {
+
+  private static final File ROOT = new File("./fs-parallel-test");
+
+  @Before
+  public void generateTestTree() throws IOException {
+    FileUtils.deleteDirectory(ROOT);
+    for (int i = 1; i <= 4; i++) {
+      for (int j = 1; j <= 4; j++) {
+        File directory = new File(ROOT, "d" + i + "/d" + i + "." + j);
+        directory.mkdirs();
+        for (int k = 1; k <= 3; k++) {
+          new File(directory, "file" + k + ".txt").createNewFile();
+        }
+      }
+    }
+  }
+
+  @After
+  public void deleteTestTree() throws IOException {
+    FileUtils.deleteDirectory(ROOT);
+  }
+
+  @Test
+  public void itShouldVisitTheSameNodesAsTheDfsExplorer() {
+    final List<String> dfsNodes = new ArrayList<>();
+    new DFSFileExplorer().explore(ROOT, new IFileVisitor() {
+      @Override
+      public void visit(File file) {
+        dfsNodes.add(file.getPath());
+      }
+    });
+
+    final List<String> parallelNodes = Collections.synchronizedList(new ArrayList<String>());
+    new ParallelFileExplorer(new ForkJoinPool(4)).explore(ROOT, new IThreadSafeFileVisitor() {
+      @Override
+      public void visit(File file) {
+        parallelNodes.add(file.getPath());
+      }
+    });
+
+    assertEquals(1 + 4 + 16 + 48, dfsNodes.size());
+    assertEquals(dfsNodes.size(), parallelNodes.size());
+    assertEquals(new HashSet<>(dfsNodes), new HashSet<>(parallelNodes));
+  }
+
+  @Test
+  public void itShouldVisitADirectoryBeforeItsContent() {
+    final Set<String> visited = Collections.synchronizedSet(new HashSet<String>());
+    new ParallelFileExplorer(new ForkJoinPool(4)).explore(ROOT, new IThreadSafeFileVisitor() {
+      @Override
+      public void visit(File file) {
+        File parent = file.getParentFile();
+        if (!file.equals(ROOT)) {
+          assertTrue(visited.contains(parent.getPath()));
+        }
+        visited.add(file.getPath());
+      }
+    });
+  }
+
+  @Test
+  public void itShouldSerializeTheVisitorsThatAreNotThreadSafe() {
+    final AtomicInteger concurrentVisits = new AtomicInteger();
+    final AtomicInteger maxConcurrentVisits = new AtomicInteger();
+    final List<String> nodes = new ArrayList<>();
+    new ParallelFileExplorer(new ForkJoinPool(4)).explore(ROOT, new IFileVisitor() {
+      @Override
+      public void visit(File file) {
+        maxConcurrentVisits.accumulateAndGet(concurrentVisits.incrementAndGet(), Math::max);
+        nodes.add(file.getPath());
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        concurrentVisits.decrementAndGet();
+      }
+    });
+    assertEquals(1 + 4 + 16 + 48, nodes.size());
+    assertEquals(1, maxConcurrentVisits.get());
+  }
+
+}
@@ -0,0 +1,154 @@
+package ch.heigvd.res.lab01.impl.filters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class ByteFilterTest {
+
+  private static final String[] SAMPLES = {"hello", " world", "\n", "\r", "\r\n", "élève", "Straße",
+    "𐐨", "😀", "ǆ", "ŉ", "€", "1\t"};
+
+  private static final byte[][] INVALID_SEQUENCES = {{(byte) 0xc3}, {(byte) 0xe2, (byte) 0x82}, {(byte) 0xff},
+    {(byte) 0xf0, (byte) 0x90, (byte) 0x80}, {(byte) 0xed, (byte) 0xa0, (byte) 0x80}, {(byte) 0x80, (byte) 0x80}};
+
+  private interface Filters {
+
+    Writer decorate(Writer writer);
+
+    OutputStream decorate(OutputStream stream);
+
+  }
+
+  @Test
+  public void itShouldConvertToUpperCaseLikeTheFilterWriter() throws IOException {
+    assertSameOutput(new Filters() {
+      @Override
+      public Writer decorate(Writer writer) {
+        return new UpperCaseFilterWriter(writer);
+      }
+
+      @Override
+      public OutputStream decorate(OutputStream stream) {
+        return new UpperCaseByteFilter(stream);
+      }
+    });
+  }
+
+  @Test
+  public void itShouldNumberLinesLikeTheFilterWriter() throws IOException {
+    assertSameOutput(new Filters() {
+      @Override
+      public Writer decorate(Writer writer) {
+        return new FileNumberingFilterWriter(writer);
+      }
+
+      @Override
+      public OutputStream decorate(OutputStream stream) {
+        return new FileNumberingByteFilter(stream);
+      }
+    });
+  }
+
+  @Test
+  public void itShouldApplyBothTransformationsLikeTheFilterWriters() throws IOException {
+    assertSameOutput(new Filters() {
+      @Override
+      public Writer decorate(Writer writer) {
+        return new FileNumberingFilterWriter(new UpperCaseFilterWriter(writer));
+      }
+
+      @Override
+      public OutputStream decorate(OutputStream stream) {
+        return new FileNumberingByteFilter(new UpperCaseByteFilter(stream));
+      }
+    });
+    assertSameOutput(new Filters() {
+      @Override
+      public Writer decorate(Writer writer) {
+        return new FileNumberingFilterWriter(new UpperCaseFilterWriter(writer));
+      }
+
+      @Override
+      public OutputStream decorate(OutputStream stream) {
+        return FilterFusion.fuse(new FileNumberingByteFilter(new UpperCaseByteFilter(stream)));
+      }
+    });
+  }
+
+  @Test
+  public void itShouldFuseTheNumberingAndUpperCaseByteFilters() {
+    OutputStream stream = new ByteArrayOutputStream();
+    Assert.assertEquals(UpperCaseNumberingByteFilter.class,
+      FilterFusion.fuse(new FileNumberingByteFilter(new UpperCaseByteFilter(stream))).getClass());
+    Assert.assertEquals(UpperCaseNumberingByteFilter.class,
+      FilterFusion.fuse(new UpperCaseByteFilter(new FileNumberingByteFilter(stream))).getClass());
+    OutputStream filter = new UpperCaseByteFilter(new UpperCaseByteFilter(stream));
+    Assert.assertSame(filter, FilterFusion.fuse(filter));
+  }
+
+  /**
+   * Transforms random UTF-8 texts (with some invalid sequences) with the filter
+   * writers, between an InputStreamReader and an OutputStreamWriter, and with the
+   * byte filters, written with random sizes.
+   */
+  private static void assertSameOutput(Filters filters) throws IOException {
+    Random random = new Random(42);
+    for (int run = 0; run < 200; run++) {
+      ByteArrayOutputStream text = new ByteArrayOutputStream();
+      int size = random.nextInt(3000);
+      while (text.size() < size) {
+        if (random.nextInt(20) == 0) {
+          byte[] invalid = INVALID_SEQUENCES[random.nextInt(INVALID_SEQUENCES.length)];
+          text.write(invalid, 0, invalid.length);
+        } else {
+          byte[] sample = SAMPLES[random.nextInt(SAMPLES.length)].getBytes(StandardCharsets.UTF_8);
+          text.write(sample, 0, sample.length);
+        }
+      }
+      byte[] bytes = text.toByteArray();
+
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      try (Reader reader = new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8);
+        Writer writer = filters.decorate(new OutputStreamWriter(expected, StandardCharsets.UTF_8))) {
+        char[] buffer = new char[1 + random.nextInt(100)];
+        int n;
+        while ((n = reader.read(buffer)) != -1) {
+          writer.write(buffer, 0, n);
+        }
+      }
+
+      ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      try (OutputStream stream = filters.decorate(actual)) {
+        for (int off = 0; off < bytes.length;) {
+          int len = Math.min(random.nextInt(50), bytes.length - off);
+          if (len == 1) {
+            stream.write(bytes[off]);
+          } else {
+            stream.write(bytes, off, len);
+          }
+          off += len;
+        }
+      }
+      if (!Arrays.equals(expected.toByteArray(), actual.toByteArray())) {
+        Assert.assertEquals(new String(expected.toByteArray(), StandardCharsets.ISO_8859_1),
+          new String(actual.toByteArray(), StandardCharsets.ISO_8859_1));
+      }
+    }
+  }
+
+}
@@ -2,6 +2,7 @@ package ch.heigvd.res.lab01.impl.filters;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Random;
 import java.util.logging.Logger;
 import org.junit.Assert;
 import org.junit.Test;
@@ -129,4 +130,38 @@ public class FileNumberingFilterWriterTest {
     Assert.assertEquals(referenceValue, computedValue);
   }
 
+  @Test
+  public void itShouldWorkWhenASeparatorIsSplitBetweenTwoWrites() throws IOException {
+    StringWriter stringWriter = new StringWriter();
+    FileNumberingFilterWriter writer = new FileNumberingFilterWriter(stringWriter);
+    writer.write("line 1\r");
+    writer.write("\nline 2\r");
+    writer.write("line 3\r");
+    writer.close();
+    Assert.assertEquals("1\tline 1\r\n2\tline 2\r3\tline 3\r4\t", stringWriter.toString());
+  }
+
+  @Test
+  public void itShouldNotDependOnTheSizeOfTheWrites() throws IOException {
+    StringBuilder text = new StringBuilder();
+    StringBuilder expected = new StringBuilder("1\t");
+    String[] separators = {"\n", "\r", "\r\n"};
+    Random random = new Random(42);
+    for (int i = 1; i <= 2000; i++) {
+      String line = "line " + i + separators[random.nextInt(separators.length)];
+      text.append(line);
+      expected.append(line).append(i + 1).append('\t');
+    }
+    char[] chars = text.toString().toCharArray();
+    StringWriter stringWriter = new StringWriter();
+    FileNumberingFilterWriter writer = new FileNumberingFilterWriter(stringWriter);
+    for (int off = 0; off < chars.length;) {
+      int len = Math.min(random.nextInt(20), chars.length - off);
+      writer.write(chars, off, len);
+      off += len;
+    }
+    writer.close();
+    Assert.assertEquals(expected.toString(), stringWriter.toString());
+  }
+
 }
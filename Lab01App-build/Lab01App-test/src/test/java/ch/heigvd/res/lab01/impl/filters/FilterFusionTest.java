@@ -0,0 +1,71 @@
+package ch.heigvd.res.lab01.impl.filters;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class FilterFusionTest {
+
+  private static final String[] SAMPLES = {"hello", " world", "\n", "\r", "\r\n", "élève", "Straße",
+    "𐐨", "😀", "\uD801", "\uDC28", "ǆ", "ŉ", "1\t"};
+
+  @Test
+  public void itShouldFuseTheNumberingAndUpperCaseFilters() {
+    StringWriter stringWriter = new StringWriter();
+    Writer fused = FilterFusion.fuse(new FileNumberingFilterWriter(new UpperCaseFilterWriter(stringWriter)));
+    Assert.assertEquals(UpperCaseNumberingFilterWriter.class, fused.getClass());
+    fused = FilterFusion.fuse(new UpperCaseFilterWriter(new FileNumberingFilterWriter(stringWriter)));
+    Assert.assertEquals(UpperCaseNumberingFilterWriter.class, fused.getClass());
+  }
+
+  @Test
+  public void itShouldNotChangeOtherWriters() {
+    StringWriter stringWriter = new StringWriter();
+    Writer writer = new UpperCaseFilterWriter(stringWriter);
+    Assert.assertSame(writer, FilterFusion.fuse(writer));
+    Assert.assertSame(stringWriter, FilterFusion.fuse(stringWriter));
+  }
+
+  @Test
+  public void itShouldProduceTheSameOutputAsTheTwoFilters() throws IOException {
+    Random random = new Random(42);
+    for (int run = 0; run < 200; run++) {
+      StringBuilder text = new StringBuilder();
+      int size = random.nextInt(3000);
+      while (text.length() < size) {
+        text.append(SAMPLES[random.nextInt(SAMPLES.length)]);
+      }
+      char[] chars = text.toString().toCharArray();
+
+      StringWriter stackedOutput = new StringWriter();
+      StringWriter fusedOutput = new StringWriter();
+      Writer stacked = new FileNumberingFilterWriter(new UpperCaseFilterWriter(stackedOutput));
+      Writer fused = new UpperCaseNumberingFilterWriter(fusedOutput);
+      for (int off = 0; off < chars.length;) {
+        int len = Math.min(random.nextInt(2000), chars.length - off);
+        if (len == 1) {
+          stacked.write(chars[off]);
+          fused.write(chars[off]);
+        } else if (random.nextBoolean()) {
+          stacked.write(chars, off, len);
+          fused.write(chars, off, len);
+        } else {
+          stacked.write(text.toString(), off, len);
+          fused.write(text.toString(), off, len);
+        }
+        off += len;
+      }
+      stacked.close();
+      fused.close();
+      Assert.assertEquals(stackedOutput.toString(), fusedOutput.toString());
+    }
+  }
+
+}
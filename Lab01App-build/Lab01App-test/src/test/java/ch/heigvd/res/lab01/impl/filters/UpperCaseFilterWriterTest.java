@@ -2,6 +2,7 @@ package ch.heigvd.res.lab01.impl.filters;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Locale;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -62,4 +63,37 @@ public class UpperCaseFilterWriterTest {
     assertEquals("HELLO WORLD", stringWriter.toString());
   }
 
+  @Test
+  public void itShouldWorkLikeStringToUpperCase() throws IOException {
+    String line = "Les élèves, Straße, ǆ, \uD801\uDC28 and \uD83D\uDE00 ";
+    StringBuilder expected = new StringBuilder();
+    StringWriter stringWriter = new StringWriter();
+    UpperCaseFilterWriter writer = new UpperCaseFilterWriter(stringWriter);
+    for (int i = 0; i < 500; i++) {
+      writer.write(line);
+      expected.append(line.toUpperCase(Locale.ROOT));
+    }
+    assertEquals(expected.toString(), stringWriter.toString());
+  }
+
+  @Test
+  public void itShouldWorkWhenASurrogatePairIsSplitBetweenTwoWrites() throws IOException {
+    String line = "a\uD801\uDC28b";
+    StringWriter stringWriter = new StringWriter();
+    UpperCaseFilterWriter writer = new UpperCaseFilterWriter(stringWriter);
+    writer.write(line, 0, 2);
+    writer.write(line.charAt(2));
+    writer.write(line, 3, 1);
+    assertEquals("A\uD801\uDC00B", stringWriter.toString());
+  }
+
+  @Test
+  public void itShouldKeepALoneHighSurrogate() throws IOException {
+    StringWriter stringWriter = new StringWriter();
+    UpperCaseFilterWriter writer = new UpperCaseFilterWriter(stringWriter);
+    writer.write("a\uD801b\uD801");
+    writer.close();
+    assertEquals("A\uD801B\uD801", stringWriter.toString());
+  }
+
 }
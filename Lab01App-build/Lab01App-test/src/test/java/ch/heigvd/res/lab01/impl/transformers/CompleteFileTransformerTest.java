@@ -1,10 +1,12 @@
 package ch.heigvd.res.lab01.impl.transformers;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -38,4 +40,56 @@ public class CompleteFileTransformerTest {
     FileUtils.deleteDirectory(new File("./tmp"));
   }
 
+  @Test
+  public void itShouldProduceTheSameFileWithTheBytePipeline() throws IOException {
+    FileUtils.deleteDirectory(new File("./tmp"));
+    new File("./tmp").mkdir();
+    File inputFile = new File("./tmp/test.bytes.txt");
+    File outputFile = new File("./tmp/test.bytes.txt.out");
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      content.append("Les élèves de la Straße ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+    }
+    FileUtils.writeStringToFile(inputFile, content.toString(), "UTF-8");
+
+    new CompleteFileTransformer().visit(inputFile);
+    byte[] expected = FileUtils.readFileToByteArray(outputFile);
+    CompleteFileTransformer transformer = new CompleteFileTransformer();
+    transformer.setBytePipeline(true);
+    transformer.visit(inputFile);
+    assertArrayEquals(expected, FileUtils.readFileToByteArray(outputFile));
+    FileUtils.deleteDirectory(new File("./tmp"));
+  }
+
+  @Test
+  public void itShouldProduceTheSameFileWithMappedInput() throws IOException {
+    FileUtils.deleteDirectory(new File("./tmp"));
+    new File("./tmp").mkdir();
+    File inputFile = new File("./tmp/test.mapped.txt");
+    File outputFile = new File("./tmp/test.mapped.txt.out");
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    for (int i = 0; i < 500; i++) {
+      content.write(("Les élèves de la Straße \uD83D\uDE00 " + i + (i % 3 == 0 ? "\r\n" : "\n")).getBytes("UTF-8"));
+      if (i % 7 == 0) {
+        content.write(new byte[]{(byte) 0xc3, (byte) 0xe2, (byte) 0x82, '!', (byte) 0xff});
+      }
+    }
+    FileUtils.writeByteArrayToFile(inputFile, content.toByteArray());
+
+    new CompleteFileTransformer().visit(inputFile);
+    byte[] expected = FileUtils.readFileToByteArray(outputFile);
+    for (boolean bytePipeline : new boolean[]{false, true}) {
+      for (long regionSize : new long[]{7, 1000, FileTransformer.MAX_MAPPED_REGION_SIZE}) {
+        CompleteFileTransformer transformer = new CompleteFileTransformer();
+        transformer.setBytePipeline(bytePipeline);
+        transformer.setMappedInputThreshold(0);
+        transformer.setMaxMappedRegionSize(regionSize);
+        transformer.setBufferSize(61);
+        transformer.visit(inputFile);
+        assertArrayEquals(expected, FileUtils.readFileToByteArray(outputFile));
+      }
+    }
+    FileUtils.deleteDirectory(new File("./tmp"));
+  }
+
 }
@@ -2,8 +2,11 @@ package ch.heigvd.res.lab01.impl.transformers;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import org.apache.commons.io.FileUtils;
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -30,4 +33,33 @@ public class FileTransformerTest {
     FileUtils.deleteDirectory(new File("./tmp"));
   }
   
+  @Test
+  public void itShouldCopyAFileLargerThanTheBuffer() throws IOException {
+    FileUtils.deleteDirectory(new File("./tmp"));
+    new File("./tmp").mkdir();
+    FileTransformer ft = new FileTransformer() {
+      @Override
+      public Writer decorateWithFilters(Writer writer) {
+        return new FilterWriter(writer) {
+        };
+      }
+    };
+    ft.setBufferSize(7);
+    File inputFile = new File("./tmp/test.txt");
+    File outputFile = new File("./tmp/test.txt.out");
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      content.append("Line ").append(i).append(": les élèves sont très assidus.\n");
+    }
+    FileUtils.writeStringToFile(inputFile, content.toString(), StandardCharsets.UTF_8);
+    ft.visit(inputFile);
+    assertEquals(content.toString(), FileUtils.readFileToString(outputFile, StandardCharsets.UTF_8));
+    FileUtils.deleteDirectory(new File("./tmp"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void itShouldRefuseAnEmptyBuffer() {
+    new CompleteFileTransformer().setBufferSize(0);
+  }
+
 }
@@ -0,0 +1,179 @@
+package ch.heigvd.res.lab01.impl.transformers;
+
+import ch.heigvd.res.lab01.impl.explorers.DFSFileExplorer;
+import java.io.File;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class IncrementalFileTransformerTest {
+
+  private static final File ROOT = new File("./tmp-incremental");
+
+  private final AtomicInteger transformations = new AtomicInteger();
+
+  private final FileTransformer countingTransformer = new FileTransformer() {
+    @Override
+    public Writer decorateWithFilters(Writer writer) {
+      transformations.incrementAndGet();
+      return writer;
+    }
+  };
+
+  @Before
+  public void generateTestFiles() throws IOException {
+    FileUtils.deleteDirectory(ROOT);
+    for (int i = 1; i <= 3; i++) {
+      FileUtils.writeStringToFile(new File(ROOT, "tag" + i + "/quote-" + i + ".utf8"), "quote " + i, StandardCharsets.UTF_8);
+    }
+  }
+
+  @After
+  public void deleteTestFiles() throws IOException {
+    FileUtils.deleteDirectory(ROOT);
+  }
+
+  private IncrementalFileTransformer transformAll() throws IOException {
+    return transformAll(countingTransformer);
+  }
+
+  private IncrementalFileTransformer transformAll(FileTransformer fileTransformer) throws IOException {
+    TransformManifest manifest = new TransformManifest(ROOT);
+    IncrementalFileTransformer transformer = new IncrementalFileTransformer(fileTransformer, manifest);
+    new DFSFileExplorer().explore(ROOT, transformer);
+    manifest.save();
+    return transformer;
+  }
+
+  @Test
+  public void itShouldTransformEveryFileTheFirstTime() throws IOException {
+    IncrementalFileTransformer transformer = transformAll();
+    assertEquals(3, transformer.getTransformedFiles());
+    assertEquals(0, transformer.getSkippedFiles());
+    assertEquals(3, transformations.get());
+    assertTrue(new File(ROOT, "tag2/quote-2.utf8.out").isFile());
+    assertTrue(new File(ROOT, TransformManifest.FILENAME).isFile());
+  }
+
+  @Test
+  public void itShouldSkipTheFilesThatHaveNotChanged() throws IOException {
+    transformAll();
+    transformations.set(0);
+    IncrementalFileTransformer transformer = transformAll();
+    assertEquals(0, transformer.getTransformedFiles());
+    assertEquals(3, transformer.getSkippedFiles());
+    assertEquals(0, transformations.get());
+    assertFalse(new File(ROOT, "tag1/quote-1.utf8.out.out").exists());
+  }
+
+  @Test
+  public void itShouldTransformTheFilesThatHaveChangedOrLostTheirOutput() throws IOException {
+    transformAll();
+    File changed = new File(ROOT, "tag1/quote-1.utf8");
+    FileUtils.writeStringToFile(changed, "another quote", StandardCharsets.UTF_8);
+    assertTrue(new File(ROOT, "tag2/quote-2.utf8.out").delete());
+    FileUtils.writeStringToFile(new File(ROOT, "tag4/quote-4.utf8"), "quote 4", StandardCharsets.UTF_8);
+
+    IncrementalFileTransformer transformer = transformAll();
+    assertEquals(3, transformer.getTransformedFiles());
+    assertEquals(1, transformer.getSkippedFiles());
+  }
+
+  @Test
+  public void itShouldNotTransformAFileThatHasOnlyBeenTouched() throws IOException {
+    transformAll();
+    File touched = new File(ROOT, "tag3/quote-3.utf8");
+    assertTrue(touched.setLastModified(touched.lastModified() - 60000));
+
+    IncrementalFileTransformer transformer = transformAll();
+    assertEquals(0, transformer.getTransformedFiles());
+    assertEquals(3, transformer.getSkippedFiles());
+  }
+
+  @Test
+  public void itShouldHashTheMappedFilesWhileTransformingThem() throws IOException {
+    FileTransformer mappingTransformer = new FileTransformer() {
+      @Override
+      public Writer decorateWithFilters(Writer writer) {
+        transformations.incrementAndGet();
+        return new FilterWriter(writer) {
+        };
+      }
+    };
+    mappingTransformer.setMappedInputThreshold(0);
+    mappingTransformer.setMaxMappedRegionSize(3);
+    transformAll(mappingTransformer);
+    File touched = new File(ROOT, "tag3/quote-3.utf8");
+    assertTrue(touched.setLastModified(touched.lastModified() - 60000));
+
+    IncrementalFileTransformer transformer = transformAll(mappingTransformer);
+    assertEquals(0, transformer.getTransformedFiles());
+    assertEquals(3, transformer.getSkippedFiles());
+    assertEquals(3, transformations.get());
+  }
+
+  @Test
+  public void itShouldNotTransformTheManifestInANormalRun() throws IOException {
+    transformAll();
+    new DFSFileExplorer().explore(ROOT, countingTransformer);
+    assertFalse(new File(ROOT, TransformManifest.FILENAME + ".out").exists());
+  }
+
+  @Test
+  public void itShouldTransformAgainTheFilesWhoseTransformationHasFailed() throws IOException {
+    FileTransformer failingTransformer = new FileTransformer() {
+      @Override
+      public Writer decorateWithFilters(Writer writer) {
+        return new FilterWriter(writer) {
+          @Override
+          public void write(char[] cbuf, int off, int len) throws IOException {
+            throw new IOException("The disk is full");
+          }
+        };
+      }
+    };
+    TransformManifest manifest = new TransformManifest(ROOT);
+    IncrementalFileTransformer failing = new IncrementalFileTransformer(failingTransformer, manifest);
+    new DFSFileExplorer().explore(ROOT, failing);
+    manifest.save();
+    assertEquals(0, failing.getTransformedFiles());
+    assertEquals(0, manifest.size());
+
+    IncrementalFileTransformer transformer = transformAll();
+    assertEquals(3, transformer.getTransformedFiles());
+    assertEquals(3, transformations.get());
+  }
+
+  @Test
+  public void itShouldTransformEveryFileWhenTheManifestIsTruncated() throws IOException {
+    transformAll();
+    File manifestFile = new File(ROOT, TransformManifest.FILENAME);
+    byte[] content = FileUtils.readFileToByteArray(manifestFile);
+    FileUtils.writeByteArrayToFile(manifestFile, Arrays.copyOf(content, content.length - 5));
+
+    IncrementalFileTransformer transformer = transformAll();
+    assertEquals(3, transformer.getTransformedFiles());
+    assertEquals(0, transformer.getSkippedFiles());
+  }
+
+  @Test
+  public void itShouldForgetTheFilesThatHaveBeenDeleted() throws IOException {
+    transformAll();
+    assertTrue(new File(ROOT, "tag3/quote-3.utf8").delete());
+    transformAll();
+    assertEquals(2, new TransformManifest(ROOT).size());
+  }
+
+}
@@ -0,0 +1,125 @@
+package ch.heigvd.res.lab01.metrics;
+
+import ch.heigvd.res.lab01.impl.Application;
+import ch.heigvd.res.lab01.impl.transformers.FileTransformer;
+import ch.heigvd.res.lab01.quotes.StubQuoteServer;
+import java.io.File;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class MetricsTest {
+
+  private static final int NUMBER_OF_QUOTES = 20;
+
+  @Before
+  public void resetMetrics() {
+    Metrics.reset();
+  }
+
+  @After
+  public void disableMetrics() {
+    Metrics.setEnabled(false);
+    Metrics.reset();
+  }
+
+  @Test
+  public void itShouldPutTheDurationsInTheRightBuckets() {
+    for (long duration = 0; duration < 100000; duration++) {
+      int bucket = StageMetrics.bucketOf(duration);
+      assertTrue(duration <= StageMetrics.upperBoundOf(bucket));
+      assertTrue(bucket == 0 || duration > StageMetrics.upperBoundOf(bucket - 1));
+      assertTrue(StageMetrics.upperBoundOf(bucket) - duration <= duration / 8);
+    }
+    assertEquals(Long.MAX_VALUE, StageMetrics.upperBoundOf(StageMetrics.bucketOf(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void itShouldNotRecordAnythingWhenDisabled() {
+    Metrics.setEnabled(false);
+    long start = Metrics.start();
+    assertEquals(0, start);
+    Metrics.STORE.record(start);
+    Metrics.STORE.record(System.nanoTime(), false, 10, 10);
+    assertEquals(0, Metrics.STORE.getCount());
+    assertEquals(0, Metrics.STORE.getFailures());
+  }
+
+  @Test
+  public void itShouldRememberWhenTheFirstOperationHasEnded() {
+    Metrics.setEnabled(true);
+    long before = System.nanoTime();
+    Metrics.STORE.record(Metrics.start());
+    long first = Metrics.STORE.getFirstCompletionNanos();
+    assertTrue(first - before >= 0);
+    Metrics.STORE.record(Metrics.start());
+    assertEquals(first, Metrics.STORE.getFirstCompletionNanos());
+    Metrics.reset();
+    assertEquals(0, Metrics.STORE.getFirstCompletionNanos());
+  }
+
+  @Test
+  public void itShouldCountTheTransformationsThatHaveFailed() throws IOException {
+    File file = File.createTempFile("quote-", ".utf8");
+    try {
+      FileUtils.writeStringToFile(file, "a quote", StandardCharsets.UTF_8);
+      Metrics.setEnabled(true);
+      new FileTransformer() {
+        @Override
+        public Writer decorateWithFilters(Writer writer) {
+          return new FilterWriter(writer) {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+              throw new IOException("The disk is full");
+            }
+          };
+        }
+      }.visit(file);
+      assertEquals(1, Metrics.TRANSFORM.getCount());
+      assertEquals(1, Metrics.TRANSFORM.getFailures());
+    } finally {
+      Files.deleteIfExists(file.toPath());
+      Files.deleteIfExists(new File(file.getPath() + ".out").toPath());
+    }
+  }
+
+  @Test
+  public void itShouldRecordEveryStageOfTheApplication() throws IOException, JMException {
+    Metrics.setEnabled(true);
+    try (StubQuoteServer server = new StubQuoteServer(0)) {
+      Application application = new Application(server.getEndpoint(), 2, 5);
+      application.fetchAndStoreQuotes(NUMBER_OF_QUOTES);
+      application.processQuoteFiles();
+    }
+    assertEquals(4, Metrics.FETCH.getCount());
+    assertEquals(4, Metrics.DECODE.getCount());
+    assertEquals(NUMBER_OF_QUOTES, Metrics.STORE.getCount());
+    assertEquals(1, Metrics.EXPLORE.getCount());
+    assertEquals(NUMBER_OF_QUOTES, Metrics.TRANSFORM.getCount());
+    assertEquals(0, Metrics.TRANSFORM.getFailures());
+    assertTrue(Metrics.TRANSFORM.getBytesIn() > 0);
+    assertTrue(Metrics.TRANSFORM.getBytesOut() > Metrics.TRANSFORM.getBytesIn());
+    assertTrue(Metrics.FETCH.getP50Millis() <= Metrics.FETCH.getP99Millis());
+    assertTrue(Metrics.FETCH.getP99Millis() <= Metrics.FETCH.getMaxMillis());
+    assertTrue(Metrics.summary().contains("transform"));
+
+    Metrics.registerMBeans();
+    ObjectName name = new ObjectName("ch.heigvd.res.lab01:type=Metrics,stage=store");
+    assertEquals((long) NUMBER_OF_QUOTES, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Count"));
+  }
+
+}
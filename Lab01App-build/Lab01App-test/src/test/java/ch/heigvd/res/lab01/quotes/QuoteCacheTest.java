@@ -0,0 +1,143 @@
+package ch.heigvd.res.lab01.quotes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class QuoteCacheTest {
+
+  private static final File CACHE_FILE = new File("./tmp-cache/quotes.cache");
+  private static final long ONE_HOUR = 3600 * 1000;
+
+  @Before
+  public void deleteCacheFile() throws IOException {
+    FileUtils.deleteDirectory(CACHE_FILE.getParentFile());
+  }
+
+  @Test
+  public void itShouldCountHitsAndMisses() throws IOException {
+    QuoteCache cache = new QuoteCache(CACHE_FILE, 10, ONE_HOUR);
+    cache.put(createQuote(1, "one"));
+    assertEquals("one", cache.get(1).getValue().getJoke());
+    assertNull(cache.get(2));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void itShouldEvictTheLeastRecentlyUsedQuote() throws IOException {
+    QuoteCache cache = new QuoteCache(CACHE_FILE, 2, ONE_HOUR);
+    cache.put(createQuote(1, "one"));
+    cache.put(createQuote(2, "two"));
+    cache.get(1);
+    cache.put(createQuote(3, "three"));
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get(1));
+    assertNull(cache.get(2));
+    assertNotNull(cache.get(3));
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void itShouldEvictTheExpiredQuotes() throws IOException, InterruptedException {
+    QuoteCache cache = new QuoteCache(CACHE_FILE, 10, 50);
+    cache.put(createQuote(1, "one"));
+    Thread.sleep(100);
+    assertNull(cache.get(1));
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void itShouldReloadTheQuotesSavedInTheFile() throws IOException {
+    QuoteCache cache = new QuoteCache(CACHE_FILE, 10, ONE_HOUR);
+    cache.put(createQuote(1, "one"));
+    cache.put(createQuote(2, "deux, élève"));
+    cache.save();
+
+    QuoteCache reloaded = new QuoteCache(CACHE_FILE, 10, ONE_HOUR);
+    assertEquals(2, reloaded.size());
+    assertEquals("deux, élève", reloaded.get(2).getValue().getJoke());
+    assertArrayEquals(new String[]{"nerdy"}, reloaded.get(1).getValue().getCategories());
+  }
+
+  @Test
+  public void itShouldServeAllTheQuotesBeforeServingOneAgain() throws IOException {
+    QuoteCache cache = new QuoteCache(CACHE_FILE, 10, ONE_HOUR);
+    for (int i = 1; i <= 3; i++) {
+      cache.put(createQuote(i, "joke " + i));
+    }
+    List<Quote> quotes = cache.serve(2);
+    quotes.addAll(cache.serve(1));
+    Set<Long> ids = new HashSet<>();
+    for (Quote quote : quotes) {
+      ids.add(quote.getValue().getId());
+    }
+    assertEquals(3, ids.size());
+    assertEquals(5, cache.serve(5).size());
+  }
+
+  @Test
+  public void itShouldEvictTheLeastRecentlyUsedQuotesWhenTooBig() throws IOException {
+    QuoteCache cache = new QuoteCache(CACHE_FILE, 10, 1000, ONE_HOUR);
+    cache.put(createQuote(1, "one"));
+    cache.put(createQuote(2, "two"));
+    cache.put(createQuote(3, new String(new char[300]).replace('\0', 'x')));
+    assertTrue(cache.getBytes() <= 1000);
+    assertNull(cache.get(1));
+    assertNotNull(cache.get(3));
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void itShouldStartEmptyWhenTheFileIsTruncated() throws IOException {
+    QuoteCache cache = new QuoteCache(CACHE_FILE, 10, ONE_HOUR);
+    cache.put(createQuote(1, "one"));
+    cache.put(createQuote(2, "two"));
+    cache.save();
+    byte[] content = FileUtils.readFileToByteArray(CACHE_FILE);
+    FileUtils.writeByteArrayToFile(CACHE_FILE, Arrays.copyOf(content, content.length - 3));
+
+    QuoteCache reloaded = new QuoteCache(CACHE_FILE, 10, ONE_HOUR);
+    assertEquals(0, reloaded.size());
+    assertEquals(0, reloaded.getBytes());
+  }
+
+  @Test
+  public void itShouldNotLetTheCallersModifyTheCachedQuotes() throws IOException {
+    QuoteCache cache = new QuoteCache(CACHE_FILE, 10, ONE_HOUR);
+    cache.put(createQuote(1, "one"));
+    Quote quote = cache.get(1);
+    quote.getValue().setJoke("modified");
+    quote.getValue().getCategories()[0] = "modified";
+    assertEquals("one", cache.get(1).getValue().getJoke());
+    assertEquals("nerdy", cache.serve(1).get(0).getValue().getCategories()[0]);
+  }
+
+  @Test(expected = IOException.class)
+  public void itShouldNotServeQuotesWhenItIsEmpty() throws IOException {
+    new QuoteCache(CACHE_FILE, 10, ONE_HOUR).serve(1);
+  }
+
+  private static Quote createQuote(long id, String joke) {
+    Quote.Value value = new Quote.Value();
+    value.setId(id);
+    value.setJoke(joke);
+    value.setCategories(new String[]{"nerdy"});
+    Quote quote = new Quote();
+    quote.setValue(value);
+    return quote;
+  }
+
+}
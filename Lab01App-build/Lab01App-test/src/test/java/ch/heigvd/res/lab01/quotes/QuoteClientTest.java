@@ -0,0 +1,129 @@
+package ch.heigvd.res.lab01.quotes;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import javax.ws.rs.ProcessingException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class QuoteClientTest {
+
+  @Test
+  public void itShouldFetchQuotesFromTheEndpoint() throws IOException {
+    try (StubQuoteServer server = new StubQuoteServer(0);
+      QuoteClient client = new QuoteClient(server.getEndpoint())) {
+      Quote quote = client.fetchQuote();
+      assertEquals("success", quote.getType());
+      assertEquals(1, quote.getValue().getId());
+      assertEquals("Joke number 1 is a very funny joke", quote.getValue().getJoke());
+    }
+  }
+
+  @Test
+  public void itShouldReuseTheSameConnectionForSuccessiveQuotes() throws IOException {
+    try (StubQuoteServer server = new StubQuoteServer(0);
+      QuoteClient client = new QuoteClient(server.getEndpoint())) {
+      for (int i = 0; i < 50; i++) {
+        assertNotNull(client.fetchQuote());
+      }
+      assertEquals(50, server.getRequestCount());
+      assertEquals(1, server.getConnectionCount());
+    }
+  }
+
+  @Test
+  public void itShouldFetchAQuoteAsynchronously() throws IOException, InterruptedException, ExecutionException {
+    try (StubQuoteServer server = new StubQuoteServer(0);
+      QuoteClient client = new QuoteClient(server.getEndpoint())) {
+      CompletableFuture<String> joke = client.fetchQuoteAsync().thenApply(quote -> quote.getValue().getJoke());
+      assertEquals("Joke number 1 is a very funny joke", joke.get());
+    }
+  }
+
+  @Test
+  public void itShouldNotSendMoreRequestsThanThePoolSizeAtTheSameTime() throws IOException, InterruptedException,
+    ExecutionException {
+    try (StubQuoteServer server = new StubQuoteServer(20);
+      QuoteClient client = new QuoteClient(server.getEndpoint(), 4, 1000, 1000)) {
+      List<CompletableFuture<Quote>> quotes = client.fetchQuotes(40);
+      assertEquals(40, quotes.size());
+      Set<Long> ids = new HashSet<>();
+      for (CompletableFuture<Quote> quote : quotes) {
+        ids.add(quote.get().getValue().getId());
+      }
+      assertEquals(40, ids.size());
+      assertEquals(40, server.getRequestCount());
+      assertTrue(server.getMaxRequestsInFlight() <= 4);
+      assertTrue(server.getMaxRequestsInFlight() > 1);
+    }
+  }
+
+  @Test
+  public void itShouldFailTheFuturesWhenTheServerIsNotReachable() throws InterruptedException {
+    try (QuoteClient client = new QuoteClient("http://127.0.0.1:1/jokes/random", 2, 1000, 1000)) {
+      CompletableFuture<Quote> quote = client.fetchQuoteAsync();
+      try {
+        quote.get();
+        fail("The future should have failed");
+      } catch (ExecutionException e) {
+        assertNotNull(e.getCause());
+      }
+    }
+  }
+
+  @Test
+  public void itShouldFetchABatchOfQuotesWithASingleRequest() throws IOException {
+    try (StubQuoteServer server = new StubQuoteServer(0);
+      QuoteClient client = new QuoteClient(server.getEndpoint())) {
+      List<Quote> quotes = client.fetchQuoteBatch(10);
+      assertEquals(10, quotes.size());
+      for (int i = 0; i < quotes.size(); i++) {
+        assertEquals("success", quotes.get(i).getType());
+        assertEquals(i + 1, quotes.get(i).getValue().getId());
+        assertNotNull(quotes.get(i).getQuote());
+      }
+      assertEquals(1, server.getRequestCount());
+    }
+  }
+
+  @Test
+  public void itShouldFallBackToSingleRequestsWhenBatchesAreNotSupported() throws IOException {
+    try (StubQuoteServer server = new StubQuoteServer(0, false);
+      QuoteClient client = new QuoteClient(server.getEndpoint())) {
+      assertEquals(5, client.fetchQuoteBatch(5).size());
+      assertEquals(1 + 5, server.getRequestCount());
+      assertEquals(5, client.fetchQuoteBatch(5).size());
+      assertEquals(1 + 5 + 5, server.getRequestCount());
+    }
+  }
+
+  @Test
+  public void itShouldKeepFetchingBatchesAfterAServerError() throws IOException {
+    try (StubQuoteServer server = new StubQuoteServer(0);
+      QuoteClient client = new QuoteClient(server.getEndpoint())) {
+      server.failNextRequests(1);
+      try {
+        client.fetchQuoteBatch(5);
+        fail("The batch request should have failed");
+      } catch (ProcessingException e) {
+        assertTrue(e.getMessage().contains("503"));
+      }
+      assertEquals(5, client.fetchQuoteBatch(5).size());
+      assertEquals(2, server.getRequestCount());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void itShouldRejectAnEmptyPool() {
+    new QuoteClient("http://localhost/", 0, 1000, 1000);
+  }
+
+}
@@ -0,0 +1,70 @@
+package ch.heigvd.res.lab01.quotes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Olivier Liechti
+ */
+public class QuoteDecoderTest {
+
+  private static final String PAYLOAD = "{\"type\":\"success\",\"value\":{\"id\":42,\"joke\":\"Chuck Norris can "
+    + "divide by zero.\",\"categories\":[\"nerdy\",\"math\"]}}";
+
+  @Test
+  public void itShouldDecodeTheSameQuoteAsTheObjectMapper() throws IOException {
+    Quote decoded = new QuoteDecoder().decode(stream(PAYLOAD));
+    Quote reference = SimpleObjectMapperProvider.getSharedMapper().readValue(PAYLOAD, Quote.class);
+    assertEquals(reference.getType(), decoded.getType());
+    assertEquals(reference.getValue().getId(), decoded.getValue().getId());
+    assertEquals(reference.getValue().getJoke(), decoded.getValue().getJoke());
+    assertArrayEquals(reference.getValue().getCategories(), decoded.getValue().getCategories());
+    assertEquals(reference.getQuote(), decoded.getQuote());
+  }
+
+  @Test
+  public void itShouldDecodeTheFieldsInAnyOrder() throws IOException {
+    Quote quote = new QuoteDecoder().decode(stream("{\"value\":{\"joke\":\"Another one\",\"id\":7},\"type\":\"success\"}"));
+    assertEquals("success", quote.getType());
+    assertEquals(7, quote.getValue().getId());
+    assertEquals(0, quote.getValue().getCategories().length);
+    assertEquals("Another one", quote.getQuote());
+  }
+
+  @Test
+  public void itShouldSkipTheUnknownFields() throws IOException {
+    Quote quote = new QuoteDecoder().decode(stream("{\"extra\":{\"a\":[1,2]},\"type\":\"success\",\"value\":"
+      + "{\"id\":1,\"rating\":[5],\"joke\":\"Hello\",\"categories\":null}}"));
+    assertEquals("Hello", quote.getValue().getJoke());
+  }
+
+  @Test
+  public void itShouldDecodeABatchOfQuotes() throws IOException {
+    List<Quote> quotes = new QuoteDecoder().decodeBatch(stream("{\"type\":\"success\",\"value\":["
+      + "{\"id\":1,\"joke\":\"One\",\"categories\":[]},{\"id\":2,\"joke\":\"Two\",\"categories\":[\"nerdy\"]}]}"));
+    assertEquals(2, quotes.size());
+    assertEquals("success", quotes.get(1).getType());
+    assertEquals("Two", quotes.get(1).getValue().getJoke());
+    assertArrayEquals(new String[]{"nerdy"}, quotes.get(1).getValue().getCategories());
+  }
+
+  @Test(expected = QuoteDecoder.NotABatchException.class)
+  public void itShouldRejectASingleQuoteWhenABatchIsExpected() throws IOException {
+    new QuoteDecoder().decodeBatch(stream(PAYLOAD));
+  }
+
+  @Test(expected = IOException.class)
+  public void itShouldRejectAPayloadWithoutJoke() throws IOException {
+    new QuoteDecoder().decode(stream("{\"type\":\"NoSuchQuoteException\"}"));
+  }
+
+  private static InputStream stream(String payload) throws IOException {
+    return new ByteArrayInputStream(payload.getBytes("UTF-8"));
+  }
+
+}
@@ -0,0 +1,145 @@
+package ch.heigvd.res.lab01.quotes;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal HTTP server, started on a random local port, which sends the same
+ * kind of JSON payloads as the Chuck Norris API. It is used by the tests so
+ * that they do not depend on the network. Like the real API, it can send
+ * several jokes at once (/jokes/random/N).
+ *
+ * @author Olivier Liechti
+ */
+public class StubQuoteServer implements AutoCloseable {
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final AtomicInteger requestCounter = new AtomicInteger();
+  private final AtomicInteger jokeCounter = new AtomicInteger();
+  private final AtomicInteger requestsInFlight = new AtomicInteger();
+  private final AtomicInteger maxRequestsInFlight = new AtomicInteger();
+  private final AtomicInteger failuresToSend = new AtomicInteger();
+  private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+  private final long latency;
+  private final boolean batchesSupported;
+
+  public StubQuoteServer(long latency) throws IOException {
+    this(latency, true);
+  }
+
+  /**
+   * @param latency the time (in milliseconds) the server waits before sending each response
+   * @param batchesSupported false if the server should answer requests for several jokes with a 404
+   */
+  public StubQuoteServer(long latency, boolean batchesSupported) throws IOException {
+    this.latency = latency;
+    this.batchesSupported = batchesSupported;
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/jokes/random", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        handleRequest(exchange);
+      }
+    });
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  public String getEndpoint() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/jokes/random";
+  }
+
+  /**
+   * @return the number of requests received so far
+   */
+  public int getRequestCount() {
+    return requestCounter.get();
+  }
+
+  /**
+   * @return the number of distinct client connections (remote ports) seen so far
+   */
+  public int getConnectionCount() {
+    return clientPorts.size();
+  }
+
+  /**
+   * @return the largest number of requests that were handled at the same time
+   */
+  public int getMaxRequestsInFlight() {
+    return maxRequestsInFlight.get();
+  }
+
+  /**
+   * @param failures the number of next requests that the server answers with a 503
+   */
+  public void failNextRequests(int failures) {
+    failuresToSend.set(failures);
+  }
+
+  private void handleRequest(HttpExchange exchange) throws IOException {
+    requestCounter.incrementAndGet();
+    clientPorts.add(exchange.getRemoteAddress().getPort());
+    maxRequestsInFlight.accumulateAndGet(requestsInFlight.incrementAndGet(), Math::max);
+    try {
+      if (latency > 0) {
+        Thread.sleep(latency);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      requestsInFlight.decrementAndGet();
+    }
+    if (failuresToSend.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+      exchange.sendResponseHeaders(503, -1);
+      exchange.close();
+      return;
+    }
+    String[] segments = exchange.getRequestURI().getPath().split("/");
+    String batchSize = segments[segments.length - 1];
+    String value;
+    if ("random".equals(batchSize)) {
+      value = createJoke();
+    } else if (batchesSupported) {
+      StringBuilder jokes = new StringBuilder("[");
+      for (int i = 0; i < Integer.parseInt(batchSize); i++) {
+        jokes.append(i == 0 ? "" : ",").append(createJoke());
+      }
+      value = jokes.append("]").toString();
+    } else {
+      exchange.sendResponseHeaders(404, -1);
+      exchange.close();
+      return;
+    }
+    byte[] body = ("{\"type\":\"success\",\"value\":" + value + "}").getBytes("UTF-8");
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+  private String createJoke() {
+    int id = jokeCounter.incrementAndGet();
+    return "{\"id\":" + id + ",\"joke\":\"Joke number " + id + " is a very funny joke\",\"categories\":[]}";
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+}